@@ -0,0 +1,98 @@
+package com.blubank.doctorappointment.config;
+
+import com.blubank.doctorappointment.service.AvailabilityEventBus;
+import com.blubank.doctorappointment.service.SharedDayAvailability;
+import com.blubank.doctorappointment.service.SlotAvailabilityIndex;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_AVAILABILITY_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_DATE_TIME;
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_DATE_TIME;
+
+// note: a node keeps a doctor-day in its local availability index only while the shared cache entry exists.
+// invalidations done by other nodes (writes, the entry becomes a tombstone) and expirations/evictions drop the
+// local copy, local invalidations are skipped because the local write already updated the index. an invalidation
+// by another node is also a change the local availability feed subscribers of that day did not see, they are
+// resynced. a tombstone of a doctor key (no day) stands for a template change and drops all days of the doctor.
+@Component
+public class DayAvailabilityInvalidationListener implements EntryEvictedListener<String, Object>,
+        EntryExpiredListener<String, Object> {
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @PostConstruct
+    public void register() {
+        hazelcastInstance.getMap(DAY_AVAILABILITY_CACHE).addEntryListener(this, false);
+        hazelcastInstance.<String, Object>getMap(DAY_AVAILABILITY_CACHE)
+                .addEntryListener(new Invalidations(), new SharedDayAvailability.Invalidated(), false);
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<String, Object> event) {
+        dropDay(event.getKey());
+    }
+
+    @Override
+    public void entryExpired(EntryEvent<String, Object> event) {
+        dropDay(event.getKey());
+    }
+
+    private void dropDay(String dayKey) {
+        int separator = dayKey.indexOf(':');
+        if (separator < 0) {
+            return;
+        }
+        slotAvailabilityIndex.dropLoadedDay(Long.valueOf(dayKey.substring(0, separator)),
+                Long.parseLong(dayKey.substring(separator + 1)));
+    }
+
+    private void invalidated(EntryEvent<String, Object> event) {
+        if (event.getMember().localMember()) {
+            return;
+        }
+
+        String key = event.getKey();
+        int separator = key.indexOf(':');
+        if (separator < 0) {
+            Long doctorId = Long.valueOf(key);
+            slotAvailabilityIndex.dropLoadedDoctor(doctorId);
+            availabilityEventBus.resync(doctorId, MIN_DATE_TIME, MAX_DATE_TIME);
+            return;
+        }
+
+        dropDay(key);
+        LocalDate date = LocalDate.ofEpochDay(Long.parseLong(key.substring(separator + 1)));
+        availabilityEventBus.resync(Long.valueOf(key.substring(0, separator)),
+                date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+
+    private final class Invalidations implements EntryAddedListener<String, Object>,
+            EntryUpdatedListener<String, Object> {
+        @Override
+        public void entryAdded(EntryEvent<String, Object> event) {
+            invalidated(event);
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<String, Object> event) {
+            invalidated(event);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.blubank.doctorappointment.config;
+
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.pagination.LimitHandler;
+import org.hibernate.dialect.pagination.Oracle12LimitHandler;
+
+// note: h2 in oracle mode rejects "limit ?", so paged queries are rendered with "fetch first ? rows only"
+public class H2OracleModeDialect extends H2Dialect {
+
+    @Override
+    public LimitHandler getLimitHandler() {
+        return Oracle12LimitHandler.INSTANCE;
+    }
+}
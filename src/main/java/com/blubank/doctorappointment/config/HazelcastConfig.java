@@ -2,13 +2,59 @@ package com.blubank.doctorappointment.config;
 
 import com.hazelcast.config.*;
 import com.hazelcast.spi.merge.PutIfAbsentMergePolicy;
+import com.blubank.doctorappointment.service.SlotBookingStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.Collections;
+import java.util.Arrays;
 
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_AVAILABILITY_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_SCHEDULE_DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_DAY_VERSION_MAP;
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_LIST_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULE_TEMPLATES_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULE_TEMPLATE_DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.SLOT_BOOKING_MAP;
+
+@EnableCaching
 @Configuration
 public class HazelcastConfig {
+    @Autowired(required = false)
+    private SlotBookingStore slotBookingStore;
+
+    @Value("${app.hazelcast.cluster-name:dev}")
+    private String clusterName;
+
+    @Value("${app.hazelcast.port:5701}")
+    private int port;
+
+    @Value("${app.hazelcast.members:127.0.0.1}")
+    private String[] members;
+
+    @Value("${app.cache.doctors.ttl-seconds:600}")
+    private int doctorsTtlSeconds;
+
+    @Value("${app.cache.day-availability.ttl-seconds:120}")
+    private int dayAvailabilityTtlSeconds;
+
+    @Value("${app.cache.max-entries-per-node:10000}")
+    private int maxEntriesPerNode;
+
+    @Value("${app.day-versions.max-idle-seconds:86400}")
+    private int dayVersionMaxIdleSeconds;
+
+    @Value("${app.booking.clustered.write-delay-seconds:1}")
+    private int slotBookingWriteDelaySeconds;
+
+    @Value("${app.booking.clustered.write-batch-size:500}")
+    private int slotBookingWriteBatchSize;
+
+    @Value("${app.booking.clustered.max-idle-seconds:600}")
+    private int slotBookingMaxIdleSeconds;
 
     @Bean
     public Config hazelcast() {
@@ -29,7 +75,21 @@ public class HazelcastConfig {
         Config config = new Config();
         config.addMapConfig(eventStoreMap);
         config.addMapConfig(sentNotificationsMap);
+        config.addMapConfig(cacheMapConfig(DOCTORS_CACHE, doctorsTtlSeconds));
+        config.addMapConfig(cacheMapConfig(DOCTOR_LIST_CACHE, doctorsTtlSeconds));
+        config.addMapConfig(cacheMapConfig(DAY_AVAILABILITY_CACHE, dayAvailabilityTtlSeconds));
+        config.addMapConfig(cacheMapConfig(SCHEDULE_TEMPLATES_CACHE, doctorsTtlSeconds));
+        config.addMapConfig(cacheMapConfig(SCHEDULE_TEMPLATE_DOCTORS_CACHE, doctorsTtlSeconds));
+        config.addMapConfig(cacheMapConfig(DAY_SCHEDULE_DOCTORS_CACHE, doctorsTtlSeconds));
+        config.addMapConfig(new MapConfig(DOCTOR_DAY_VERSION_MAP)
+                .setBackupCount(1)
+                .setMaxIdleSeconds(dayVersionMaxIdleSeconds));
+        if (slotBookingStore != null) {
+            config.addMapConfig(slotBookingMapConfig());
+        }
         config.setProperty("hazelcast.jmx", "true");
+        config.setClusterName(clusterName);
+        config.getNetworkConfig().setPort(port);
 
         config.getNetworkConfig()
                 .getJoin()
@@ -39,7 +99,40 @@ public class HazelcastConfig {
                 .getJoin()
                 .getTcpIpConfig();
         tcpIpConfig.setEnabled(true);
-        tcpIpConfig.setMembers(Collections.singletonList("127.0.0.1"));
+        tcpIpConfig.setMembers(Arrays.asList(members));
         return config;
     }
-}
\ No newline at end of file
+
+    // note: near-cache entries are invalidated by the cluster on every change of the backing map,
+    // binary format so callers always get their own copy of the cached value.
+    private MapConfig cacheMapConfig(String name, int ttlSeconds) {
+        return new MapConfig(name)
+                .setTimeToLiveSeconds(ttlSeconds)
+                .setBackupCount(1)
+                .setEvictionConfig(new EvictionConfig().setEvictionPolicy(EvictionPolicy.LRU)
+                        .setMaxSizePolicy(MaxSizePolicy.PER_NODE)
+                        .setSize(maxEntriesPerNode))
+                .setNearCacheConfig(new NearCacheConfig(name)
+                        .setInMemoryFormat(InMemoryFormat.BINARY)
+                        .setInvalidateOnChange(true)
+                        .setTimeToLiveSeconds(ttlSeconds)
+                        .setEvictionConfig(new EvictionConfig().setEvictionPolicy(EvictionPolicy.LRU)
+                                .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                                .setSize(maxEntriesPerNode)));
+    }
+
+    // note: slot booking state of app.booking.mode=clustered, written behind to the db in coalesced batches.
+    // idle slots leave the map once written, they are loaded again on their next booking or deletion.
+    private MapConfig slotBookingMapConfig() {
+        return new MapConfig(SLOT_BOOKING_MAP)
+                .setBackupCount(1)
+                .setMaxIdleSeconds(slotBookingMaxIdleSeconds)
+                .setMapStoreConfig(new MapStoreConfig()
+                        .setEnabled(true)
+                        .setImplementation(slotBookingStore)
+                        .setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY)
+                        .setWriteDelaySeconds(slotBookingWriteDelaySeconds)
+                        .setWriteBatchSize(slotBookingWriteBatchSize)
+                        .setWriteCoalescing(true));
+    }
+}
@@ -0,0 +1,61 @@
+package com.blubank.doctorappointment.config;
+
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.exception.PatientNotFoundException;
+import com.blubank.doctorappointment.helper.TimedOperation;
+import com.blubank.doctorappointment.service.OpenTimeMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.OptimisticLockException;
+
+// note: ordered before the transaction interceptor (LOWEST_PRECEDENCE), so the time includes the commit and
+// optimistic lock failures raised at commit are seen with their own outcome.
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class OpenTimeMetricsAspect {
+    @Autowired
+    private OpenTimeMetrics openTimeMetrics;
+
+    @Around("@annotation(timedOperation)")
+    public Object record(ProceedingJoinPoint joinPoint, TimedOperation timedOperation) throws Throwable {
+        long start = System.nanoTime();
+        String outcome = OpenTimeMetrics.ERROR;
+        try {
+            Object result = joinPoint.proceed();
+            // note: generation returns null when the doctor does not exist
+            outcome = result == null ? OpenTimeMetrics.NOT_FOUND : OpenTimeMetrics.SUCCESS;
+            return result;
+        } catch (Throwable e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            openTimeMetrics.recordOperation(timedOperation.value(), outcome, System.nanoTime() - start);
+        }
+    }
+
+    private static String outcomeOf(Throwable e) {
+        if (e instanceof AppointmentExistsException || e instanceof ConcurrencyException) {
+            return OpenTimeMetrics.CONFLICT;
+        }
+        if (e instanceof OptimisticLockingFailureException || e instanceof OptimisticLockException) {
+            return OpenTimeMetrics.OPTIMISTIC_LOCK;
+        }
+        if (e instanceof OpenTimeNotFoundException || e instanceof PatientNotFoundException) {
+            return OpenTimeMetrics.NOT_FOUND;
+        }
+        if (e instanceof IllegalArgumentException) {
+            return OpenTimeMetrics.INVALID;
+        }
+        return OpenTimeMetrics.ERROR;
+    }
+}
@@ -0,0 +1,104 @@
+package com.blubank.doctorappointment.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_TIME_ID_ALLOCATION;
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_TIME_SEQUENCE;
+import static com.blubank.doctorappointment.helper.AppConstants.PATIENT_IDENTITY_CONSTRAINT;
+
+// note: data fixes that ddl-auto=update cannot make, run once the jpa schema is in place (the transaction
+// manager is built on the entity manager factory) and before the web server takes requests. each step is
+// idempotent, so every node runs them on every start.
+@Slf4j
+@Component
+public class SchemaUpgrade {
+    private static final String DUPLICATE_OF = "select min(k.id) from patient d join patient k " +
+            "on k.phone_number = d.phone_number and k.name = d.name where d.id = ";
+
+    private static final String IS_DUPLICATE = "exists (select 1 from patient k " +
+            "where k.phone_number = p.phone_number and k.name = p.name and k.id < p.id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PostConstruct
+    public void upgrade() {
+        dedupePatients();
+        restartOpenTimeSequence();
+    }
+
+    // note: uk_patient_phone_name came after patients were created without it, hibernate then skips the
+    // constraint quietly while duplicates exist. the appointments of a duplicate move to the oldest patient
+    // of the same (phone number, name), the duplicates are deleted and the constraint is added.
+    void dedupePatients() {
+        Integer merged = new TransactionTemplate(transactionManager).execute(status -> {
+            int duplicates = jdbcTemplate.queryForObject(
+                    "select count(*) from patient p where " + IS_DUPLICATE, Integer.class);
+            if (duplicates == 0) {
+                return 0;
+            }
+            for (String table : new String[]{"appointment", "archived_appointment"}) {
+                jdbcTemplate.update("update " + table + " a set patient_id = (" + DUPLICATE_OF + "a.patient_id) " +
+                        "where a.patient_id in (select p.id from patient p where " + IS_DUPLICATE + ")");
+            }
+            return jdbcTemplate.update("delete from patient p where " + IS_DUPLICATE);
+        });
+        if (merged != null && merged > 0) {
+            log.warn("Merged {} duplicate patients into the oldest patient of the same phone number and name", merged);
+        }
+
+        if (patientIdentityConstraintExists()) {
+            return;
+        }
+        // note: another node starting at the same time may add it first, any other failure stops the start
+        try {
+            jdbcTemplate.execute("alter table patient add constraint " + PATIENT_IDENTITY_CONSTRAINT +
+                    " unique (phone_number, name)");
+            log.info("Added constraint {}", PATIENT_IDENTITY_CONSTRAINT);
+        } catch (DataAccessException e) {
+            if (!patientIdentityConstraintExists()) {
+                throw e;
+            }
+        }
+    }
+
+    private boolean patientIdentityConstraintExists() {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.table_constraints " +
+                "where lower(constraint_name) = ? and constraint_schema = current_schema", Integer.class,
+                PATIENT_IDENTITY_CONSTRAINT) > 0;
+    }
+
+    // note: open time ids came from an identity column before open_time_seq, which hibernate creates starting at 1.
+    // the pooled optimizer hands out the OPEN_TIME_ID_ALLOCATION ids up to each sequence value, so the sequence is
+    // moved past the highest id in use (archived open times keep theirs) when its next block would reach it. a
+    // sequence already ahead is left alone, restarting it would hand out again blocks other nodes hold. the next
+    // value is read from information_schema instead of calling nextval, which would drop a block on every start.
+    void restartOpenTimeSequence() {
+        long next = openTimeSequenceNextValue();
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from (select max(id) as id from open_time " +
+                "union all select max(id) as id from archived_open_time) ids", Long.class);
+        if (maxId == null || next - OPEN_TIME_ID_ALLOCATION >= maxId) {
+            return;
+        }
+
+        long restart = maxId + OPEN_TIME_ID_ALLOCATION;
+        jdbcTemplate.execute("alter sequence " + OPEN_TIME_SEQUENCE + " restart with " + restart);
+        log.warn("Restarted {} at {}, it was behind the open time ids in use", OPEN_TIME_SEQUENCE, restart);
+    }
+
+    private long openTimeSequenceNextValue() {
+        return jdbcTemplate.queryForObject("select base_value from information_schema.sequences " +
+                "where lower(sequence_name) = ? and sequence_schema = current_schema", Long.class, OPEN_TIME_SEQUENCE);
+    }
+}
@@ -0,0 +1,58 @@
+package com.blubank.doctorappointment.config;
+
+import com.blubank.doctorappointment.helper.SqlStatementCounter;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+// note: every statement that goes through the datasource is counted per thread,
+// SqlMetricsInterceptor turns the counts of each request into metrics tagged by endpoint.
+@Configuration
+public class SqlMetricsConfig implements WebMvcConfigurer {
+    @Autowired
+    private SqlMetricsInterceptor sqlMetricsInterceptor;
+
+    @Bean
+    public static BeanPostProcessor sqlCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create((DataSource) bean)
+                        .name(beanName)
+                        .listener(new StatementCountingListener())
+                        .build();
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(sqlMetricsInterceptor);
+    }
+
+    // note: a jdbc batch is one round trip, so it counts as one statement
+    private static class StatementCountingListener implements QueryExecutionListener {
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            SqlStatementCounter.record(execInfo.getElapsedTime());
+        }
+    }
+}
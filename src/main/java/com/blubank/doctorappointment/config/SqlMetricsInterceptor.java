@@ -0,0 +1,71 @@
+package com.blubank.doctorappointment.config;
+
+import com.blubank.doctorappointment.helper.SqlStatementCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+import static com.blubank.doctorappointment.helper.AppConstants.SQL_STATEMENTS_METRIC;
+import static com.blubank.doctorappointment.helper.AppConstants.SQL_TIME_METRIC;
+
+// note: records the statements run on the request thread plus the ones reported by async reads.
+// for async requests the request thread part is kept until the async dispatch completes the request.
+// statements run by the thread writing a streamed body are not attributed to the endpoint.
+@Component
+public class SqlMetricsInterceptor implements AsyncHandlerInterceptor {
+    private static final String SNAPSHOT_ATTRIBUTE = SqlMetricsInterceptor.class.getName() + ".snapshot";
+    private static final String PENDING_ATTRIBUTE = SqlMetricsInterceptor.class.getName() + ".pending";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            request.setAttribute(SNAPSHOT_ATTRIBUTE, SqlStatementCounter.snapshot());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        Object before = request.getAttribute(SNAPSHOT_ATTRIBUTE);
+        if (before instanceof SqlStatementCounter.Snapshot) {
+            request.removeAttribute(SNAPSHOT_ATTRIBUTE);
+            request.setAttribute(PENDING_ATTRIBUTE, SqlStatementCounter.since((SqlStatementCounter.Snapshot) before));
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        SqlStatementCounter.Snapshot used;
+        Object before = request.getAttribute(SNAPSHOT_ATTRIBUTE);
+        Object pending = request.getAttribute(PENDING_ATTRIBUTE);
+        if (before instanceof SqlStatementCounter.Snapshot) {
+            request.removeAttribute(SNAPSHOT_ATTRIBUTE);
+            used = SqlStatementCounter.since((SqlStatementCounter.Snapshot) before);
+        } else if (pending instanceof SqlStatementCounter.Snapshot) {
+            request.removeAttribute(PENDING_ATTRIBUTE);
+            used = (SqlStatementCounter.Snapshot) pending;
+        } else {
+            return;
+        }
+        used = used.plus(SqlStatementCounter.offThreadUsed(request));
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Tags tags = Tags.of("endpoint", pattern == null ? "UNKNOWN" : pattern.toString(),
+                "method", request.getMethod());
+        meterRegistry.summary(SQL_STATEMENTS_METRIC, tags).record(used.getStatements());
+        meterRegistry.timer(SQL_TIME_METRIC, tags).record(used.getElapsedMillis(), TimeUnit.MILLISECONDS);
+    }
+}
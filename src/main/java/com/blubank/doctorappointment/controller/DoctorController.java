@@ -1,22 +1,54 @@
 package com.blubank.doctorappointment.controller;
 
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeRangeDeleteResult;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.dto.ScheduleTemplateRequest;
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
 import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
 import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
 import com.blubank.doctorappointment.exception.PatientNotFoundException;
-import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.exception.ScheduleTemplateNotFoundException;
+import com.blubank.doctorappointment.helper.ETags;
+import com.blubank.doctorappointment.helper.ImportRowReader;
+import com.blubank.doctorappointment.helper.NdjsonWriter;
 import com.blubank.doctorappointment.model.Doctor;
 import com.blubank.doctorappointment.model.OpenTime;
 import com.blubank.doctorappointment.service.AppointmentService;
+import com.blubank.doctorappointment.service.ArchiveService;
+import com.blubank.doctorappointment.service.AsyncReadExecutor;
+import com.blubank.doctorappointment.service.BulkImportService;
+import com.blubank.doctorappointment.service.DayScheduleService;
+import com.blubank.doctorappointment.service.DoctorDayVersions;
 import com.blubank.doctorappointment.service.DoctorService;
 import com.blubank.doctorappointment.service.OpenTimeService;
+import com.blubank.doctorappointment.service.ScheduleTemplateService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.CSV_VALUE;
+import static com.blubank.doctorappointment.helper.AppConstants.NDJSON_VALUE;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_INTERVAL_MINUTES;
 
 @RestController
 @RequestMapping("/api/doctors")
@@ -30,65 +62,319 @@ public class DoctorController {
     @Autowired
     private AppointmentService appointmentService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AsyncReadExecutor asyncReadExecutor;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private DayScheduleService dayScheduleService;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
     @PostMapping
     public ResponseEntity<Doctor> addDoctor(@RequestBody Doctor doctor) {
         Doctor addedDoctor = doctorService.addDoctor(doctor);
         return new ResponseEntity<>(addedDoctor, HttpStatus.CREATED);
     }
 
+    // note: csv with a header line (name) or ndjson, one json line per rejected row then the summary
+    @PostMapping(value = "/import", consumes = {CSV_VALUE, NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> importDoctors(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        return importRows(BulkImportService.Kind.DOCTORS, contentType, body);
+    }
+
+    // note: rows of doctorId, date, startTime, endTime and an optional slotMinutes, one row per doctor-day
+    @PostMapping(value = "/import-schedules", consumes = {CSV_VALUE, NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> importSchedules(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        return importRows(BulkImportService.Kind.SCHEDULES, contentType, body);
+    }
+
     @GetMapping("/{doctorId}")
     public ResponseEntity<Object> getDoctor(@PathVariable Long doctorId) {
-        Doctor doctor = doctorService.getDoctor(doctorId);
+        DoctorView doctor = doctorService.getDoctor(doctorId);
         return new ResponseEntity<>(doctor == null ? "No doctor found" : doctor, HttpStatus.OK);
     }
 
     @GetMapping
-    public ResponseEntity<Object> getAllDoctors() {
-        List<Doctor> doctors = doctorService.getAllDoctors();
+    public ResponseEntity<Object> getAllDoctors(ListQuery query) {
+        try {
+            if (query.isPaged()) {
+                return new ResponseEntity<>(doctorService.getDoctorsPage(query), HttpStatus.OK);
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+
+        List<DoctorView> doctors = doctorService.getAllDoctors();
         return new ResponseEntity<>(doctors.isEmpty() ? "There is no doctor" : doctors, HttpStatus.OK);
     }
 
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamDoctors() {
+        return ndjson(writer -> doctorService.streamDoctors(writer::write));
+    }
+
+    // note: the etag is the doctor's version, every slot change of the doctor bumps it. pages share it too,
+    // a page is only determined by the doctor's rows and its query parameters.
     @GetMapping("/{doctorId}/appointments")
-    public ResponseEntity<Object> getDoctorAppointments(@PathVariable Long doctorId) {
-        List<Appointment> appointments = appointmentService.getDoctorAppointments(doctorId);
-        return new ResponseEntity<>(appointments.isEmpty() ?
-                "There is no appointment related to doctor" : appointments, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<Object>> getDoctorAppointments(
+            @PathVariable Long doctorId, ListQuery query,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = ETags.of(doctorDayVersions.doctorVersion(doctorId));
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return CompletableFuture.completedFuture(notModified(eTag));
+        }
+
+        return asyncReadExecutor.supply(() -> {
+            try {
+                if (query.isPaged()) {
+                    return ResponseEntity.ok().eTag(eTag).body(
+                            appointmentService.getDoctorAppointmentsPage(doctorId, query));
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+
+            List<AppointmentView> appointments = appointmentService.getDoctorAppointments(doctorId);
+            return ResponseEntity.ok().eTag(eTag).body(appointments.isEmpty() ?
+                    "There is no appointment related to doctor" : appointments);
+        });
+    }
+
+    @GetMapping(value = "/{doctorId}/appointments", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamDoctorAppointments(@PathVariable Long doctorId, ListQuery query) {
+        return ndjson(writer -> appointmentService.streamDoctorAppointments(doctorId, query, writer::write));
     }
 
     @GetMapping("/{doctorId}/opentimes")
-    public ResponseEntity<Object> getAllOpenTimes(
-            @PathVariable Long doctorId) {
-        List<OpenTime> openTimes = openTimeService.getOpenTimes(doctorId);
-        return new ResponseEntity<>(openTimes.isEmpty() ?
-                "There is no open time related to doctor" : openTimes, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<Object>> getAllOpenTimes(
+            @PathVariable Long doctorId, ListQuery query,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = ETags.of(doctorDayVersions.doctorVersion(doctorId));
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return CompletableFuture.completedFuture(notModified(eTag));
+        }
+
+        return asyncReadExecutor.supply(() -> {
+            try {
+                if (query.isPaged()) {
+                    return ResponseEntity.ok().eTag(eTag).body(openTimeService.getOpenTimesPage(doctorId, query));
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+
+            List<OpenTimeView> openTimes = openTimeService.getOpenTimes(doctorId);
+            return ResponseEntity.ok().eTag(eTag).body(openTimes.isEmpty() ?
+                    "There is no open time related to doctor" : openTimes);
+        });
+    }
+
+    @GetMapping("/{doctorId}/appointments/history")
+    public CompletableFuture<ResponseEntity<Object>> getDoctorAppointmentHistory(@PathVariable Long doctorId,
+                                                                                ListQuery query) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                return new ResponseEntity<>(archiveService.getDoctorAppointmentHistory(doctorId, query), HttpStatus.OK);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
+    }
+
+    @GetMapping("/{doctorId}/opentimes/history")
+    public CompletableFuture<ResponseEntity<Object>> getOpenTimeHistory(@PathVariable Long doctorId, ListQuery query) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                return new ResponseEntity<>(archiveService.getOpenTimeHistory(doctorId, query), HttpStatus.OK);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
+    }
+
+    @GetMapping(value = "/{doctorId}/opentimes", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamOpenTimes(@PathVariable Long doctorId, ListQuery query) {
+        return ndjson(writer -> openTimeService.streamOpenTimes(doctorId, query, writer::write));
     }
 
     @PostMapping("/{doctorId}/add-opentimes")
     public ResponseEntity<Object> addOpenTimesForDoctor(
             @PathVariable Long doctorId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "" + OPENTIME_INTERVAL_MINUTES) int slotMinutes) {
+        try {
+            List<OpenTime> openTimes = openTimeService.addOpenTimesForDoctor(doctorId, start, end, slotMinutes);
+            return new ResponseEntity<>(openTimes == null ? null :
+                    openTimes.stream().map(OpenTimeView::of).collect(Collectors.toList()), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{doctorId}/publish-schedule")
+    public ResponseEntity<StreamingResponseBody> publishSchedule(
+            @PathVariable Long doctorId,
+            @RequestBody SchedulePublishRequest request) {
+        if (doctorService.getDoctor(doctorId) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(text("No doctor found"));
+        }
+
+        try {
+            openTimeService.validateSchedulePublishRequest(request);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(text(e.getMessage()));
+        }
+
+        // note: one json line per committed day
+        return ndjson(writer -> openTimeService.publishSchedule(doctorId, request, writer::write));
+    }
+
+    @PostMapping("/{doctorId}/publish-day-schedule")
+    public ResponseEntity<Object> publishDaySchedule(
+            @PathVariable Long doctorId,
+            @RequestBody SchedulePublishRequest request) {
+        try {
+            return new ResponseEntity<>(dayScheduleService.publish(doctorId, request), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{doctorId}/schedule-templates")
+    public ResponseEntity<Object> addScheduleTemplate(
+            @PathVariable Long doctorId,
+            @RequestBody ScheduleTemplateRequest request) {
+        if (doctorService.getDoctor(doctorId) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No doctor found");
+        }
+
         try {
-            List<OpenTime> openTimes = openTimeService.addOpenTimesForDoctor(doctorId, start, end);
-            return new ResponseEntity<>(openTimes, HttpStatus.OK);
+            return new ResponseEntity<>(scheduleTemplateService.addTemplate(doctorId, request), HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
+    @GetMapping("/{doctorId}/schedule-templates")
+    public ResponseEntity<Object> getScheduleTemplates(@PathVariable Long doctorId) {
+        List<ScheduleTemplateView> templates = scheduleTemplateService.getTemplates(doctorId);
+        return new ResponseEntity<>(templates.isEmpty() ?
+                "There is no schedule template for the doctor" : templates, HttpStatus.OK);
+    }
+
+    @DeleteMapping("/{doctorId}/schedule-templates/{templateId}")
+    public ResponseEntity<Object> deleteScheduleTemplate(
+            @PathVariable Long doctorId,
+            @PathVariable Long templateId) {
+        try {
+            return new ResponseEntity<>(scheduleTemplateService.deleteTemplate(doctorId, templateId), HttpStatus.OK);
+        } catch (ScheduleTemplateNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{doctorId}/schedule-templates/{templateId}/excluded-dates/{date}")
+    public ResponseEntity<Object> addScheduleTemplateExcludedDate(
+            @PathVariable Long doctorId,
+            @PathVariable Long templateId,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            return new ResponseEntity<>(scheduleTemplateService.addExcludedDate(doctorId, templateId, date),
+                    HttpStatus.OK);
+        } catch (ScheduleTemplateNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{doctorId}/schedule-templates/{templateId}/excluded-dates/{date}")
+    public ResponseEntity<Object> removeScheduleTemplateExcludedDate(
+            @PathVariable Long doctorId,
+            @PathVariable Long templateId,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            return new ResponseEntity<>(scheduleTemplateService.removeExcludedDate(doctorId, templateId, date),
+                    HttpStatus.OK);
+        } catch (ScheduleTemplateNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    // note: closes a single slot of the doctor's schedule templates, open times added explicitly are deleted
+    // through delete-opentime instead
+    @DeleteMapping("/{doctorId}/template-slots")
+    public ResponseEntity<Object> closeTemplateSlotForDoctor(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime) {
+        try {
+            OpenTime openTime = openTimeService.closeTemplateSlotForDoctor(doctorId, startTime);
+            return new ResponseEntity<>(OpenTimeView.of(openTime), HttpStatus.OK);
+        } catch (OpenTimeNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AppointmentExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{doctorId}/delete-opentime/{openTimeId}")
     public ResponseEntity<Object> deleteOpenTimeForDoctor(
             @PathVariable Long doctorId,
             @PathVariable Long openTimeId) {
         try {
             OpenTime openTime = openTimeService.deleteOpenTimeForDoctor(doctorId, openTimeId);
-            return new ResponseEntity<>(openTime, HttpStatus.OK);
+            return new ResponseEntity<>(OpenTimeView.of(openTime), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (OpenTimeNotFoundException | PatientNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
-        } catch (AppointmentExistsException e) {
+        } catch (AppointmentExistsException | ConcurrencyException | OptimisticLockingFailureException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @DeleteMapping("/{doctorId}/opentimes")
+    public ResponseEntity<Object> deleteOpenTimesForDoctorBetween(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        try {
+            OpenTimeRangeDeleteResult result = openTimeService.deleteOpenTimesForDoctorBetween(doctorId, start, end);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> importRows(BulkImportService.Kind kind, String contentType,
+                                                             InputStream body) {
+        ImportRowReader.Format format = ImportRowReader.Format.of(contentType);
+        return ndjson(writer -> bulkImportService.importRows(kind, format, body, writer));
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<NdjsonWriter> producer) {
+        return NdjsonWriter.response(objectMapper, producer);
+    }
+
+    private static ResponseEntity<Object> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    private static StreamingResponseBody text(String message) {
+        return outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,22 +1,55 @@
 package com.blubank.doctorappointment.controller;
 
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SlotHold;
 import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
 import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.exception.PatientExistsException;
 import com.blubank.doctorappointment.exception.PatientNotFoundException;
+import com.blubank.doctorappointment.exception.SlotHoldNotFoundException;
+import com.blubank.doctorappointment.exception.TooManySubscribersException;
+import com.blubank.doctorappointment.helper.ETags;
+import com.blubank.doctorappointment.helper.ImportRowReader;
+import com.blubank.doctorappointment.helper.NdjsonWriter;
 import com.blubank.doctorappointment.model.Appointment;
-import com.blubank.doctorappointment.model.OpenTime;
 import com.blubank.doctorappointment.model.Patient;
 import com.blubank.doctorappointment.service.AppointmentService;
+import com.blubank.doctorappointment.service.ArchiveService;
+import com.blubank.doctorappointment.service.AsyncReadExecutor;
+import com.blubank.doctorappointment.service.AvailabilityEventBus;
+import com.blubank.doctorappointment.service.BulkImportService;
+import com.blubank.doctorappointment.service.DayBodyCache;
+import com.blubank.doctorappointment.service.DayScheduleService;
+import com.blubank.doctorappointment.service.BookingService;
+import com.blubank.doctorappointment.service.DoctorDayVersions;
 import com.blubank.doctorappointment.service.OpenTimeService;
 import com.blubank.doctorappointment.service.PatientService;
+import com.blubank.doctorappointment.service.SlotHoldService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.blubank.doctorappointment.helper.AppConstants.CSV_VALUE;
+import static com.blubank.doctorappointment.helper.AppConstants.DEFAULT_EARLIEST_SLOTS;
+import static com.blubank.doctorappointment.helper.AppConstants.NDJSON_VALUE;
 
 @RestController
 @RequestMapping("/api/patients")
@@ -30,19 +63,139 @@ public class PatientController {
     @Autowired
     private OpenTimeService openTimeService;
 
+    @Autowired(required = false)
+    private SlotHoldService slotHoldService;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AsyncReadExecutor asyncReadExecutor;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private DayScheduleService dayScheduleService;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private DayBodyCache dayBodyCache;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
     @PostMapping
-    public ResponseEntity<Patient> addPatient(@RequestBody Patient patient) {
-        Patient addedPatient = patientService.addPatient(patient);
-        return new ResponseEntity<>(addedPatient, HttpStatus.CREATED);
+    public ResponseEntity<Object> addPatient(@RequestBody Patient patient) {
+        try {
+            Patient addedPatient = patientService.addPatient(patient);
+            return new ResponseEntity<>(addedPatient, HttpStatus.CREATED);
+        } catch (PatientExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    // note: csv with a header line (name, phoneNumber) or ndjson, one json line per rejected row then the summary.
+    // patients whose phone number and name are already known are skipped and counted as duplicates.
+    @PostMapping(value = "/import", consumes = {CSV_VALUE, NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> importPatients(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        ImportRowReader.Format format = ImportRowReader.Format.of(contentType);
+        return NdjsonWriter.response(objectMapper,
+                writer -> bulkImportService.importRows(BulkImportService.Kind.PATIENTS, format, body, writer));
     }
 
+    // note: unchanged days are answered from the version alone (304) or from the cached json of the day,
+    // neither reads the index nor serializes
     @GetMapping("/{doctorId}/opentimes/{date}")
-    public ResponseEntity<Object> getOpenTimesForDoctorOnDay(
+    public CompletableFuture<ResponseEntity<Object>> getOpenTimesForDoctorOnDay(
+            @PathVariable Long doctorId,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        long version = doctorDayVersions.dayVersion(doctorId, date);
+        String eTag = ETags.of(version);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return CompletableFuture.completedFuture(notModified(eTag));
+        }
+
+        byte[] cached = dayBodyCache.get(doctorId, date, version);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(json(eTag, cached));
+        }
+
+        return asyncReadExecutor.supply(() -> {
+            List<OpenTimeView> openTimes = openTimeService.getOpenTimesForDoctorOnDay(doctorId, date);
+            if (openTimes.isEmpty()) {
+                return ResponseEntity.ok().eTag(eTag)
+                        .body("There is no open time for the doctor in the specified date");
+            }
+            return json(eTag, dayBodyCache.put(doctorId, date, version, openTimes));
+        });
+    }
+
+    @GetMapping("/{doctorId}/opentimes")
+    public CompletableFuture<ResponseEntity<Object>> getOpenTimesForDoctorBetween(
             @PathVariable Long doctorId,
-            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
-        List<OpenTime> openTimes = openTimeService.getOpenTimesForDoctorOnDay(doctorId, date);
-        return new ResponseEntity<>(openTimes.isEmpty() ?
-                "There is no open time for the doctor in the specified date" : openTimes, HttpStatus.OK);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag;
+        try {
+            eTag = ETags.of(doctorDayVersions.rangeVersion(doctorId, from, to));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        }
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return CompletableFuture.completedFuture(notModified(eTag));
+        }
+
+        return asyncReadExecutor.supply(() -> {
+            List<OpenTimeView> openTimes = openTimeService.getOpenTimesForDoctorBetween(doctorId, from, to);
+            return ResponseEntity.ok().eTag(eTag).body(openTimes.isEmpty() ?
+                    "There is no open time for the doctor in the specified dates" : openTimes);
+        });
+    }
+
+    // note: one long-lived connection instead of polling, a snapshot of the range first, then opened, taken and
+    // deleted events. a new snapshot follows whenever the subscriber fell behind or the range changed in bulk.
+    @GetMapping(value = "/{doctorId}/opentimes/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeToOpenTimes(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(availabilityEventBus.subscribe(doctorId, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (TooManySubscribersException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/opentimes/earliest")
+    public CompletableFuture<ResponseEntity<Object>> getEarliestOpenTimes(
+            @RequestParam(required = false) List<Long> doctorIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "" + DEFAULT_EARLIEST_SLOTS) int limit) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                List<OpenTimeView> openTimes = openTimeService.getEarliestOpenTimes(doctorIds, from, to, limit);
+                return new ResponseEntity<>(openTimes.isEmpty() ?
+                        "There is no open time in the specified dates" : openTimes, HttpStatus.OK);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
     }
 
     @PostMapping("/setAppointment/{openTimeId}")
@@ -51,22 +204,174 @@ public class PatientController {
             @RequestParam String patientName,
             @RequestParam String phoneNumber) {
         try {
-            Appointment appointment =
-                    openTimeService.setAppointmentForPatient(patientName, phoneNumber, openTimeId);
-            return new ResponseEntity<>(appointment, HttpStatus.OK);
+            Appointment appointment = bookingService.book(patientName, phoneNumber, openTimeId);
+            return new ResponseEntity<>(AppointmentView.of(appointment), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (OpenTimeNotFoundException | PatientNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AppointmentExistsException | ConcurrencyException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (RedisConnectionFailureException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+    }
+
+    @GetMapping("/{doctorId}/day-schedule")
+    public CompletableFuture<ResponseEntity<Object>> getDayScheduleOpenTimes(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                List<OpenTimeView> openTimes = dayScheduleService.getOpenTimes(doctorId, from, to);
+                return new ResponseEntity<>(openTimes.isEmpty() ?
+                        "There is no open time for the doctor in the specified dates" : openTimes, HttpStatus.OK);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
+    }
+
+    @PostMapping("/{doctorId}/day-schedule/setAppointment")
+    public ResponseEntity<Object> setDayScheduleAppointment(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam String patientName,
+            @RequestParam String phoneNumber) {
+        try {
+            Patient patient = patientService.getPatientReference(patientName, phoneNumber);
+            Appointment appointment = dayScheduleService.book(patient, doctorId, startTime);
+            return new ResponseEntity<>(AppointmentView.of(appointment), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (OpenTimeNotFoundException | PatientNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AppointmentExistsException | ConcurrencyException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{doctorId}/template-slots/setAppointment")
+    public ResponseEntity<Object> setTemplateAppointment(
+            @PathVariable Long doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam String patientName,
+            @RequestParam String phoneNumber) {
+        try {
+            Patient patient = patientService.getPatientReference(patientName, phoneNumber);
+            Appointment appointment = openTimeService.setTemplateAppointmentForPatient(patient, doctorId, startTime);
+            return new ResponseEntity<>(AppointmentView.of(appointment), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (OpenTimeNotFoundException | PatientNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AppointmentExistsException | ConcurrencyException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/holds/{openTimeId}")
+    public ResponseEntity<Object> placeHold(
+            @PathVariable Long openTimeId,
+            @RequestParam String patientName,
+            @RequestParam String phoneNumber) {
+        if (slotHoldService == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+        try {
+            SlotHold slotHold = slotHoldService.placeHold(patientName, phoneNumber, openTimeId);
+            return new ResponseEntity<>(slotHold, HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (OpenTimeNotFoundException | PatientNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (AppointmentExistsException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (RedisConnectionFailureException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+    }
+
+    @PostMapping("/holds/{openTimeId}/confirm")
+    public ResponseEntity<Object> confirmHold(
+            @PathVariable Long openTimeId,
+            @RequestParam String holdToken) {
+        if (slotHoldService == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+        try {
+            Appointment appointment = slotHoldService.confirmHold(openTimeId, holdToken);
+            return new ResponseEntity<>(AppointmentView.of(appointment), HttpStatus.OK);
+        } catch (OpenTimeNotFoundException | PatientNotFoundException | SlotHoldNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AppointmentExistsException | ConcurrencyException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (RedisConnectionFailureException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+    }
+
+    @DeleteMapping("/holds/{openTimeId}")
+    public ResponseEntity<Object> releaseHold(
+            @PathVariable Long openTimeId,
+            @RequestParam String holdToken) {
+        if (slotHoldService == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
+        }
+        try {
+            return slotHoldService.releaseHold(openTimeId, holdToken) ?
+                    ResponseEntity.noContent().build() :
+                    ResponseEntity.status(HttpStatus.NOT_FOUND).body("No active hold for the given token.");
+        } catch (RedisConnectionFailureException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Slot holds are not available.");
         }
     }
 
     @GetMapping("/{phoneNumber}/appointments")
-    public ResponseEntity<Object> getPatientAppointments(@PathVariable String phoneNumber) {
-        List<Appointment> patientAppointments = appointmentService.getPatientAppointments(phoneNumber);
-        return new ResponseEntity<>(patientAppointments.isEmpty() ?
-                "There is no appointment for the patient" : patientAppointments, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<Object>> getPatientAppointments(
+            @PathVariable String phoneNumber, ListQuery query) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                if (query.isPaged()) {
+                    return new ResponseEntity<>(
+                            appointmentService.getPatientAppointmentsPage(phoneNumber, query), HttpStatus.OK);
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+
+            List<AppointmentView> patientAppointments = appointmentService.getPatientAppointments(phoneNumber);
+            return new ResponseEntity<>(patientAppointments.isEmpty() ?
+                    "There is no appointment for the patient" : patientAppointments, HttpStatus.OK);
+        });
+    }
+
+    @GetMapping("/{phoneNumber}/appointments/history")
+    public CompletableFuture<ResponseEntity<Object>> getPatientAppointmentHistory(
+            @PathVariable String phoneNumber, ListQuery query) {
+        return asyncReadExecutor.supply(() -> {
+            try {
+                return new ResponseEntity<>(
+                        archiveService.getPatientAppointmentHistory(phoneNumber, query), HttpStatus.OK);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
+    }
+
+    @GetMapping(value = "/{phoneNumber}/appointments", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamPatientAppointments(
+            @PathVariable String phoneNumber, ListQuery query) {
+        return NdjsonWriter.response(objectMapper,
+                writer -> appointmentService.streamPatientAppointments(phoneNumber, query, writer::write));
+    }
+
+    private static ResponseEntity<Object> json(String eTag, byte[] body) {
+        return ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static ResponseEntity<Object> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+@AllArgsConstructor
+public class AppointmentView {
+    Long id;
+
+    PatientView patient;
+
+    OpenTimeView openTime;
+
+    // note: flat constructor for the jpql "select new" projections of AppointmentRepository
+    public AppointmentView(Long id, Long patientId, String patientName, String phoneNumber,
+                           Long openTimeId, LocalDateTime startTime, LocalDateTime endTime, OpenTimeStatus status,
+                           Long version, Long doctorId, String doctorName) {
+        this(id, new PatientView(patientId, patientName, phoneNumber),
+                new OpenTimeView(openTimeId, startTime, endTime, status, version, doctorId, doctorName));
+    }
+
+    public static AppointmentView of(Appointment appointment) {
+        return new AppointmentView(appointment.getId(), PatientView.of(appointment.getPatient()),
+                OpenTimeView.of(appointment.getOpenTime()));
+    }
+}
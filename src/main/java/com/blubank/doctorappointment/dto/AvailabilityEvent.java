@@ -0,0 +1,34 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.OpenTime;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+// note: one change of a doctor's availability as pushed to feed subscribers.
+// RESYNC carries no slot, it tells that the slots between startTime and endTime changed in bulk.
+@Value
+public class AvailabilityEvent {
+    public enum Type {
+        OPENED, TAKEN, DELETED, RESYNC
+    }
+
+    Type type;
+
+    Long doctorId;
+
+    Long openTimeId;
+
+    LocalDateTime startTime;
+
+    LocalDateTime endTime;
+
+    public static AvailabilityEvent of(Type type, OpenTime openTime) {
+        return new AvailabilityEvent(type, openTime.getDoctor().getId(), openTime.getId(),
+                openTime.getStartTime(), openTime.getEndTime());
+    }
+
+    public static AvailabilityEvent resync(Long doctorId, LocalDateTime from, LocalDateTime to) {
+        return new AvailabilityEvent(Type.RESYNC, doctorId, null, from, to);
+    }
+}
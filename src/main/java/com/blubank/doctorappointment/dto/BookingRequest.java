@@ -0,0 +1,20 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Patient;
+import lombok.Value;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Value
+public class BookingRequest {
+    Patient patient;
+
+    OpenTimeSlot slot;
+
+    CompletableFuture<Appointment> result = new CompletableFuture<>();
+
+    // note: set once by whoever owns the request, the writer taking it from the queue or the caller giving up
+    AtomicBoolean claimed = new AtomicBoolean();
+}
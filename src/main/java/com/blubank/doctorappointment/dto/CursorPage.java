@@ -0,0 +1,25 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+
+    private String nextCursor;
+
+    // note: rows are fetched with pageSize + 1, the extra row only tells that there is a next page
+    public static <T> CursorPage<T> of(List<T> rows, int pageSize, Function<T, String> cursorOf) {
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+
+        List<T> items = rows.subList(0, pageSize);
+        return new CursorPage<>(items, cursorOf.apply(items.get(pageSize - 1)));
+    }
+}
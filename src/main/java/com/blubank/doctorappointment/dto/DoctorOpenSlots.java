@@ -0,0 +1,7 @@
+package com.blubank.doctorappointment.dto;
+
+public interface DoctorOpenSlots {
+    Long getDoctorId();
+
+    Long getOpenSlots();
+}
@@ -0,0 +1,11 @@
+package com.blubank.doctorappointment.dto;
+
+import java.time.LocalDateTime;
+
+public interface DoctorTimeRange {
+    Long getDoctorId();
+
+    LocalDateTime getFromTime();
+
+    LocalDateTime getToTime();
+}
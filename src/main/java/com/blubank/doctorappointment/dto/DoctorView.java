@@ -0,0 +1,19 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.Doctor;
+import lombok.Value;
+
+import java.io.Serializable;
+
+@Value
+public class DoctorView implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+
+    String name;
+
+    public static DoctorView of(Doctor doctor) {
+        return new DoctorView(doctor.getId(), doctor.getName());
+    }
+}
@@ -0,0 +1,12 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ImportRowError {
+    private int line;
+
+    private String message;
+}
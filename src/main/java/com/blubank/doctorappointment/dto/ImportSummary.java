@@ -0,0 +1,16 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ImportSummary {
+    private int rows;
+
+    private int imported;
+
+    private int duplicates;
+
+    private int rejected;
+}
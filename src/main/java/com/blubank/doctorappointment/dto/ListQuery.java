@@ -0,0 +1,51 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DEFAULT_PAGE_SIZE;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_DATE_TIME;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_PAGE_SIZE;
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_DATE_TIME;
+
+// note: optional query parameters of the list endpoints, a list is paged as soon as one of them is given
+@Data
+public class ListQuery {
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+
+    private OpenTimeStatus status;
+
+    private String cursor;
+
+    private Integer limit;
+
+    public boolean isPaged() {
+        return from != null || to != null || status != null || cursor != null || limit != null;
+    }
+
+    public LocalDateTime fromOrMin() {
+        return from == null ? MIN_DATE_TIME : from;
+    }
+
+    public LocalDateTime toOrMax() {
+        return to == null ? MAX_DATE_TIME : to;
+    }
+
+    public int pageSize() {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid limit: the limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return limit;
+    }
+}
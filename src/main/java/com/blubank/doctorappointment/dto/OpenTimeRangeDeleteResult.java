@@ -0,0 +1,14 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class OpenTimeRangeDeleteResult {
+    private int deletedOpenTimes;
+
+    private List<OpenTimeView> skippedTakenOpenTimes;
+}
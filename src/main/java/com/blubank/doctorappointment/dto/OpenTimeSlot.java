@@ -0,0 +1,21 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+
+import java.time.LocalDateTime;
+
+public interface OpenTimeSlot {
+    Long getId();
+
+    LocalDateTime getStartTime();
+
+    LocalDateTime getEndTime();
+
+    OpenTimeStatus getStatus();
+
+    Long getVersion();
+
+    Long getDoctorId();
+
+    String getDoctorName();
+}
@@ -0,0 +1,35 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+@AllArgsConstructor
+public class OpenTimeView {
+    Long id;
+
+    LocalDateTime startTime;
+
+    LocalDateTime endTime;
+
+    OpenTimeStatus status;
+
+    DoctorView doctor;
+
+    Long version;
+
+    // note: flat constructor for the jpql "select new" projections of OpenTimeRepository
+    public OpenTimeView(Long id, LocalDateTime startTime, LocalDateTime endTime, OpenTimeStatus status, Long version,
+                        Long doctorId, String doctorName) {
+        this(id, startTime, endTime, status, new DoctorView(doctorId, doctorName), version);
+    }
+
+    public static OpenTimeView of(OpenTime openTime) {
+        return new OpenTimeView(openTime.getId(), openTime.getStartTime(), openTime.getEndTime(), openTime.getStatus(),
+                DoctorView.of(openTime.getDoctor()), openTime.getVersion());
+    }
+}
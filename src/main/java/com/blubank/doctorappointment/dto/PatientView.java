@@ -0,0 +1,17 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.Patient;
+import lombok.Value;
+
+@Value
+public class PatientView {
+    Long id;
+
+    String name;
+
+    String phoneNumber;
+
+    public static PatientView of(Patient patient) {
+        return new PatientView(patient.getId(), patient.getName(), patient.getPhoneNumber());
+    }
+}
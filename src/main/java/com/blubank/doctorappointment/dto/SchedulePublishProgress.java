@@ -0,0 +1,20 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class SchedulePublishProgress {
+    private LocalDate date;
+
+    private int createdOpenTimes;
+
+    private int totalCreatedOpenTimes;
+
+    private int processedDays;
+
+    private int totalDays;
+}
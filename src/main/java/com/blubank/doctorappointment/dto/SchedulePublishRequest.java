@@ -0,0 +1,26 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.Data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+@Data
+public class SchedulePublishRequest {
+    private LocalDate fromDate;
+
+    private LocalDate toDate;
+
+    private LocalTime dailyStartTime;
+
+    private LocalTime dailyEndTime;
+
+    private Integer slotMinutes;
+
+    private Set<DayOfWeek> excludedDaysOfWeek = new HashSet<>();
+
+    private Set<LocalDate> excludedDates = new HashSet<>();
+}
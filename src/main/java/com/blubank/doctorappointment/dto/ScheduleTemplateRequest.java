@@ -0,0 +1,26 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.Data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+@Data
+public class ScheduleTemplateRequest {
+    private DayOfWeek dayOfWeek;
+
+    private LocalTime startTime;
+
+    private LocalTime endTime;
+
+    private Integer slotMinutes;
+
+    private LocalDate validFrom;
+
+    private LocalDate validTo;
+
+    private Set<LocalDate> excludedDates = new HashSet<>();
+}
@@ -0,0 +1,61 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.ScheduleTemplate;
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Set;
+
+@Value
+public class ScheduleTemplateView implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+
+    Long doctorId;
+
+    DayOfWeek dayOfWeek;
+
+    LocalTime startTime;
+
+    LocalTime endTime;
+
+    int slotMinutes;
+
+    LocalDate validFrom;
+
+    LocalDate validTo;
+
+    Set<LocalDate> excludedDates;
+
+    public static ScheduleTemplateView of(ScheduleTemplate template) {
+        return new ScheduleTemplateView(template.getId(), template.getDoctorId(), template.getDayOfWeek(),
+                template.getStartTime(), template.getEndTime(), template.getSlotMinutes(), template.getValidFrom(),
+                template.getValidTo(), Set.copyOf(template.getExcludedDates()));
+    }
+
+    public boolean isValidBetween(LocalDate fromDate, LocalDate toDate) {
+        return !validFrom.isAfter(toDate) && (validTo == null || !validTo.isBefore(fromDate));
+    }
+
+    public boolean appliesTo(LocalDate date) {
+        return date.getDayOfWeek() == dayOfWeek && isValidBetween(date, date) && !excludedDates.contains(date);
+    }
+
+    // note: a slot that already started can no longer be booked or closed
+    public boolean hasSlotAt(LocalDateTime startDateTime) {
+        if (startDateTime.isBefore(LocalDateTime.now()) || !appliesTo(startDateTime.toLocalDate())) {
+            return false;
+        }
+
+        LocalTime time = startDateTime.toLocalTime();
+        long offsetSeconds = Duration.between(startTime, time).getSeconds();
+        return offsetSeconds >= 0 && offsetSeconds % (slotMinutes * 60L) == 0
+                && !time.plusMinutes(slotMinutes).isAfter(endTime);
+    }
+}
@@ -0,0 +1,50 @@
+package com.blubank.doctorappointment.dto;
+
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// note: cluster-side state of one open time. patientId is set by the booking that took the slot in the map.
+@Data
+public class SlotBooking implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long doctorId;
+
+    private String doctorName;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime endTime;
+
+    private OpenTimeStatus status;
+
+    private Long version;
+
+    private Long patientId;
+
+    public static SlotBooking of(OpenTimeSlot slot) {
+        SlotBooking slotBooking = new SlotBooking();
+        slotBooking.setDoctorId(slot.getDoctorId());
+        slotBooking.setDoctorName(slot.getDoctorName());
+        slotBooking.setStartTime(slot.getStartTime());
+        slotBooking.setEndTime(slot.getEndTime());
+        slotBooking.setStatus(slot.getStatus());
+        slotBooking.setVersion(slot.getVersion());
+        return slotBooking;
+    }
+
+    public SlotBooking withStatus(OpenTimeStatus newStatus, Long bookedBy) {
+        SlotBooking slotBooking = new SlotBooking();
+        slotBooking.setDoctorId(doctorId);
+        slotBooking.setDoctorName(doctorName);
+        slotBooking.setStartTime(startTime);
+        slotBooking.setEndTime(endTime);
+        slotBooking.setStatus(newStatus);
+        slotBooking.setVersion(version);
+        slotBooking.setPatientId(bookedBy);
+        return slotBooking;
+    }
+}
@@ -0,0 +1,16 @@
+package com.blubank.doctorappointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class SlotHold {
+    private Long openTimeId;
+
+    private String holdToken;
+
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,21 @@
+package com.blubank.doctorappointment.dto;
+
+import com.hazelcast.partition.PartitionAware;
+import lombok.Value;
+
+import java.io.Serializable;
+
+// note: partitioned by doctor, so all slots of a doctor are owned by the same cluster member
+@Value
+public class SlotKey implements PartitionAware<Long>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    Long openTimeId;
+
+    Long doctorId;
+
+    @Override
+    public Long getPartitionKey() {
+        return doctorId;
+    }
+}
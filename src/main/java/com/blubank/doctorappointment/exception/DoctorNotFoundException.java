@@ -0,0 +1,7 @@
+package com.blubank.doctorappointment.exception;
+
+public class DoctorNotFoundException extends RuntimeException {
+    public DoctorNotFoundException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
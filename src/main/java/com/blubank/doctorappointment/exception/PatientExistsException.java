@@ -0,0 +1,7 @@
+package com.blubank.doctorappointment.exception;
+
+public class PatientExistsException extends RuntimeException {
+    public PatientExistsException(String message) {
+        super(message);
+    }
+}
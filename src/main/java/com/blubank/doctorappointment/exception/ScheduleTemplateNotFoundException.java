@@ -0,0 +1,7 @@
+package com.blubank.doctorappointment.exception;
+
+public class ScheduleTemplateNotFoundException extends RuntimeException {
+    public ScheduleTemplateNotFoundException(String message) {
+        super(message);
+    }
+}
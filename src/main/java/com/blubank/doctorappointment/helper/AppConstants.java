@@ -1,5 +1,49 @@
 package com.blubank.doctorappointment.helper;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
 public class AppConstants {
+    public static final String DOCTORS_CACHE = "doctors";
+    public static final String DOCTOR_LIST_CACHE = "doctor-list";
+    public static final String DAY_AVAILABILITY_CACHE = "day-availability";
+    public static final String SLOT_BOOKING_MAP = "slot-bookings";
+    public static final String DOCTOR_DAY_VERSION_MAP = "doctor-day-versions";
+    public static final String SCHEDULED_JOB_LOCK_MAP = "scheduled-job-locks";
+    public static final String SCHEDULE_TEMPLATES_CACHE = "schedule-templates";
+    public static final String SCHEDULE_TEMPLATE_DOCTORS_CACHE = "schedule-template-doctors";
+    public static final String DAY_SCHEDULE_DOCTORS_CACHE = "day-schedule-doctors";
+
+    public static final String PATIENT_IDENTITY_CONSTRAINT = "uk_patient_phone_name";
+    public static final String OPEN_TIME_SEQUENCE = "open_time_seq";
+    public static final int OPEN_TIME_ID_ALLOCATION = 50;
+
     public static final int OPENTIME_INTERVAL_MINUTES = 30;
+    public static final int MIN_SLOT_MINUTES = 5;
+    public static final int MAX_SLOT_MINUTES = 8 * 60;
+    public static final int MAX_AVAILABILITY_RANGE_DAYS = 31;
+    public static final int DEFAULT_EARLIEST_SLOTS = 10;
+    public static final int MAX_EARLIEST_SLOTS = 100;
+    public static final int MAX_SCHEDULE_PUBLISH_DAYS = 366;
+    public static final int SCHEDULE_PUBLISH_DAYS_PER_TRANSACTION = 7;
+    public static final int MAX_DELETE_RANGE_DAYS = 366;
+    public static final int MAX_IN_LIST_SIZE = 1000;
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+    public static final int MAX_IMPORT_COMMIT_SIZE = 1000;
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int STREAM_FETCH_SIZE = 500;
+    public static final LocalDateTime MIN_DATE_TIME = LocalDate.of(1970, 1, 1).atStartOfDay();
+    public static final LocalDateTime MAX_DATE_TIME = LocalDate.of(9999, 1, 1).atStartOfDay();
+    public static final String SQL_STATEMENTS_METRIC = "app.sql.statements";
+    public static final String SQL_TIME_METRIC = "app.sql.time";
+
+    public static final String OPENTIME_OPERATIONS_METRIC = "app.opentime.operations";
+    public static final String OPENTIME_FAILURES_METRIC = "app.opentime.failures";
+    public static final String OPEN_SLOTS_METRIC = "app.opentime.open.slots";
+    public static final String BOOKING_OPERATION = "booking";
+    public static final String GENERATION_OPERATION = "generation";
+    public static final String DELETION_OPERATION = "deletion";
 }
@@ -0,0 +1,43 @@
+package com.blubank.doctorappointment.helper;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// note: opaque keyset position, the sort key (time, id) of the last row of the previous page
+@Getter
+public final class Cursor {
+    private final LocalDateTime time;
+
+    private final long id;
+
+    private Cursor(LocalDateTime time, long id) {
+        this.time = time;
+        this.id = id;
+    }
+
+    public static String encode(LocalDateTime time, long id) {
+        String value = (time == null ? "" : time.toString()) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // note: without a token the position is just before the first row at or after the given time
+    public static Cursor decode(String token, LocalDateTime startTime) {
+        if (token == null) {
+            return new Cursor(startTime, Long.MIN_VALUE);
+        }
+
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf('|');
+            String time = value.substring(0, separator);
+            return new Cursor(time.isEmpty() ? startTime : LocalDateTime.parse(time),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+}
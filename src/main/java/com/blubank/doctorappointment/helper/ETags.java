@@ -0,0 +1,25 @@
+package com.blubank.doctorappointment.helper;
+
+// note: strong etags of versioned reads. If-None-Match uses the weak comparison, so a W/ prefix is ignored.
+public final class ETags {
+    private ETags() {
+    }
+
+    public static String of(long version) {
+        return "\"" + Long.toHexString(version) + "\"";
+    }
+
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || (value.startsWith("W/") ? value.substring(2) : value).equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
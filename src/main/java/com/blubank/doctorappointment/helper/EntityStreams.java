@@ -0,0 +1,23 @@
+package com.blubank.doctorappointment.helper;
+
+import javax.persistence.EntityManager;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.blubank.doctorappointment.helper.AppConstants.STREAM_FETCH_SIZE;
+
+public final class EntityStreams {
+    private EntityStreams() {
+    }
+
+    // note: the persistence context is cleared every fetch, so memory stays constant however many rows are streamed
+    public static <T> void forEachDetached(Stream<T> entities, EntityManager entityManager, Consumer<T> consumer) {
+        int[] count = {0};
+        entities.forEach(entity -> {
+            consumer.accept(entity);
+            if (++count[0] % STREAM_FETCH_SIZE == 0) {
+                entityManager.clear();
+            }
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.blubank.doctorappointment.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// note: reads one record per line, csv with a header line or ndjson objects, holding only the current line.
+// a malformed line fails on its own, the next call goes on with the following line. quoted csv fields may
+// contain commas and doubled quotes but no line breaks.
+public final class ImportRowReader {
+    public enum Format {
+        CSV, NDJSON;
+
+        // note: from a content type or a file name
+        public static Format of(String value) {
+            String lowerCase = value == null ? "" : value.toLowerCase(Locale.ROOT);
+            if (lowerCase.contains("csv")) {
+                return CSV;
+            }
+            if (lowerCase.contains("json")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Unsupported import format, expected csv or ndjson.");
+        }
+    }
+
+    private final BufferedReader reader;
+
+    private final Format format;
+
+    private final ObjectMapper objectMapper;
+
+    private List<String> header;
+
+    private int line;
+
+    public ImportRowReader(InputStream inputStream, Format format, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    // note: null once the input is exhausted
+    public Map<String, String> next() {
+        String value = readLine();
+        while (value != null && value.isBlank()) {
+            value = readLine();
+        }
+        if (value == null) {
+            return null;
+        }
+        if (line == 1 && value.startsWith("\uFEFF")) {
+            value = value.substring(1);
+        }
+        return format == Format.CSV ? csvRow(value) : jsonRow(value);
+    }
+
+    private String readLine() {
+        try {
+            String value = reader.readLine();
+            if (value != null) {
+                line++;
+            }
+            return value;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, String> csvRow(String value) {
+        if (header == null) {
+            header = csvFields(value);
+            return next();
+        }
+
+        List<String> fields = csvFields(value);
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException(
+                    "Expected " + header.size() + " fields but found " + fields.size() + ".");
+        }
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            row.put(header.get(i), fields.get(i).isEmpty() ? null : fields.get(i));
+        }
+        return row;
+    }
+
+    private Map<String, String> jsonRow(String value) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed json: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Expected a json object.");
+        }
+
+        Map<String, String> row = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            row.put(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText());
+        }
+        return row;
+    }
+
+    private static List<String> csvFields(String value) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < value.length() && value.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field.");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
@@ -0,0 +1,42 @@
+package com.blubank.doctorappointment.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import static com.blubank.doctorappointment.helper.AppConstants.NDJSON_VALUE;
+
+// note: writes one json document per line and flushes it, so clients can consume rows as they arrive
+public final class NdjsonWriter {
+    private final OutputStream outputStream;
+
+    private final ObjectMapper objectMapper;
+
+    public NdjsonWriter(OutputStream outputStream, ObjectMapper objectMapper) {
+        this.outputStream = outputStream;
+        this.objectMapper = objectMapper;
+    }
+
+    // note: the streamed ndjson response of every controller, the producer writes after the handler returned
+    public static ResponseEntity<StreamingResponseBody> response(ObjectMapper objectMapper,
+                                                                 Consumer<NdjsonWriter> producer) {
+        StreamingResponseBody body = outputStream -> producer.accept(new NdjsonWriter(outputStream, objectMapper));
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+    }
+
+    public void write(Object value) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(value));
+            outputStream.write('\n');
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.blubank.doctorappointment.helper;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+// note: disjoint, sorted [start, end) intervals in epoch seconds, built once from the existing open times.
+// overlap checks for increasing candidates are a merge-walk with a forward cursor (binary search otherwise),
+// so checking m candidates against n existing intervals costs O(n log n + m) instead of O(n * m).
+public final class OccupiedIntervals {
+    private final long[] starts;
+    private final long[] ends;
+    private final int size;
+    private int cursor;
+    private long lastQueryStart = Long.MIN_VALUE;
+
+    private OccupiedIntervals(long[] starts, long[] ends, int size) {
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    public static <T> OccupiedIntervals of(List<T> items, Function<T, LocalDateTime> startTime,
+                                           Function<T, LocalDateTime> endTime) {
+        long[][] intervals = new long[items.size()][];
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            intervals[i] = new long[]{toEpochSecond(startTime.apply(item)), toEpochSecond(endTime.apply(item))};
+        }
+        Arrays.sort(intervals, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] starts = new long[intervals.length];
+        long[] ends = new long[intervals.length];
+        int size = 0;
+        for (long[] interval : intervals) {
+            if (size > 0 && interval[0] <= ends[size - 1]) {
+                ends[size - 1] = Math.max(ends[size - 1], interval[1]);
+            } else {
+                starts[size] = interval[0];
+                ends[size] = interval[1];
+                size++;
+            }
+        }
+        return new OccupiedIntervals(starts, ends, size);
+    }
+
+    public static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static LocalDateTime fromEpochSecond(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    public boolean overlaps(long start, long end) {
+        if (start < lastQueryStart) {
+            cursor = firstEndingAfter(start);
+        }
+        lastQueryStart = start;
+
+        while (cursor < size && ends[cursor] <= start) {
+            cursor++;
+        }
+        return cursor < size && starts[cursor] < end;
+    }
+
+    private int firstEndingAfter(long start) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,75 @@
+package com.blubank.doctorappointment.helper;
+
+import lombok.Value;
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.atomic.AtomicLong;
+
+// note: running totals of the jdbc statements executed by the current thread, fed by the datasource proxy.
+// callers take a snapshot before some work and read the difference after it, so measured scopes can nest.
+public final class SqlStatementCounter {
+    private static final String OFF_THREAD_ATTRIBUTE = SqlStatementCounter.class.getName() + ".offThread";
+
+    private static final ThreadLocal<long[]> TOTALS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private SqlStatementCounter() {
+    }
+
+    public static Snapshot snapshot() {
+        long[] totals = TOTALS.get();
+        return new Snapshot(totals[0], totals[1]);
+    }
+
+    public static Snapshot since(Snapshot before) {
+        long[] totals = TOTALS.get();
+        return new Snapshot(totals[0] - before.getStatements(), totals[1] - before.getElapsedMillis());
+    }
+
+    public static void record(long elapsedMillis) {
+        long[] totals = TOTALS.get();
+        totals[0]++;
+        totals[1] += elapsedMillis;
+    }
+
+    // note: statements that a request ran on other threads (async reads), added to the request's own ones. the
+    // accumulator is attached on the request thread, the other threads only add to it and never touch the request.
+    public static OffThread offThread(HttpServletRequest request) {
+        Object offThread = request.getAttribute(OFF_THREAD_ATTRIBUTE);
+        if (offThread instanceof OffThread) {
+            return (OffThread) offThread;
+        }
+        OffThread created = new OffThread();
+        request.setAttribute(OFF_THREAD_ATTRIBUTE, created);
+        return created;
+    }
+
+    public static Snapshot offThreadUsed(HttpServletRequest request) {
+        Object offThread = request.getAttribute(OFF_THREAD_ATTRIBUTE);
+        return offThread instanceof OffThread ? ((OffThread) offThread).used() : new Snapshot(0, 0);
+    }
+
+    @Value
+    public static class Snapshot {
+        long statements;
+
+        long elapsedMillis;
+
+        public Snapshot plus(Snapshot other) {
+            return new Snapshot(statements + other.statements, elapsedMillis + other.elapsedMillis);
+        }
+    }
+
+    public static class OffThread {
+        private final AtomicLong statements = new AtomicLong();
+
+        private final AtomicLong elapsedMillis = new AtomicLong();
+
+        public void add(Snapshot used) {
+            statements.addAndGet(used.getStatements());
+            elapsedMillis.addAndGet(used.getElapsedMillis());
+        }
+
+        public Snapshot used() {
+            return new Snapshot(statements.get(), elapsedMillis.get());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.blubank.doctorappointment.helper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// note: marks a service method whose latency and outcome are recorded by OpenTimeMetricsAspect
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TimedOperation {
+    String value();
+}
@@ -0,0 +1,24 @@
+package com.blubank.doctorappointment.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// note: appointments moved out together with their archived open time, ids are kept
+@Data
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_archived_appointment_open_time", columnList = "openTimeId"),
+        @Index(name = "idx_archived_appointment_patient", columnList = "patientId")
+})
+public class ArchivedAppointment {
+    @Id
+    private Long id;
+
+    private Long patientId;
+
+    private Long openTimeId;
+
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,28 @@
+package com.blubank.doctorappointment.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// note: open times moved out of open_time by ArchiveService once they are in the past, ids are kept
+@Data
+@Entity
+@Table(indexes = @Index(name = "idx_archived_open_time_doctor_start", columnList = "doctorId, startTime"))
+public class ArchivedOpenTime {
+    @Id
+    private Long id;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime endTime;
+
+    @Enumerated(EnumType.STRING)
+    private OpenTimeStatus status;
+
+    private Long doctorId;
+
+    private Long version;
+
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,37 @@
+package com.blubank.doctorappointment.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+// note: compact alternative to one OpenTime row per slot. a doctor-day is one row holding a fixed grid of
+// slotMinutes-long slots from startMinute on, slot i is open/taken when bit i of openSlots/takenSlots is set
+// (java.util.BitSet byte order). taken slots are also materialized as TAKEN OpenTime rows for their appointment.
+@Data
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_doctor_day_schedule_doctor_day",
+        columnNames = {"doctorId", "scheduleDay"}))
+public class DoctorDaySchedule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "doctor_day_schedule_seq")
+    @SequenceGenerator(name = "doctor_day_schedule_seq", sequenceName = "doctor_day_schedule_seq", allocationSize = 50)
+    private Long id;
+
+    private Long doctorId;
+
+    private LocalDate scheduleDay;
+
+    private int startMinute;
+
+    private int slotMinutes;
+
+    private int slotCount;
+
+    private byte[] openSlots;
+
+    private byte[] takenSlots;
+
+    @Version
+    private Long version;
+}
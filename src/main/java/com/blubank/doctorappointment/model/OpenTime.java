@@ -1,16 +1,25 @@
 package com.blubank.doctorappointment.model;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_TIME_ID_ALLOCATION;
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_TIME_SEQUENCE;
+
 @Data
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_open_time_doctor_start", columnList = "doctor_id, startTime"),
+        @Index(name = "idx_open_time_status_start", columnList = "status, startTime")
+})
 public class OpenTime {
+    // note: pooled sequence ids, hibernate cannot batch inserts of IDENTITY ids
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = OPEN_TIME_SEQUENCE)
+    @SequenceGenerator(name = OPEN_TIME_SEQUENCE, sequenceName = OPEN_TIME_SEQUENCE,
+            allocationSize = OPEN_TIME_ID_ALLOCATION)
     private Long id;
 
     private LocalDateTime startTime;
@@ -20,14 +29,10 @@ public class OpenTime {
     @Enumerated(EnumType.STRING)
     private OpenTimeStatus status;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "doctor_id")
     private Doctor doctor;
 
-    @OneToOne(mappedBy = "openTime", cascade = CascadeType.ALL, orphanRemoval = true)
-    @JsonIgnore
-    private Appointment appointment;
-
     @Version
     private Long version;
 }
@@ -8,8 +8,11 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Pattern;
 import java.util.List;
 
+import static com.blubank.doctorappointment.helper.AppConstants.PATIENT_IDENTITY_CONSTRAINT;
+
 @Data
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = PATIENT_IDENTITY_CONSTRAINT, columnNames = {"phoneNumber", "name"}))
 public class Patient {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
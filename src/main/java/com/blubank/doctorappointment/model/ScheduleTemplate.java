@@ -0,0 +1,41 @@
+package com.blubank.doctorappointment.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+// note: standing weekly hours of a doctor. its slots have no OpenTime rows, they are computed when a day is read
+// and materialized as a row only once booked or closed. validTo is inclusive, null means open-ended.
+@Data
+@Entity
+@Table(indexes = @Index(name = "idx_schedule_template_doctor", columnList = "doctorId"))
+public class ScheduleTemplate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long doctorId;
+
+    @Enumerated(EnumType.STRING)
+    private DayOfWeek dayOfWeek;
+
+    private LocalTime startTime;
+
+    private LocalTime endTime;
+
+    private int slotMinutes;
+
+    private LocalDate validFrom;
+
+    private LocalDate validTo;
+
+    @ElementCollection
+    @CollectionTable(name = "schedule_template_excluded_date", joinColumns = @JoinColumn(name = "template_id"))
+    @Column(name = "excluded_date")
+    private Set<LocalDate> excludedDates = new HashSet<>();
+}
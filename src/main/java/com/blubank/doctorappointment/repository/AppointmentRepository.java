@@ -1,11 +1,73 @@
 package com.blubank.doctorappointment.repository;
 
+import com.blubank.doctorappointment.dto.AppointmentView;
 import com.blubank.doctorappointment.model.Appointment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static com.blubank.doctorappointment.helper.AppConstants.STREAM_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
-    List<Appointment> findByOpenTimeDoctorId(Long doctorId);
-    List<Appointment> findByPatientPhoneNumber(String phoneNumber);
+    // note: views are built by a constructor expression over inner joins, so a list costs one query
+    String VIEW_SELECT = "select new com.blubank.doctorappointment.dto.AppointmentView(a.id, p.id, p.name, " +
+            "p.phoneNumber, o.id, o.startTime, o.endTime, o.status, o.version, d.id, d.name) " +
+            "from Appointment a join a.patient p join a.openTime o join o.doctor d ";
+
+    @Query(VIEW_SELECT + "where d.id = :doctorId order by o.startTime, a.id")
+    List<AppointmentView> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query(VIEW_SELECT + "where p.phoneNumber = :phoneNumber order by o.startTime, a.id")
+    List<AppointmentView> findViewsByPatientPhoneNumber(@Param("phoneNumber") String phoneNumber);
+
+    // note: keyset pages ordered by (open time start, appointment id)
+    @Query(VIEW_SELECT + "where d.id = :doctorId " +
+            "and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and a.id > :afterId)) " +
+            "order by o.startTime, a.id")
+    List<AppointmentView> findDoctorPage(@Param("doctorId") Long doctorId,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to,
+                                         @Param("afterStart") LocalDateTime afterStart,
+                                         @Param("afterId") Long afterId,
+                                         Pageable pageable);
+
+    @Query(VIEW_SELECT + "where p.phoneNumber = :phoneNumber " +
+            "and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and a.id > :afterId)) " +
+            "order by o.startTime, a.id")
+    List<AppointmentView> findPatientPage(@Param("phoneNumber") String phoneNumber,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to,
+                                          @Param("afterStart") LocalDateTime afterStart,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(VIEW_SELECT + "where d.id = :doctorId " +
+            "and o.startTime >= :from and o.startTime < :to order by o.startTime, a.id")
+    Stream<AppointmentView> streamDoctorAppointments(@Param("doctorId") Long doctorId,
+                                                     @Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(VIEW_SELECT + "where p.phoneNumber = :phoneNumber " +
+            "and o.startTime >= :from and o.startTime < :to order by o.startTime, a.id")
+    Stream<AppointmentView> streamPatientAppointments(@Param("phoneNumber") String phoneNumber,
+                                                      @Param("from") LocalDateTime from,
+                                                      @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("delete from Appointment a where a.openTime.id in :openTimeIds")
+    int deleteByOpenTimeIds(@Param("openTimeIds") List<Long> openTimeIds);
 }
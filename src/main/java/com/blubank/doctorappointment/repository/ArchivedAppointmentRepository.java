@@ -0,0 +1,48 @@
+package com.blubank.doctorappointment.repository;
+
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.model.ArchivedAppointment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ArchivedAppointmentRepository extends JpaRepository<ArchivedAppointment, Long> {
+    String VIEW_SELECT = "select new com.blubank.doctorappointment.dto.AppointmentView(a.id, p.id, p.name, " +
+            "p.phoneNumber, o.id, o.startTime, o.endTime, o.status, o.version, d.id, d.name) " +
+            "from ArchivedAppointment a, ArchivedOpenTime o, Patient p, Doctor d " +
+            "where o.id = a.openTimeId and p.id = a.patientId and d.id = o.doctorId ";
+
+    @Modifying
+    @Query("insert into ArchivedAppointment (id, patientId, openTimeId, archivedAt) " +
+            "select a.id, a.patient.id, a.openTime.id, :archivedAt " +
+            "from Appointment a where a.openTime.id in :openTimeIds")
+    int archive(@Param("openTimeIds") List<Long> openTimeIds, @Param("archivedAt") LocalDateTime archivedAt);
+
+    // note: keyset pages ordered by (open time start, appointment id), same cursor as the live appointment pages
+    @Query(VIEW_SELECT + "and o.doctorId = :doctorId " +
+            "and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and a.id > :afterId)) " +
+            "order by o.startTime, a.id")
+    List<AppointmentView> findDoctorPage(@Param("doctorId") Long doctorId,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to,
+                                         @Param("afterStart") LocalDateTime afterStart,
+                                         @Param("afterId") Long afterId,
+                                         Pageable pageable);
+
+    @Query(VIEW_SELECT + "and p.phoneNumber = :phoneNumber " +
+            "and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and a.id > :afterId)) " +
+            "order by o.startTime, a.id")
+    List<AppointmentView> findPatientPage(@Param("phoneNumber") String phoneNumber,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to,
+                                          @Param("afterStart") LocalDateTime afterStart,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
+}
@@ -0,0 +1,36 @@
+package com.blubank.doctorappointment.repository;
+
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.model.ArchivedOpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ArchivedOpenTimeRepository extends JpaRepository<ArchivedOpenTime, Long> {
+    @Modifying
+    @Query("insert into ArchivedOpenTime (id, startTime, endTime, status, doctorId, version, archivedAt) " +
+            "select o.id, o.startTime, o.endTime, o.status, o.doctor.id, o.version, :archivedAt " +
+            "from OpenTime o where o.id in :ids")
+    int archive(@Param("ids") List<Long> ids, @Param("archivedAt") LocalDateTime archivedAt);
+
+    // note: keyset pages ordered by (start time, id), same cursor as the live open time pages
+    @Query("select new com.blubank.doctorappointment.dto.OpenTimeView(o.id, o.startTime, o.endTime, o.status, " +
+            "o.version, d.id, d.name) from ArchivedOpenTime o, Doctor d where d.id = o.doctorId " +
+            "and o.doctorId = :doctorId and o.startTime >= :from and o.startTime < :to " +
+            "and (:status is null or o.status = :status) " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and o.id > :afterId)) " +
+            "order by o.startTime, o.id")
+    List<OpenTimeView> findDoctorPage(@Param("doctorId") Long doctorId,
+                                      @Param("from") LocalDateTime from,
+                                      @Param("to") LocalDateTime to,
+                                      @Param("status") OpenTimeStatus status,
+                                      @Param("afterStart") LocalDateTime afterStart,
+                                      @Param("afterId") Long afterId,
+                                      Pageable pageable);
+}
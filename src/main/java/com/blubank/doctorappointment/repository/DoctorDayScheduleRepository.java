@@ -0,0 +1,32 @@
+package com.blubank.doctorappointment.repository;
+
+import com.blubank.doctorappointment.model.DoctorDaySchedule;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface DoctorDayScheduleRepository extends JpaRepository<DoctorDaySchedule, Long> {
+    Optional<DoctorDaySchedule> findByDoctorIdAndScheduleDay(Long doctorId, LocalDate scheduleDay);
+
+    @Query("select s from DoctorDaySchedule s where s.doctorId = :doctorId and s.scheduleDay between :from and :to " +
+            "order by s.scheduleDay")
+    List<DoctorDaySchedule> findByDoctorIdInRange(@Param("doctorId") Long doctorId,
+                                                  @Param("from") LocalDate from,
+                                                  @Param("to") LocalDate to);
+
+    @Query("select distinct s.doctorId from DoctorDaySchedule s")
+    List<Long> findDoctorIds();
+
+    @Query("select s from DoctorDaySchedule s where s.scheduleDay < :day order by s.id")
+    List<DoctorDaySchedule> findBefore(@Param("day") LocalDate day, Pageable pageable);
+
+    @Modifying
+    @Query("delete from DoctorDaySchedule s where s.id in :ids")
+    int deleteByIds(@Param("ids") List<Long> ids);
+}
@@ -1,7 +1,51 @@
 package com.blubank.doctorappointment.repository;
 
 import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.blubank.doctorappointment.helper.AppConstants.STREAM_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface DoctorRepository extends JpaRepository<Doctor, Long> {
+    @Query("select d from Doctor d where d.id > :afterId order by d.id")
+    List<Doctor> findPageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // note: with from, to or status the doctors page lists the doctors that have open times matching them
+    @Query("select d from Doctor d where d.id > :afterId and exists (select o.id from OpenTime o " +
+            "where o.doctor = d and o.startTime >= :from and o.startTime < :to) order by d.id")
+    List<Doctor> findPageWithOpenTimesAfter(@Param("afterId") Long afterId,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("to") LocalDateTime to,
+                                            Pageable pageable);
+
+    @Query("select d from Doctor d where d.id > :afterId and exists (select o.id from OpenTime o " +
+            "where o.doctor = d and o.status = :status and o.startTime >= :from and o.startTime < :to) order by d.id")
+    List<Doctor> findPageWithOpenTimesAfter(@Param("afterId") Long afterId,
+                                            @Param("status") OpenTimeStatus status,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("to") LocalDateTime to,
+                                            Pageable pageable);
+
+    // note: serializes the writers of one doctor that check for overlapping slots before inserting one
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from Doctor d where d.id = :id")
+    Optional<Doctor> findByIdForUpdate(@Param("id") Long id);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select d from Doctor d order by d.id")
+    Stream<Doctor> streamAll();
 }
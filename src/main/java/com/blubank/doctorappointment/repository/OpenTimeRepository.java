@@ -1,15 +1,178 @@
 package com.blubank.doctorappointment.repository;
 
+import com.blubank.doctorappointment.dto.DoctorOpenSlots;
+import com.blubank.doctorappointment.dto.DoctorTimeRange;
+import com.blubank.doctorappointment.dto.OpenTimeSlot;
+import com.blubank.doctorappointment.dto.OpenTimeView;
 import com.blubank.doctorappointment.model.Doctor;
 import com.blubank.doctorappointment.model.OpenTime;
 import com.blubank.doctorappointment.model.OpenTimeStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.blubank.doctorappointment.helper.AppConstants.STREAM_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface OpenTimeRepository extends JpaRepository<OpenTime, Long> {
+    String VIEW_SELECT = "select new com.blubank.doctorappointment.dto.OpenTimeView(o.id, o.startTime, o.endTime, " +
+            "o.status, o.version, d.id, d.name) from OpenTime o join o.doctor d ";
+
     List<OpenTime> findByDoctorAndStartTimeBetween(Doctor doctor, LocalDateTime startTime, LocalDateTime endTime);
     List<OpenTime> findByDoctorAndStartTimeBetweenAndStatus(Doctor doctor, LocalDateTime startTime, LocalDateTime endTime, OpenTimeStatus openTimeStatus);
     List<OpenTime> findAllByDoctor_Id(Long doctorId);
+
+    @Query("select o from OpenTime o where o.doctor.id = :doctorId and o.status = :status " +
+            "and o.startTime >= :from and o.startTime < :to order by o.startTime")
+    List<OpenTime> findByDoctorIdAndStatusInRange(@Param("doctorId") Long doctorId,
+                                                  @Param("status") OpenTimeStatus status,
+                                                  @Param("from") LocalDateTime from,
+                                                  @Param("to") LocalDateTime to);
+
+    @Query(VIEW_SELECT + "where d.id = :doctorId order by o.startTime, o.id")
+    List<OpenTimeView> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query(VIEW_SELECT + "where d.id = :doctorId and o.status = :status " +
+            "and o.startTime >= :from and o.startTime < :to order by o.startTime")
+    List<OpenTimeView> findViewsByDoctorIdAndStatusInRange(@Param("doctorId") Long doctorId,
+                                                           @Param("status") OpenTimeStatus status,
+                                                           @Param("from") LocalDateTime from,
+                                                           @Param("to") LocalDateTime to);
+
+    @Query("select o from OpenTime o where o.doctor.id = :doctorId and o.startTime < :to and o.endTime > :from")
+    List<OpenTime> findOverlapping(@Param("doctorId") Long doctorId,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+
+    @Query("select o.id as id, o.startTime as startTime, o.endTime as endTime, o.status as status, " +
+            "o.version as version, d.id as doctorId, d.name as doctorName " +
+            "from OpenTime o join o.doctor d where o.id = :id")
+    Optional<OpenTimeSlot> findSlotById(@Param("id") Long id);
+
+    @Query("select o.doctor.id from OpenTime o where o.id = :id")
+    Optional<Long> findDoctorIdById(@Param("id") Long id);
+
+    @Query("select o.id as id, o.startTime as startTime, o.endTime as endTime, o.status as status, " +
+            "o.version as version, d.id as doctorId, d.name as doctorName " +
+            "from OpenTime o join o.doctor d where o.id = :id and d.id = :doctorId")
+    Optional<OpenTimeSlot> findSlotByIdAndDoctorId(@Param("id") Long id, @Param("doctorId") Long doctorId);
+
+    @Query("select o.id as id, o.startTime as startTime, o.endTime as endTime, o.status as status, " +
+            "o.version as version, d.id as doctorId, d.name as doctorName " +
+            "from OpenTime o join o.doctor d where o.status = :status and o.endTime > :after")
+    List<OpenTimeSlot> findSlotsByStatusEndingAfter(@Param("status") OpenTimeStatus status,
+                                                    @Param("after") LocalDateTime after);
+
+    @Query("select o.id as id, o.startTime as startTime, o.endTime as endTime, o.status as status, " +
+            "o.version as version, d.id as doctorId, d.name as doctorName " +
+            "from OpenTime o join o.doctor d where o.status = :status and o.startTime >= :from and o.startTime < :to")
+    List<OpenTimeSlot> findSlotsByStatusInRange(@Param("status") OpenTimeStatus status,
+                                                @Param("from") LocalDateTime from,
+                                                @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("delete from OpenTime o where o.id = :id and o.status = :status")
+    int deleteByIdAndStatus(@Param("id") Long id, @Param("status") OpenTimeStatus status);
+
+    @Modifying
+    @Query("delete from OpenTime o where o.id in :ids and o.status = :status")
+    int deleteByIdsAndStatus(@Param("ids") List<Long> ids, @Param("status") OpenTimeStatus status);
+
+    @Modifying
+    @Query("delete from OpenTime o where o.doctor.id = :doctorId and o.status = :status " +
+            "and o.startTime >= :from and o.startTime < :to")
+    int deleteByDoctorIdAndStatusInRange(@Param("doctorId") Long doctorId,
+                                         @Param("status") OpenTimeStatus status,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to);
+
+    // note: atomic compare-and-set of the status, returns 0 when the status was not the expected one. the
+    // persistence context is flushed before and cleared after, so open times loaded earlier are not read stale.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OpenTime o set o.status = :newStatus, o.version = o.version + 1 " +
+            "where o.id = :id and o.status = :expectedStatus")
+    int updateStatusIfCurrent(@Param("id") Long id,
+                              @Param("expectedStatus") OpenTimeStatus expectedStatus,
+                              @Param("newStatus") OpenTimeStatus newStatus);
+
+    // note: keyset pages ordered by (start time, id). with and without a status as separate queries, an optional
+    // "(:status is null or ...)" predicate leaves the planner one generic plan that cannot use the status index
+    @Query(VIEW_SELECT + "where d.id = :doctorId and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and o.id > :afterId)) " +
+            "order by o.startTime, o.id")
+    List<OpenTimeView> findPage(@Param("doctorId") Long doctorId,
+                                @Param("from") LocalDateTime from,
+                                @Param("to") LocalDateTime to,
+                                @Param("afterStart") LocalDateTime afterStart,
+                                @Param("afterId") Long afterId,
+                                Pageable pageable);
+
+    @Query(VIEW_SELECT + "where d.id = :doctorId and o.status = :status " +
+            "and o.startTime >= :from and o.startTime < :to " +
+            "and (o.startTime > :afterStart or (o.startTime = :afterStart and o.id > :afterId)) " +
+            "order by o.startTime, o.id")
+    List<OpenTimeView> findPageByStatus(@Param("doctorId") Long doctorId,
+                                        @Param("status") OpenTimeStatus status,
+                                        @Param("from") LocalDateTime from,
+                                        @Param("to") LocalDateTime to,
+                                        @Param("afterStart") LocalDateTime afterStart,
+                                        @Param("afterId") Long afterId,
+                                        Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(VIEW_SELECT + "where d.id = :doctorId and o.startTime >= :from and o.startTime < :to " +
+            "order by o.startTime, o.id")
+    Stream<OpenTimeView> streamByDoctorId(@Param("doctorId") Long doctorId,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(VIEW_SELECT + "where d.id = :doctorId and o.status = :status " +
+            "and o.startTime >= :from and o.startTime < :to order by o.startTime, o.id")
+    Stream<OpenTimeView> streamByDoctorIdAndStatus(@Param("doctorId") Long doctorId,
+                                                   @Param("status") OpenTimeStatus status,
+                                                   @Param("from") LocalDateTime from,
+                                                   @Param("to") LocalDateTime to);
+
+    @Query("select o.doctor.id as doctorId, count(o) as openSlots from OpenTime o " +
+            "where o.status = :status and o.startTime >= :from group by o.doctor.id")
+    List<DoctorOpenSlots> countSlotsPerDoctor(@Param("status") OpenTimeStatus status,
+                                              @Param("from") LocalDateTime from);
+
+    // note: served by the (status, startTime) index, narrows a cross-doctor search to doctors that have openings
+    @Query("select distinct o.doctor.id from OpenTime o " +
+            "where o.status = :status and o.startTime >= :from and o.startTime < :to")
+    List<Long> findDoctorIdsWithStatusInRange(@Param("status") OpenTimeStatus status,
+                                              @Param("from") LocalDateTime from,
+                                              @Param("to") LocalDateTime to);
+
+    @Query("select distinct o.doctor.id from OpenTime o where o.doctor.id in :doctorIds " +
+            "and o.status = :status and o.startTime >= :from and o.startTime < :to")
+    List<Long> findDoctorIdsWithStatusInRange(@Param("doctorIds") Collection<Long> doctorIds,
+                                              @Param("status") OpenTimeStatus status,
+                                              @Param("from") LocalDateTime from,
+                                              @Param("to") LocalDateTime to);
+
+    // note: archival chunks, open times that started and ended before the cutoff
+    @Query("select o.id from OpenTime o where o.startTime < :cutoff and o.endTime <= :cutoff")
+    List<Long> findIdsEndedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    @Query("select o.doctor.id as doctorId, min(o.startTime) as fromTime, max(o.startTime) as toTime " +
+            "from OpenTime o where o.id in :ids group by o.doctor.id")
+    List<DoctorTimeRange> findDoctorTimeRanges(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query("delete from OpenTime o where o.id in :ids")
+    int deleteByIds(@Param("ids") List<Long> ids);
 }
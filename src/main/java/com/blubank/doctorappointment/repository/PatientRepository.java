@@ -2,7 +2,15 @@ package com.blubank.doctorappointment.repository;
 
 import com.blubank.doctorappointment.model.Patient;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface PatientRepository extends JpaRepository<Patient, Long> {
-    Patient findByNameAndPhoneNumber(String name, String phoneNumber);
+    @Query("select p.id from Patient p where p.phoneNumber = :phoneNumber and p.name = :name")
+    Long findIdByNameAndPhoneNumber(@Param("name") String name, @Param("phoneNumber") String phoneNumber);
+
+    List<Patient> findByPhoneNumberIn(Collection<String> phoneNumbers);
 }
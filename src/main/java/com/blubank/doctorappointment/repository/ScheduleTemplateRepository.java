@@ -0,0 +1,22 @@
+package com.blubank.doctorappointment.repository;
+
+import com.blubank.doctorappointment.model.ScheduleTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ScheduleTemplateRepository extends JpaRepository<ScheduleTemplate, Long> {
+    @Query("select distinct t from ScheduleTemplate t left join fetch t.excludedDates " +
+            "where t.doctorId = :doctorId order by t.id")
+    List<ScheduleTemplate> findByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query("select t from ScheduleTemplate t left join fetch t.excludedDates " +
+            "where t.id = :id and t.doctorId = :doctorId")
+    Optional<ScheduleTemplate> findByIdAndDoctorId(@Param("id") Long id, @Param("doctorId") Long doctorId);
+
+    @Query("select distinct t.doctorId from ScheduleTemplate t")
+    List<Long> findDoctorIds();
+}
@@ -1,22 +1,65 @@
 package com.blubank.doctorappointment.service;
 
-import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.helper.Cursor;
 import com.blubank.doctorappointment.repository.AppointmentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.transaction.Transactional;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class AppointmentService {
     @Autowired
     private AppointmentRepository appointmentRepository;
 
-    public List<Appointment> getDoctorAppointments(Long doctorId) {
-        return appointmentRepository.findByOpenTimeDoctorId(doctorId);
+    public List<AppointmentView> getDoctorAppointments(Long doctorId) {
+        return appointmentRepository.findViewsByDoctorId(doctorId);
     }
 
-    public List<Appointment> getPatientAppointments(String phoneNumber) {
-        return appointmentRepository.findByPatientPhoneNumber(phoneNumber);
+    public List<AppointmentView> getPatientAppointments(String phoneNumber) {
+        return appointmentRepository.findViewsByPatientPhoneNumber(phoneNumber);
+    }
+
+    public CursorPage<AppointmentView> getDoctorAppointmentsPage(Long doctorId, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        List<AppointmentView> rows = appointmentRepository.findDoctorPage(doctorId, query.fromOrMin(), query.toOrMax(),
+                after.getTime(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, AppointmentService::cursorOf);
+    }
+
+    public CursorPage<AppointmentView> getPatientAppointmentsPage(String phoneNumber, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        List<AppointmentView> rows = appointmentRepository.findPatientPage(phoneNumber, query.fromOrMin(), query.toOrMax(),
+                after.getTime(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, AppointmentService::cursorOf);
+    }
+
+    @Transactional
+    public void streamDoctorAppointments(Long doctorId, ListQuery query, Consumer<AppointmentView> consumer) {
+        try (Stream<AppointmentView> appointments = appointmentRepository.streamDoctorAppointments(
+                doctorId, query.fromOrMin(), query.toOrMax())) {
+            appointments.forEach(consumer);
+        }
+    }
+
+    @Transactional
+    public void streamPatientAppointments(String phoneNumber, ListQuery query, Consumer<AppointmentView> consumer) {
+        try (Stream<AppointmentView> appointments = appointmentRepository.streamPatientAppointments(
+                phoneNumber, query.fromOrMin(), query.toOrMax())) {
+            appointments.forEach(consumer);
+        }
+    }
+
+    private static String cursorOf(AppointmentView appointment) {
+        return Cursor.encode(appointment.getOpenTime().getStartTime(), appointment.getId());
     }
 }
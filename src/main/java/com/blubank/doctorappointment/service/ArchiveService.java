@@ -0,0 +1,165 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.DoctorTimeRange;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.helper.Cursor;
+import com.blubank.doctorappointment.helper.TransactionUtil;
+import com.blubank.doctorappointment.repository.AppointmentRepository;
+import com.blubank.doctorappointment.repository.ArchivedAppointmentRepository;
+import com.blubank.doctorappointment.repository.ArchivedOpenTimeRepository;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULED_JOB_LOCK_MAP;
+
+// note: keeps open_time and appointment proportional to the upcoming schedule. past open times and their
+// appointments are copied to the archive tables and deleted from the hot ones, one chunk per transaction,
+// so the job never holds long locks and can be interrupted at any point. history reads go to the archive only.
+// day schedule rows of the past days are deleted the same way, their taken slots are open time rows archived above.
+// every member of the cluster fires the cron, a cluster-wide lock lets one of them run the job.
+@Slf4j
+@Service
+public class ArchiveService {
+    private static final String ARCHIVE_JOB = "archive";
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private ArchivedOpenTimeRepository archivedOpenTimeRepository;
+
+    @Autowired
+    private ArchivedAppointmentRepository archivedAppointmentRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private DayScheduleService dayScheduleService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Value("${app.archive.retention-days:1}")
+    private int retentionDays;
+
+    @Value("${app.archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.archive.lock-seconds:3600}")
+    private int lockSeconds;
+
+    // note: the members that find the lock taken skip the run. the lock has a lease, so a member that dies while
+    // archiving does not block the job for good; the chunks already committed are simply not archived again.
+    @Scheduled(cron = "${app.archive.cron:0 30 3 * * *}")
+    public void archivePastOpenTimes() {
+        IMap<String, String> locks = hazelcastInstance.getMap(SCHEDULED_JOB_LOCK_MAP);
+        try {
+            if (!locks.tryLock(ARCHIVE_JOB, 0, TimeUnit.SECONDS, lockSeconds, TimeUnit.SECONDS)) {
+                log.info("Archive job is running on another member, skipped");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+            int archived = archiveEndedBefore(cutoff);
+            int deletedDays = dayScheduleService.deleteDaysBefore(cutoff.toLocalDate());
+            log.info("Archived {} open times that ended before {}, deleted {} day schedules", archived, cutoff,
+                    deletedDays);
+        } finally {
+            locks.unlock(ARCHIVE_JOB);
+        }
+    }
+
+    public int archiveEndedBefore(LocalDateTime cutoff) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int archived = 0;
+        while (true) {
+            Integer chunk = transactionTemplate.execute(status -> archiveChunk(cutoff));
+            if (chunk == null || chunk == 0) {
+                return archived;
+            }
+            archived += chunk;
+        }
+    }
+
+    private int archiveChunk(LocalDateTime cutoff) {
+        List<Long> ids = openTimeRepository.findIdsEndedBefore(cutoff, PageRequest.of(0, chunkSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime archivedAt = LocalDateTime.now();
+        List<DoctorTimeRange> ranges = openTimeRepository.findDoctorTimeRanges(ids);
+        archivedAppointmentRepository.archive(ids, archivedAt);
+        appointmentRepository.deleteByOpenTimeIds(ids);
+        archivedOpenTimeRepository.archive(ids, archivedAt);
+        openTimeRepository.deleteByIds(ids);
+
+        TransactionUtil.afterCommit(() -> ranges.forEach(range -> {
+            slotAvailabilityIndex.evictDays(
+                    range.getDoctorId(), range.getFromTime().toLocalDate(), range.getToTime().toLocalDate());
+            doctorDayVersions.daysChanged(
+                    range.getDoctorId(), range.getFromTime().toLocalDate(), range.getToTime().toLocalDate());
+        }));
+        return ids.size();
+    }
+
+    public CursorPage<AppointmentView> getDoctorAppointmentHistory(Long doctorId, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        List<AppointmentView> rows = archivedAppointmentRepository.findDoctorPage(doctorId, query.fromOrMin(),
+                query.toOrMax(), after.getTime(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, ArchiveService::cursorOf);
+    }
+
+    public CursorPage<AppointmentView> getPatientAppointmentHistory(String phoneNumber, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        List<AppointmentView> rows = archivedAppointmentRepository.findPatientPage(phoneNumber, query.fromOrMin(),
+                query.toOrMax(), after.getTime(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, ArchiveService::cursorOf);
+    }
+
+    public CursorPage<OpenTimeView> getOpenTimeHistory(Long doctorId, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        List<OpenTimeView> rows = archivedOpenTimeRepository.findDoctorPage(doctorId, query.fromOrMin(),
+                query.toOrMax(), query.getStatus(), after.getTime(), after.getId(), PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, openTime -> Cursor.encode(openTime.getStartTime(), openTime.getId()));
+    }
+
+    private static String cursorOf(AppointmentView appointment) {
+        return Cursor.encode(appointment.getOpenTime().getStartTime(), appointment.getId());
+    }
+}
@@ -0,0 +1,80 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.helper.SqlStatementCounter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+// note: read endpoints return a CompletableFuture computed on this bounded pool, so the servlet thread is
+// released while the read waits on the index or the db. when the pool and its queue are full the read is
+// refused with 503 instead of queueing without bound. it is not exposed as an Executor bean on purpose,
+// that would replace the executor spring mvc uses for streamed responses.
+@Component
+public class AsyncReadExecutor {
+    @Value("${app.read-executor.pool-size:32}")
+    private int poolSize;
+
+    @Value("${app.read-executor.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("read-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    // note: the request is only read here, on the request thread, the pool thread gets the counter it adds to.
+    // the future is completed with the read's own exception, not a CompletionException around it, so the
+    // exception handlers and async error dispatch see what the read threw.
+    public CompletableFuture<ResponseEntity<Object>> supply(Supplier<ResponseEntity<Object>> read) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        SqlStatementCounter.OffThread offThread = attributes instanceof ServletRequestAttributes ?
+                SqlStatementCounter.offThread(((ServletRequestAttributes) attributes).getRequest()) : null;
+        CompletableFuture<ResponseEntity<Object>> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                SqlStatementCounter.Snapshot before = SqlStatementCounter.snapshot();
+                try {
+                    ResponseEntity<Object> response = read.get();
+                    addOffThread(offThread, before);
+                    future.complete(response);
+                } catch (RuntimeException | Error e) {
+                    addOffThread(offThread, before);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Too many concurrent reads, try again later."));
+        }
+        return future;
+    }
+
+    private static void addOffThread(SqlStatementCounter.OffThread offThread, SqlStatementCounter.Snapshot before) {
+        if (offThread != null) {
+            offThread.add(SqlStatementCounter.since(before));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AvailabilityEvent;
+import com.blubank.doctorappointment.exception.TooManySubscribersException;
+import com.blubank.doctorappointment.model.OpenTime;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// note: in-process fan-out of availability changes to server-sent event subscribers of a doctor and date range.
+// publishers only offer to a bounded buffer per subscriber and never wait on a connection; a small pool drains
+// the buffers to the emitters. a subscriber whose buffer overflows loses its pending events and gets a fresh
+// snapshot of the range instead, which is also what it gets first and after a bulk change (RESYNC).
+// changes made on other nodes arrive as RESYNC of the day, through DayAvailabilityInvalidationListener.
+// a send to a client that stopped reading blocks its drain thread until the container's write timeout, so a
+// subscriber whose send runs past the send timeout is dropped (it reconnects and gets a fresh snapshot) and the
+// pool gets one more thread until that drain returns, the other subscribers keep their drain threads.
+@Slf4j
+@Component
+public class AvailabilityEventBus {
+    private static final long IDLE = Long.MIN_VALUE;
+
+    private static final long STALLED = Long.MAX_VALUE;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Value("${app.availability-feed.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${app.availability-feed.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${app.availability-feed.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+    @Value("${app.availability-feed.threads:4}")
+    private int threads;
+
+    @Value("${app.availability-feed.send-timeout-ms:5000}")
+    private long sendTimeoutMillis;
+
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final AtomicInteger stalledDrains = new AtomicInteger();
+
+    private ThreadPoolTaskExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setThreadNamePrefix("availability-feed-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        subscriptions.values().forEach(doctorSubscriptions -> doctorSubscriptions.forEach(Subscription::close));
+    }
+
+    public SseEmitter subscribe(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        OpenTimeService.checkAvailabilityRange(fromDate, toDate);
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManySubscribersException("Too many availability subscribers, try again later.");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(doctorId, fromDate, toDate, emitter);
+        emitter.onCompletion(subscription::remove);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        subscriptions.compute(doctorId, (id, doctorSubscriptions) -> {
+            Set<Subscription> updated =
+                    doctorSubscriptions == null ? ConcurrentHashMap.newKeySet() : doctorSubscriptions;
+            updated.add(subscription);
+            return updated;
+        });
+        subscription.schedule();
+        return emitter;
+    }
+
+    public void slotsOpened(Collection<OpenTime> openTimes) {
+        openTimes.forEach(openTime -> publish(AvailabilityEvent.of(AvailabilityEvent.Type.OPENED, openTime)));
+    }
+
+    public void slotClosed(AvailabilityEvent.Type type, OpenTime openTime) {
+        publish(AvailabilityEvent.of(type, openTime));
+    }
+
+    public void resync(Long doctorId, LocalDateTime from, LocalDateTime to) {
+        publish(AvailabilityEvent.resync(doctorId, from, to));
+    }
+
+    public void publish(AvailabilityEvent event) {
+        Set<Subscription> doctorSubscriptions = subscriptions.get(event.getDoctorId());
+        if (doctorSubscriptions == null) {
+            return;
+        }
+
+        for (Subscription subscription : doctorSubscriptions) {
+            if (subscription.covers(event)) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.availability-feed.stall-check-ms:1000}")
+    public void dropStalledSubscribers() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        subscriptions.values().forEach(doctorSubscriptions -> doctorSubscriptions.forEach(subscription -> {
+            if (subscription.stallIfSendingSince(deadline)) {
+                log.warn("Availability subscriber of doctor {} stopped reading, dropped", subscription.doctorId);
+                stalledDrains.incrementAndGet();
+                resizePool();
+                subscription.remove();
+            }
+        }));
+    }
+
+    int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    int stalledDrains() {
+        return stalledDrains.get();
+    }
+
+    private synchronized void resizePool() {
+        executor.setCorePoolSize(threads + stalledDrains.get());
+    }
+
+    private final class Subscription {
+        private final Long doctorId;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final LocalDate fromDate;
+        private final LocalDate toDate;
+        private final SseEmitter emitter;
+        private final BlockingQueue<AvailabilityEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean resync = new AtomicBoolean(true);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private final AtomicLong sendingSince = new AtomicLong(IDLE);
+
+        private Subscription(Long doctorId, LocalDate fromDate, LocalDate toDate, SseEmitter emitter) {
+            this.doctorId = doctorId;
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.from = fromDate.atStartOfDay();
+            this.to = toDate.plusDays(1).atStartOfDay();
+            this.emitter = emitter;
+        }
+
+        private boolean covers(AvailabilityEvent event) {
+            if (event.getType() == AvailabilityEvent.Type.RESYNC) {
+                return event.getStartTime().isBefore(to) && event.getEndTime().isAfter(from);
+            }
+            return !event.getStartTime().isBefore(from) && event.getStartTime().isBefore(to);
+        }
+
+        private void offer(AvailabilityEvent event) {
+            if (event.getType() == AvailabilityEvent.Type.RESYNC || !buffer.offer(event)) {
+                resync.set(true);
+                buffer.clear();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (removed.get() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                close();
+            }
+        }
+
+        // note: a snapshot replaces whatever was buffered, events buffered while it is read are sent after it
+        // and may repeat what it already shows, they are idempotent for the client.
+        private void drain() {
+            try {
+                if (resync.getAndSet(false)) {
+                    buffer.clear();
+                    send(SseEmitter.event().name("snapshot")
+                            .data(slotAvailabilityIndex.getOpenTimes(doctorId, fromDate, toDate),
+                                    MediaType.APPLICATION_JSON));
+                }
+                for (AvailabilityEvent event = buffer.poll(); event != null && !removed.get(); event = buffer.poll()) {
+                    send(SseEmitter.event().name(event.getType().name().toLowerCase(Locale.ROOT))
+                            .data(event, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Availability subscriber of doctor {} is gone", doctorId, e);
+                close();
+            } finally {
+                draining.set(false);
+            }
+            if (removed.get()) {
+                return;
+            }
+            if (!buffer.isEmpty() || resync.get()) {
+                schedule();
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendingSince.set(System.nanoTime());
+            try {
+                emitter.send(event);
+            } finally {
+                if (sendingSince.getAndSet(IDLE) == STALLED) {
+                    stalledDrains.decrementAndGet();
+                    resizePool();
+                    close();
+                }
+            }
+        }
+
+        // note: the watchdog and the returning send race on the same field, whoever swaps it first decides
+        private boolean stallIfSendingSince(long deadline) {
+            long since = sendingSince.get();
+            return since != IDLE && since != STALLED && since - deadline < 0
+                    && sendingSince.compareAndSet(since, STALLED);
+        }
+
+        private void close() {
+            remove();
+            emitter.complete();
+        }
+
+        private void remove() {
+            if (!removed.compareAndSet(false, true)) {
+                return;
+            }
+            subscriberCount.decrementAndGet();
+            subscriptions.computeIfPresent(doctorId, (id, doctorSubscriptions) -> {
+                doctorSubscriptions.remove(this);
+                return doctorSubscriptions.isEmpty() ? null : doctorSubscriptions;
+            });
+        }
+    }
+}
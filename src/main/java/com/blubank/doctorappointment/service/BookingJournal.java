@@ -0,0 +1,571 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.OpenTimeSlot;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.repository.DoctorDayScheduleRepository;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static com.blubank.doctorappointment.helper.OccupiedIntervals.fromEpochSecond;
+import static com.blubank.doctorappointment.helper.OccupiedIntervals.toEpochSecond;
+
+// note: append-only journal of the committed schedule changes (slots published, deleted, booked) kept in
+// memory-mapped segment files, next to a periodic snapshot of the open slots they add up to. on startup the
+// snapshot and the records written after it are replayed and the upcoming days are preloaded into the
+// availability index, so a restarted node does not scan open_time beyond the preload window, which it reads once
+// to check the journal against. records are forced to disk before the change commits.
+// the database stays the source of truth. the journal only sees the writes of its own node, so it is meant for
+// a single writer node with a persistent database; a stale replayed slot can still not be booked twice.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.journal.enabled", havingValue = "true")
+public class BookingJournal {
+    static final byte PUBLISHED = 1;
+    static final byte DELETED = 2;
+    static final byte BOOKED = 3;
+    static final byte RANGE_DELETED = 4;
+
+    // note: type, open time id, doctor id, start, end, version, crc of the preceding bytes
+    static final int RECORD_BYTES = 1 + 5 * Long.BYTES + Integer.BYTES;
+
+    private static final int SNAPSHOT_MAGIC = 0x534e4150;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private DoctorDayScheduleRepository doctorDayScheduleRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Value("${app.journal.dir:journal}")
+    private String dir;
+
+    @Value("${app.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${app.journal.preload-days:30}")
+    private int preloadDays;
+
+    private final Map<Long, Slot> openSlots = new HashMap<>();
+
+    private final byte[] record = new byte[RECORD_BYTES];
+
+    private final CRC32 crc = new CRC32();
+
+    private Path directory;
+
+    private long segment;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private final Object forceLock = new Object();
+
+    // note: bytes appended and bytes known to be on disk since startup, across segments. a segment is forced
+    // before the next one is opened, so forcing the current segment covers everything appended before it.
+    private long appended;
+
+    private volatile long forced;
+
+    @PostConstruct
+    public synchronized void start() throws IOException {
+        long started = System.currentTimeMillis();
+        directory = Paths.get(dir);
+        Files.createDirectories(directory);
+
+        boolean replayed = replay();
+        if (!replayed) {
+            // note: without a snapshot the segments do not say which slots were open before them,
+            // so the journal starts over from one scan of the open slots.
+            bootstrap();
+        }
+        preload();
+        log.info("Booking journal {} with {} open slots in {} ms", replayed ? "replayed" : "bootstrapped",
+                openSlots.size(), System.currentTimeMillis() - started);
+    }
+
+    public void slotsPublished(Collection<OpenTime> openTimes) {
+        List<Record> records = new ArrayList<>(openTimes.size());
+        for (OpenTime openTime : openTimes) {
+            records.add(new Record(PUBLISHED, openTime.getId(), openTime.getDoctor().getId(),
+                    toEpochSecond(openTime.getStartTime()), toEpochSecond(openTime.getEndTime()),
+                    openTime.getVersion() == null ? 0 : openTime.getVersion()));
+        }
+        write(records);
+    }
+
+    public void slotDeleted(OpenTime openTime) {
+        write(List.of(new Record(DELETED, openTime.getId(), openTime.getDoctor().getId(),
+                toEpochSecond(openTime.getStartTime()), 0, 0)));
+    }
+
+    public void slotBooked(Long doctorId, Long openTimeId, LocalDateTime startTime) {
+        write(List.of(new Record(BOOKED, openTimeId, doctorId, toEpochSecond(startTime), 0, 0)));
+    }
+
+    public void slotsDeleted(Long doctorId, LocalDateTime from, LocalDateTime to) {
+        write(List.of(new Record(RANGE_DELETED, 0, doctorId, toEpochSecond(from), toEpochSecond(to), 0)));
+    }
+
+    // note: rolls to a fresh segment so every older segment is covered by the snapshot and can be removed.
+    // slots that already ended are dropped here, they are never preloaded again.
+    @Scheduled(fixedDelayString = "${app.journal.snapshot-interval-ms:300000}",
+            initialDelayString = "${app.journal.snapshot-interval-ms:300000}")
+    public synchronized void snapshot() throws IOException {
+        long now = toEpochSecond(LocalDate.now().atStartOfDay());
+        openSlots.values().removeIf(slot -> slot.end <= now);
+        openSegment(segment + 1);
+        writeSnapshot();
+        deleteSegmentsBefore(segment);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    synchronized int openSlotCount() {
+        return openSlots.size();
+    }
+
+    // note: the records are written and forced just before the surrounding transaction commits, so a change
+    // the db committed is never missing from the journal after a crash. if the commit fails after all, records
+    // undoing them are written. a crash in between leaves records of a change the db never saw, which is why
+    // the preload window is checked against the db on startup.
+    private void write(List<Record> records) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(records);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private List<Record> undo = List.of();
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                undo = append(records);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK && !undo.isEmpty()) {
+                    append(undo);
+                }
+            }
+        });
+    }
+
+    // note: returns the records that undo the appended ones, newest first. the records are forced outside the
+    // monitor, so writers keep appending while one of them forces.
+    private List<Record> append(List<Record> records) {
+        List<Record> undo = new ArrayList<>();
+        long position;
+        synchronized (this) {
+            for (Record record : records) {
+                undo.addAll(0, undo(record));
+                append(record.type, record.id, record.doctorId, record.start, record.end, record.version);
+            }
+            position = appended;
+        }
+        force(position);
+        return undo;
+    }
+
+    // note: group commit. the writer that gets the force lock forces everything appended so far, the writers
+    // waiting behind it find their records already forced and return without forcing again.
+    private void force(long position) {
+        if (forced >= position) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= position) {
+                return;
+            }
+            MappedByteBuffer current;
+            long target;
+            synchronized (this) {
+                current = buffer;
+                target = appended;
+            }
+            current.force();
+            forced = target;
+        }
+    }
+
+    private List<Record> undo(Record record) {
+        if (record.type == RANGE_DELETED) {
+            return openSlots.entrySet().stream()
+                    .filter(entry -> entry.getValue().doctorId == record.doctorId
+                            && entry.getValue().start >= record.start && entry.getValue().start < record.end)
+                    .map(entry -> entry.getValue().toRecord(entry.getKey()))
+                    .collect(Collectors.toList());
+        }
+
+        Slot previous = openSlots.get(record.id);
+        if (previous != null) {
+            return List.of(previous.toRecord(record.id));
+        }
+        return record.type == PUBLISHED
+                ? List.of(new Record(DELETED, record.id, record.doctorId, record.start, 0, 0))
+                : List.of();
+    }
+
+    private void append(byte type, long id, long doctorId, long start, long end, long version) {
+        if (buffer.remaining() < RECORD_BYTES) {
+            try {
+                openSegment(segment + 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(record);
+        bytes.put(type).putLong(id).putLong(doctorId).putLong(start).putLong(end).putLong(version);
+        crc.reset();
+        crc.update(record, 0, RECORD_BYTES - Integer.BYTES);
+        bytes.putInt((int) crc.getValue());
+        buffer.put(record);
+        appended += RECORD_BYTES;
+        apply(type, id, doctorId, start, end, version);
+    }
+
+    private void apply(byte type, long id, long doctorId, long start, long end, long version) {
+        switch (type) {
+            case PUBLISHED:
+                openSlots.put(id, new Slot(doctorId, start, end, version));
+                break;
+            case DELETED:
+            case BOOKED:
+                openSlots.remove(id);
+                break;
+            case RANGE_DELETED:
+                openSlots.values().removeIf(slot ->
+                        slot.doctorId == doctorId && slot.start >= start && slot.start < end);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private boolean replay() throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+
+        long snapshotSegment;
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return false;
+            }
+            snapshotSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                openSlots.put(in.readLong(), new Slot(in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                throw new EOFException("checksum mismatch");
+            }
+        } catch (EOFException e) {
+            log.warn("Booking journal snapshot {} is corrupt, starting over", snapshotFile);
+            openSlots.clear();
+            return false;
+        }
+
+        List<Long> segments = segments();
+        segments.removeIf(number -> number < snapshotSegment);
+        if (segments.isEmpty()) {
+            segments.add(snapshotSegment);
+        }
+        for (Long number : segments) {
+            mapSegment(number);
+            replaySegment();
+        }
+        return true;
+    }
+
+    // note: reads records up to the first empty or torn one, the buffer is left there for the next append
+    private void replaySegment() {
+        ByteBuffer bytes = ByteBuffer.wrap(record);
+        while (buffer.remaining() >= RECORD_BYTES) {
+            int position = buffer.position();
+            buffer.get(record);
+            crc.reset();
+            crc.update(record, 0, RECORD_BYTES - Integer.BYTES);
+            bytes.clear();
+            byte type = bytes.get();
+            if (type == 0 || bytes.getInt(RECORD_BYTES - Integer.BYTES) != (int) crc.getValue()) {
+                buffer.position(position);
+                return;
+            }
+            apply(type, bytes.getLong(), bytes.getLong(), bytes.getLong(), bytes.getLong(), bytes.getLong());
+        }
+    }
+
+    private void bootstrap() throws IOException {
+        openSlots.clear();
+        List<OpenTimeSlot> slots = openTimeRepository.findSlotsByStatusEndingAfter(
+                OpenTimeStatus.OPEN, LocalDate.now().atStartOfDay());
+        for (OpenTimeSlot slot : slots) {
+            openSlots.put(slot.getId(), new Slot(slot.getDoctorId(), toEpochSecond(slot.getStartTime()),
+                    toEpochSecond(slot.getEndTime()), slot.getVersion() == null ? 0 : slot.getVersion()));
+        }
+
+        List<Long> segments = segments();
+        openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+        writeSnapshot();
+        deleteSegmentsBefore(segment);
+    }
+
+    private void preload() {
+        LocalDate fromDate = LocalDate.now();
+        long from = toEpochSecond(fromDate.atStartOfDay());
+        long to = toEpochSecond(fromDate.plusDays(preloadDays).atStartOfDay());
+        checkPreloadWindow(from, to);
+
+        Map<Long, List<Map.Entry<Long, Slot>>> slotsPerDoctor = openSlots.entrySet().stream()
+                .filter(entry -> entry.getValue().start >= from && entry.getValue().start < to)
+                .collect(Collectors.groupingBy(entry -> entry.getValue().doctorId));
+        if (slotsPerDoctor.isEmpty()) {
+            return;
+        }
+
+        // note: the journal knows nothing of the slots templates and day schedules add, so their doctors are
+        // left to load on first read
+        Set<Long> generatedDoctorIds = new HashSet<>(scheduleTemplateService.getTemplateDoctorIds());
+        generatedDoctorIds.addAll(doctorDayScheduleRepository.findDoctorIds());
+        slotsPerDoctor.keySet().removeAll(generatedDoctorIds);
+
+        Map<Long, DoctorView> doctors = doctorService.getAllDoctors().stream()
+                .collect(Collectors.toMap(DoctorView::getId, Function.identity()));
+        slotsPerDoctor.forEach((doctorId, slots) -> {
+            DoctorView doctor = doctors.get(doctorId);
+            if (doctor == null) {
+                return;
+            }
+
+            List<OpenTime> openTimes = new ArrayList<>(slots.size());
+            long lastStart = from;
+            for (Map.Entry<Long, Slot> entry : slots) {
+                openTimes.add(entry.getValue().toOpenTime(entry.getKey()));
+                lastStart = Math.max(lastStart, entry.getValue().start);
+            }
+            slotAvailabilityIndex.preload(doctor, fromDate, fromEpochSecond(lastStart).toLocalDate(), openTimes);
+        });
+    }
+
+    // note: a crash between forcing the records and the commit leaves records of a change the db never saw, so the
+    // open slots of the preload window are read once and compared slot by slot (id and version). a doctor whose
+    // slots differ takes the db's, the next snapshot then carries them.
+    private void checkPreloadWindow(long from, long to) {
+        Map<Long, Map<Long, Slot>> stored = openSlots.entrySet().stream()
+                .filter(entry -> entry.getValue().start >= from && entry.getValue().start < to)
+                .collect(Collectors.groupingBy(entry -> entry.getValue().doctorId,
+                        Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        Map<Long, Map<Long, Slot>> committed = openTimeRepository.findSlotsByStatusInRange(
+                OpenTimeStatus.OPEN, fromEpochSecond(from), fromEpochSecond(to)).stream()
+                .collect(Collectors.groupingBy(OpenTimeSlot::getDoctorId,
+                        Collectors.toMap(OpenTimeSlot::getId, slot -> new Slot(slot.getDoctorId(),
+                                toEpochSecond(slot.getStartTime()), toEpochSecond(slot.getEndTime()),
+                                slot.getVersion() == null ? 0 : slot.getVersion()))));
+
+        Set<Long> doctorIds = new HashSet<>(stored.keySet());
+        doctorIds.addAll(committed.keySet());
+        for (Long doctorId : doctorIds) {
+            Map<Long, Slot> journalSlots = stored.getOrDefault(doctorId, Map.of());
+            Map<Long, Slot> dbSlots = committed.getOrDefault(doctorId, Map.of());
+            if (journalSlots.equals(dbSlots)) {
+                continue;
+            }
+            log.warn("Booking journal differs from the db for doctor {}, taking the db's {} open slots",
+                    doctorId, dbSlots.size());
+            openSlots.keySet().removeAll(journalSlots.keySet());
+            openSlots.putAll(dbSlots);
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        buffer.force();
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)), new CRC32());
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(segment);
+            out.writeInt(openSlots.size());
+            for (Map.Entry<Long, Slot> entry : openSlots.entrySet()) {
+                Slot slot = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeLong(slot.doctorId);
+                out.writeLong(slot.start);
+                out.writeLong(slot.end);
+                out.writeLong(slot.version);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void openSegment(long number) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        mapSegment(number);
+    }
+
+    private void mapSegment(long number) throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+        segment = number;
+        channel = FileChannel.open(directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private List<Long> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(
+                            SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            });
+        }
+        return new ArrayList<>(segments.keySet());
+    }
+
+    private void deleteSegmentsBefore(long number) throws IOException {
+        for (Long older : segments()) {
+            if (older < number) {
+                Files.deleteIfExists(directory.resolve(SEGMENT_PREFIX + older + SEGMENT_SUFFIX));
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final long doctorId;
+        private final long start;
+        private final long end;
+        private final long version;
+
+        private Slot(long doctorId, long start, long end, long version) {
+            this.doctorId = doctorId;
+            this.start = start;
+            this.end = end;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Slot)) {
+                return false;
+            }
+            Slot slot = (Slot) other;
+            return doctorId == slot.doctorId && start == slot.start && end == slot.end && version == slot.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, start, end, version);
+        }
+
+        private Record toRecord(long id) {
+            return new Record(PUBLISHED, id, doctorId, start, end, version);
+        }
+
+        // note: the doctor is left out, the index takes it separately
+        private OpenTime toOpenTime(Long id) {
+            OpenTime openTime = new OpenTime();
+            openTime.setId(id);
+            openTime.setStartTime(fromEpochSecond(start));
+            openTime.setEndTime(fromEpochSecond(end));
+            openTime.setStatus(OpenTimeStatus.OPEN);
+            openTime.setVersion(version);
+            return openTime;
+        }
+    }
+
+    private static final class Record {
+        private final byte type;
+        private final long id;
+        private final long doctorId;
+        private final long start;
+        private final long end;
+        private final long version;
+
+        private Record(byte type, long id, long doctorId, long start, long end, long version) {
+            this.type = type;
+            this.id = id;
+            this.doctorId = doctorId;
+            this.start = start;
+            this.end = end;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AvailabilityEvent;
+import com.blubank.doctorappointment.dto.BookingRequest;
+import com.blubank.doctorappointment.dto.OpenTimeSlot;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.TimedOperation;
+import com.blubank.doctorappointment.helper.TransactionUtil;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.AppointmentRepository;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.blubank.doctorappointment.helper.AppConstants.BOOKING_OPERATION;
+
+// note: bookings of a doctor always go to the same stripe, each stripe has a single writer thread.
+// the writer drains what is queued, keeps the first request per slot (the others lose without touching the db)
+// and commits the whole batch in one transaction. if the batch fails, its requests are retried one by one.
+// a caller gives up on timeout only while its request is still queued, once the writer took it the caller waits
+// for the outcome, so a booking that commits is never reported as failed.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.booking.mode", havingValue = "sequenced")
+public class BookingSequencer {
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired(required = false)
+    private BookingJournal bookingJournal;
+
+    @Value("${app.booking.sequencer.stripes:8}")
+    private int stripeCount;
+
+    @Value("${app.booking.sequencer.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.booking.sequencer.max-batch:64}")
+    private int maxBatch;
+
+    @Value("${app.booking.sequencer.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    private final List<BlockingQueue<BookingRequest>> stripes = new ArrayList<>();
+
+    private final List<Thread> writers = new ArrayList<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < stripeCount; i++) {
+            BlockingQueue<BookingRequest> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread writer = new Thread(() -> drain(queue), "booking-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            stripes.add(queue);
+            writers.add(writer);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        writers.forEach(Thread::interrupt);
+    }
+
+    @TimedOperation(BOOKING_OPERATION)
+    public Appointment book(Patient patient, Long openTimeId) {
+        OpenTimeSlot slot = openTimeRepository.findSlotById(openTimeId).orElse(null);
+        if (slot == null) {
+            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        }
+
+        if (!slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+            throw new AppointmentExistsException("Cannot pick taken open time with existing appointments.");
+        }
+
+        BookingRequest request = new BookingRequest(patient, slot);
+        if (!stripes.get(Math.floorMod(slot.getDoctorId().hashCode(), stripeCount)).offer(request)) {
+            throw new ConcurrencyException("Too many pending bookings, try again later.");
+        }
+
+        try {
+            return request.getResult().get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw failure(e);
+        } catch (TimeoutException e) {
+            if (request.getClaimed().compareAndSet(false, true)) {
+                throw new ConcurrencyException("Booking timed out, try again later.");
+            }
+            return awaitWritten(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (request.getClaimed().compareAndSet(false, true)) {
+                throw new ConcurrencyException("Booking interrupted.");
+            }
+            return awaitWritten(request);
+        }
+    }
+
+    // note: the writer completes every request it took, whatever happens to its batch
+    private static Appointment awaitWritten(BookingRequest request) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    return request.getResult().get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw failure(e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static RuntimeException failure(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return new IllegalStateException(e.getCause());
+    }
+
+    private void drain(BlockingQueue<BookingRequest> queue) {
+        List<BookingRequest> batch = new ArrayList<>(maxBatch);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            batch.removeIf(request -> !request.getClaimed().compareAndSet(false, true));
+
+            try {
+                writeBatch(batch);
+            } catch (RuntimeException e) {
+                log.warn("Booking batch of {} failed, retrying one by one", batch.size(), e);
+                batch.forEach(this::writeOne);
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<BookingRequest> batch) {
+        List<BookingRequest> booked = new ArrayList<>();
+        List<BookingRequest> rejected = new ArrayList<>();
+        List<Appointment> appointments = new ArrayList<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> claimedSlots = new HashSet<>();
+            for (BookingRequest request : batch) {
+                OpenTimeSlot slot = request.getSlot();
+                if (!claimedSlots.add(slot.getId()) || openTimeRepository.updateStatusIfCurrent(
+                        slot.getId(), OpenTimeStatus.OPEN, OpenTimeStatus.TAKEN) == 0) {
+                    rejected.add(request);
+                    continue;
+                }
+
+                OpenTime openTime = takenOpenTime(slot);
+                Appointment appointment = new Appointment();
+                appointment.setPatient(request.getPatient());
+                appointment.setOpenTime(openTime);
+                appointments.add(appointment);
+                booked.add(request);
+                // note: the booking is committed by then, a failing notification must not fail the batch and
+                // send its booked requests to the one by one retry
+                TransactionUtil.afterCommit(() -> {
+                    try {
+                        slotAvailabilityIndex.slotClosed(slot.getDoctorId(), slot.getId(), slot.getStartTime());
+                        availabilityEventBus.slotClosed(AvailabilityEvent.Type.TAKEN, openTime);
+                        doctorDayVersions.dayChanged(slot.getDoctorId(), slot.getStartTime().toLocalDate());
+                    } catch (RuntimeException e) {
+                        log.warn("Notifying the booking of open time {} failed", slot.getId(), e);
+                    }
+                });
+                if (bookingJournal != null) {
+                    bookingJournal.slotBooked(slot.getDoctorId(), slot.getId(), slot.getStartTime());
+                }
+            }
+            appointmentRepository.saveAll(appointments);
+        });
+
+        for (int i = 0; i < booked.size(); i++) {
+            booked.get(i).getResult().complete(appointments.get(i));
+        }
+        rejected.forEach(request -> request.getResult().completeExceptionally(
+                new AppointmentExistsException("Cannot pick taken open time with existing appointments.")));
+    }
+
+    // note: a batch of one, so the booking is timed once, by book()
+    private void writeOne(BookingRequest request) {
+        try {
+            writeBatch(List.of(request));
+        } catch (RuntimeException e) {
+            request.getResult().completeExceptionally(e);
+        }
+    }
+
+    private static OpenTime takenOpenTime(OpenTimeSlot slot) {
+        Doctor doctor = new Doctor();
+        doctor.setId(slot.getDoctorId());
+        doctor.setName(slot.getDoctorName());
+
+        OpenTime openTime = new OpenTime();
+        openTime.setId(slot.getId());
+        openTime.setStartTime(slot.getStartTime());
+        openTime.setEndTime(slot.getEndTime());
+        openTime.setStatus(OpenTimeStatus.TAKEN);
+        openTime.setVersion(slot.getVersion() + 1);
+        openTime.setDoctor(doctor);
+        return openTime;
+    }
+}
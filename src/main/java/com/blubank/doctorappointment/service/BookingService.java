@@ -0,0 +1,67 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Patient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+// note: app.booking.mode=direct (default) books on the caller thread in its own transaction,
+// app.booking.mode=sequenced hands the booking to the per-doctor writer of BookingSequencer,
+// app.booking.mode=clustered books on the cluster member owning the doctor (ClusteredBookingService).
+// with slot holds enabled, an open time held by another patient is refused in every mode.
+@Service
+public class BookingService {
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired(required = false)
+    private BookingSequencer bookingSequencer;
+
+    @Autowired(required = false)
+    private ClusteredBookingService clusteredBookingService;
+
+    @Autowired(required = false)
+    private SlotHoldService slotHoldService;
+
+    public Appointment book(Patient patient, Long openTimeId) {
+        if (slotHoldService == null) {
+            return bookUnheld(patient, openTimeId);
+        }
+        String claimToken = slotHoldService.claimForBooking(openTimeId, patient.getId());
+        try {
+            return bookUnheld(patient, openTimeId);
+        } finally {
+            if (claimToken != null) {
+                slotHoldService.releaseHold(openTimeId, claimToken);
+            }
+        }
+    }
+
+    private Appointment bookUnheld(Patient patient, Long openTimeId) {
+        if (clusteredBookingService != null) {
+            return clusteredBookingService.book(patient, openTimeId);
+        }
+        if (bookingSequencer == null) {
+            return openTimeService.setAppointmentForPatient(patient, openTimeId);
+        }
+        return bookingSequencer.book(patient, openTimeId);
+    }
+
+    public Appointment book(String patientName, String phoneNumber, Long openTimeId) {
+        if (slotHoldService != null) {
+            return book(patientService.getPatientReference(patientName, phoneNumber), openTimeId);
+        }
+        if (clusteredBookingService != null) {
+            return clusteredBookingService.book(
+                    patientService.getPatientReference(patientName, phoneNumber), openTimeId);
+        }
+        if (bookingSequencer == null) {
+            return openTimeService.setAppointmentForPatient(patientName, phoneNumber, openTimeId);
+        }
+
+        return bookingSequencer.book(patientService.getPatientReference(patientName, phoneNumber), openTimeId);
+    }
+}
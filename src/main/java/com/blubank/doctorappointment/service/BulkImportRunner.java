@@ -0,0 +1,60 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.ImportSummary;
+import com.blubank.doctorappointment.helper.ImportRowReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+// note: command line import, e.g. --app.import.file=patients.csv --app.import.kind=patients.
+// the format comes from the file extension, rejected rows are logged and the application exits with 1 if any
+// row was rejected, unless app.import.exit=false.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.import.file")
+public class BulkImportRunner implements ApplicationRunner {
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Value("${app.import.file}")
+    private String file;
+
+    @Value("${app.import.kind}")
+    private String kind;
+
+    @Value("${app.import.exit:true}")
+    private boolean exit;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Path path = Paths.get(file);
+        ImportSummary summary;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            summary = bulkImportService.importRows(BulkImportService.Kind.valueOf(kind.toUpperCase(Locale.ROOT)),
+                    ImportRowReader.Format.of(path.getFileName().toString()), inputStream,
+                    error -> log.warn("Rejected line {} of {}: {}", error.getLine(), path, error.getMessage()));
+        }
+        log.info("Imported {} of {} rows from {}, {} duplicates, {} rejected", summary.getImported(),
+                summary.getRows(), path, summary.getDuplicates(), summary.getRejected());
+
+        if (exit) {
+            System.exit(SpringApplication.exit(applicationContext, () -> summary.getRejected() == 0 ? 0 : 1));
+        }
+    }
+}
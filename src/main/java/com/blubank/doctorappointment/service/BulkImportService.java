@@ -0,0 +1,304 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.ImportRowError;
+import com.blubank.doctorappointment.dto.ImportSummary;
+import com.blubank.doctorappointment.helper.ImportRowReader;
+import com.blubank.doctorappointment.helper.NdjsonWriter;
+import com.blubank.doctorappointment.helper.Util;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.DoctorRepository;
+import com.blubank.doctorappointment.repository.PatientRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_LIST_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_IMPORT_COMMIT_SIZE;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_INTERVAL_MINUTES;
+
+// note: rows are read one at a time and written in chunks of app.import.commit-size rows, each chunk in its own
+// transaction, so memory does not grow with the input. doctors and patients have IDENTITY ids, which hibernate
+// cannot batch, so they are inserted as plain jdbc batches; schedule slots have sequence ids and go through
+// OpenTimeService, which locks the doctor and skips slots overlapping open times or day schedule slots like any
+// other writer (template slots are hidden by the rows, as for slots added through the api). a row that cannot be
+// read or is invalid is reported and skipped, a chunk that fails to commit is retried row by row so only its
+// failing rows are reported. a patient whose phone number and name already exist, in the db or earlier in the
+// load, is counted as a duplicate and skipped, the same identity uk_patient_phone_name enforces.
+@Slf4j
+@Service
+public class BulkImportService {
+    public enum Kind {
+        DOCTORS, PATIENTS, SCHEDULES
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.import.commit-size:500}")
+    private int commitSize;
+
+    // note: the rejected rows then the summary, one json line each
+    public void importRows(Kind kind, ImportRowReader.Format format, InputStream inputStream, NdjsonWriter writer) {
+        writer.write(importRows(kind, format, inputStream, writer::write));
+    }
+
+    public ImportSummary importRows(Kind kind, ImportRowReader.Format format, InputStream inputStream,
+                                    Consumer<ImportRowError> errorListener) {
+        // note: the chunk is also the size of the phone number in-list, which oracle limits to 1000 items
+        int chunkSize = Math.max(1, Math.min(commitSize, MAX_IMPORT_COMMIT_SIZE));
+        Load load = new Load(errorListener);
+        ImportRowReader reader = new ImportRowReader(inputStream, format, objectMapper);
+        List<Row<Map<String, String>>> chunk = new ArrayList<>(chunkSize);
+        while (true) {
+            Map<String, String> fields;
+            try {
+                fields = reader.next();
+            } catch (IllegalArgumentException e) {
+                load.rows++;
+                load.reject(reader.line(), e.getMessage());
+                continue;
+            }
+            if (fields == null) {
+                break;
+            }
+
+            load.rows++;
+            chunk.add(new Row<>(reader.line(), fields));
+            if (chunk.size() == chunkSize) {
+                importChunk(kind, chunk, load);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(kind, chunk, load);
+        }
+
+        if (kind == Kind.DOCTORS && load.imported > 0) {
+            Cache doctorListCache = cacheManager.getCache(DOCTOR_LIST_CACHE);
+            if (doctorListCache != null) {
+                doctorListCache.clear();
+            }
+        }
+        return new ImportSummary(load.rows, load.imported, load.duplicates, load.rejected);
+    }
+
+    private void importChunk(Kind kind, List<Row<Map<String, String>>> chunk, Load load) {
+        switch (kind) {
+            case DOCTORS:
+                write(parse(chunk, BulkImportService::doctor, load), this::insertDoctors, load);
+                break;
+            case PATIENTS:
+                write(withoutDuplicates(parse(chunk, BulkImportService::patient, load), load),
+                        this::insertPatients, load);
+                break;
+            case SCHEDULES:
+                write(withDoctors(parse(chunk, this::schedule, load), load), this::insertSchedules, load);
+                break;
+        }
+    }
+
+    private static <T> List<Row<T>> parse(List<Row<Map<String, String>>> chunk, Function<Map<String, String>, T> parser,
+                                          Load load) {
+        List<Row<T>> rows = new ArrayList<>(chunk.size());
+        for (Row<Map<String, String>> row : chunk) {
+            try {
+                rows.add(new Row<>(row.line, parser.apply(row.value)));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                load.reject(row.line, e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private List<Row<Patient>> withoutDuplicates(List<Row<Patient>> rows, Load load) {
+        if (rows.isEmpty()) {
+            return rows;
+        }
+
+        Set<List<String>> known = patientRepository.findByPhoneNumberIn(
+                        rows.stream().map(row -> row.value.getPhoneNumber()).collect(Collectors.toSet())).stream()
+                .map(BulkImportService::identity)
+                .collect(Collectors.toCollection(HashSet::new));
+        List<Row<Patient>> unique = new ArrayList<>(rows.size());
+        for (Row<Patient> row : rows) {
+            if (known.add(identity(row.value))) {
+                unique.add(row);
+            } else {
+                load.duplicates++;
+            }
+        }
+        return unique;
+    }
+
+    private static List<String> identity(Patient patient) {
+        return List.of(patient.getPhoneNumber(), patient.getName());
+    }
+
+    private List<Row<Schedule>> withDoctors(List<Row<Schedule>> rows, Load load) {
+        Map<Long, Doctor> doctors = new HashMap<>();
+        doctorRepository.findAllById(rows.stream().map(row -> row.value.doctorId).collect(Collectors.toSet()))
+                .forEach(doctor -> doctors.put(doctor.getId(), doctor));
+
+        List<Row<Schedule>> known = new ArrayList<>(rows.size());
+        for (Row<Schedule> row : rows) {
+            row.value.doctor = doctors.get(row.value.doctorId);
+            if (row.value.doctor == null) {
+                load.reject(row.line, "No doctor found for doctor id " + row.value.doctorId);
+            } else {
+                known.add(row);
+            }
+        }
+        return known;
+    }
+
+    private <T> void write(List<Row<T>> rows, Consumer<List<T>> writer, Load load) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    writer.accept(rows.stream().map(row -> row.value).collect(Collectors.toList())));
+            load.imported += rows.size();
+        } catch (RuntimeException e) {
+            if (rows.size() == 1) {
+                load.reject(rows.get(0).line, NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+                return;
+            }
+            log.debug("Import chunk of {} rows failed, retrying its rows one by one", rows.size(), e);
+            rows.forEach(row -> write(List.of(row), writer, load));
+        }
+    }
+
+    private void insertDoctors(List<Doctor> doctors) {
+        jdbcTemplate.batchUpdate("insert into doctor (name) values (?)", doctors, doctors.size(),
+                (statement, doctor) -> statement.setString(1, doctor.getName()));
+    }
+
+    private void insertPatients(List<Patient> patients) {
+        jdbcTemplate.batchUpdate("insert into patient (name, phone_number) values (?, ?)", patients, patients.size(),
+                (statement, patient) -> {
+                    statement.setString(1, patient.getName());
+                    statement.setString(2, patient.getPhoneNumber());
+                });
+    }
+
+    private void insertSchedules(List<Schedule> schedules) {
+        for (Schedule schedule : schedules) {
+            openTimeService.addOpenTimesForDoctor(schedule.doctor, schedule.startTime, schedule.endTime,
+                    schedule.slotMinutes);
+        }
+    }
+
+    private static Doctor doctor(Map<String, String> fields) {
+        Doctor doctor = new Doctor();
+        doctor.setName(required(fields, "name"));
+        return doctor;
+    }
+
+    private static Patient patient(Map<String, String> fields) {
+        Patient patient = new Patient();
+        patient.setName(required(fields, "name"));
+        patient.setPhoneNumber(required(fields, "phoneNumber"));
+        return patient;
+    }
+
+    private Schedule schedule(Map<String, String> fields) {
+        LocalDate date = LocalDate.parse(required(fields, "date"));
+        String slotMinutes = fields.get("slotMinutes");
+
+        Schedule schedule = new Schedule();
+        schedule.doctorId = Long.valueOf(required(fields, "doctorId"));
+        schedule.startTime = date.atTime(LocalTime.parse(required(fields, "startTime")));
+        schedule.endTime = date.atTime(LocalTime.parse(required(fields, "endTime")));
+        schedule.slotMinutes =
+                Util.isNullOrEmpty(slotMinutes) ? OPENTIME_INTERVAL_MINUTES : Integer.parseInt(slotMinutes.trim());
+        openTimeService.validateOpenTimePeriod(schedule.startTime, schedule.endTime, schedule.slotMinutes);
+        return schedule;
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (Util.isNullOrEmpty(value)) {
+            throw new IllegalArgumentException("Missing " + name + ".");
+        }
+        return value.trim();
+    }
+
+    private static final class Row<T> {
+        private final int line;
+        private final T value;
+
+        private Row(int line, T value) {
+            this.line = line;
+            this.value = value;
+        }
+    }
+
+    private static final class Schedule {
+        private Long doctorId;
+        private Doctor doctor;
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+        private int slotMinutes;
+    }
+
+    private static final class Load {
+        private final Consumer<ImportRowError> errorListener;
+        private int rows;
+        private int imported;
+        private int duplicates;
+        private int rejected;
+
+        private Load(Consumer<ImportRowError> errorListener) {
+            this.errorListener = errorListener;
+        }
+
+        private void reject(int line, String message) {
+            rejected++;
+            errorListener.accept(new ImportRowError(line, message));
+        }
+    }
+}
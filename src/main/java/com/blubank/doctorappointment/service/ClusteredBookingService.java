@@ -0,0 +1,194 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AvailabilityEvent;
+import com.blubank.doctorappointment.dto.SlotBooking;
+import com.blubank.doctorappointment.dto.SlotKey;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.TimedOperation;
+import com.blubank.doctorappointment.helper.TransactionUtil;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.BOOKING_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.SLOT_BOOKING_MAP;
+
+// note: app.booking.mode=clustered keeps the booking state of slots in a hazelcast map partitioned by doctor.
+// the OPEN -> TAKEN transition is an entry processor run on the member owning the doctor's partition, so
+// concurrent bookings of a slot are ordered there without db locks; the db is written behind by SlotBookingStore.
+// until that write, the appointment has no id and db reads of the day may still show the slot open.
+// every node of the cluster has to run in this mode, deletions claim the slot in the map before the db delete and
+// leave it there as a DELETED tombstone, which the store never writes.
+@Service
+@ConditionalOnProperty(name = "app.booking.mode", havingValue = "clustered")
+public class ClusteredBookingService {
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired(required = false)
+    private BookingJournal bookingJournal;
+
+    private IMap<SlotKey, SlotBooking> slots;
+
+    @PostConstruct
+    public void init() {
+        slots = hazelcastInstance.getMap(SLOT_BOOKING_MAP);
+    }
+
+    @TimedOperation(BOOKING_OPERATION)
+    public Appointment book(Patient patient, Long openTimeId) {
+        Long doctorId = openTimeRepository.findDoctorIdById(openTimeId).orElse(null);
+        if (doctorId == null) {
+            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        }
+
+        SlotBooking slot = slots.executeOnKey(new SlotKey(openTimeId, doctorId), new BookSlot(patient.getId()));
+        if (slot == null || slot.getStatus().equals(OpenTimeStatus.DELETED)) {
+            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        }
+        if (!slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+            throw new AppointmentExistsException("Cannot pick taken open time with existing appointments.");
+        }
+
+        OpenTime openTime = takenOpenTime(openTimeId, slot);
+        slotAvailabilityIndex.slotClosed(doctorId, openTimeId, slot.getStartTime());
+        availabilityEventBus.slotClosed(AvailabilityEvent.Type.TAKEN, openTime);
+        doctorDayVersions.dayChanged(doctorId, slot.getStartTime().toLocalDate());
+        if (bookingJournal != null) {
+            bookingJournal.slotBooked(doctorId, openTimeId, slot.getStartTime());
+        }
+
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setOpenTime(openTime);
+        return appointment;
+    }
+
+    // note: called inside the deleting transaction, a rollback reopens the claimed slot
+    public boolean claimForDeletion(Long doctorId, Long openTimeId) {
+        SlotKey key = new SlotKey(openTimeId, doctorId);
+        SlotBooking slot = slots.executeOnKey(key, new DeleteSlot());
+        if (slot != null && !slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+            return false;
+        }
+        TransactionUtil.afterRollback(() -> slots.executeOnKey(key, new ReopenSlot()));
+        return true;
+    }
+
+    // note: the open slots of the range are read from the db and claimed through the map, which loads the ones
+    // it does not hold yet, so a booking of the range either got there first or finds the tombstone. pending
+    // bookings are then flushed so the caller sees them as TAKEN. only the returned slots may be deleted, a
+    // slot published meanwhile was never claimed and could still be booked.
+    public List<Long> claimRangeForDeletion(Long doctorId, LocalDateTime from, LocalDateTime to) {
+        Set<SlotKey> keys = openTimeRepository.findViewsByDoctorIdAndStatusInRange(
+                        doctorId, OpenTimeStatus.OPEN, from, to).stream()
+                .map(view -> new SlotKey(view.getId(), doctorId))
+                .collect(Collectors.toSet());
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        Map<SlotKey, SlotBooking> claimed = slots.executeOnKeys(keys, new DeleteSlot());
+        slots.flush();
+
+        Set<SlotKey> opened = claimed.entrySet().stream()
+                .filter(entry -> entry.getValue() != null
+                        && entry.getValue().getStatus().equals(OpenTimeStatus.OPEN))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        if (!opened.isEmpty()) {
+            TransactionUtil.afterRollback(() -> slots.executeOnKeys(opened, new ReopenSlot()));
+        }
+        return opened.stream().map(SlotKey::getOpenTimeId).collect(Collectors.toList());
+    }
+
+    private static OpenTime takenOpenTime(Long openTimeId, SlotBooking slot) {
+        Doctor doctor = new Doctor();
+        doctor.setId(slot.getDoctorId());
+        doctor.setName(slot.getDoctorName());
+
+        OpenTime openTime = new OpenTime();
+        openTime.setId(openTimeId);
+        openTime.setStartTime(slot.getStartTime());
+        openTime.setEndTime(slot.getEndTime());
+        openTime.setStatus(OpenTimeStatus.TAKEN);
+        openTime.setVersion(slot.getVersion() + 1);
+        openTime.setDoctor(doctor);
+        return openTime;
+    }
+
+    // note: returns the slot as it was before, the booking happened only if that was OPEN
+    static final class BookSlot implements EntryProcessor<SlotKey, SlotBooking, SlotBooking> {
+        private static final long serialVersionUID = 1L;
+
+        private final Long patientId;
+
+        BookSlot(Long patientId) {
+            this.patientId = patientId;
+        }
+
+        @Override
+        public SlotBooking process(Map.Entry<SlotKey, SlotBooking> entry) {
+            SlotBooking slot = entry.getValue();
+            if (slot != null && slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+                entry.setValue(slot.withStatus(OpenTimeStatus.TAKEN, patientId));
+            }
+            return slot;
+        }
+    }
+
+    static final class DeleteSlot implements EntryProcessor<SlotKey, SlotBooking, SlotBooking> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public SlotBooking process(Map.Entry<SlotKey, SlotBooking> entry) {
+            SlotBooking slot = entry.getValue();
+            if (slot != null && slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+                entry.setValue(slot.withStatus(OpenTimeStatus.DELETED, null));
+            }
+            return slot;
+        }
+    }
+
+    // note: undoes a DeleteSlot whose transaction rolled back
+    static final class ReopenSlot implements EntryProcessor<SlotKey, SlotBooking, SlotBooking> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public SlotBooking process(Map.Entry<SlotKey, SlotBooking> entry) {
+            SlotBooking slot = entry.getValue();
+            if (slot != null && slot.getStatus().equals(OpenTimeStatus.DELETED)) {
+                entry.setValue(slot.withStatus(OpenTimeStatus.OPEN, null));
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.blubank.doctorappointment.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// note: node-local, size-bounded (LRU) map of doctor-day -> serialized json of its open times, tagged with the
+// day version it was read at. only the entry of the current version is served, older ones are just overwritten.
+@Component
+public class DayBodyCache {
+    @Value("${app.day-body-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, Body> bodies = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Body> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public synchronized byte[] get(Long doctorId, LocalDate date, long version) {
+        Body body = bodies.get(SharedDayAvailability.dayKey(doctorId, date.toEpochDay()));
+        return body != null && body.version == version ? body.json : null;
+    }
+
+    public byte[] put(Long doctorId, LocalDate date, long version, Object value) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (this) {
+            bodies.merge(SharedDayAvailability.dayKey(doctorId, date.toEpochDay()), new Body(version, json),
+                    (cached, body) -> cached.version > body.version ? cached : body);
+        }
+        return json;
+    }
+
+    public synchronized int size() {
+        return bodies.size();
+    }
+
+    private static final class Body {
+        private final long version;
+        private final byte[] json;
+
+        private Body(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.model.DoctorDaySchedule;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.repository.DoctorDayScheduleRepository;
+import com.blubank.doctorappointment.service.SlotAvailabilityIndex.DaySlots;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// note: the open bits of day schedules are listed like template slots, without id, and hide the template slots
+// they overlap. such days are reloaded on writes like templated ones.
+@Component
+public class DayScheduleOverlay {
+    // note: lazy, the day schedule service publishes through OpenTimeService, which writes to the index
+    @Lazy
+    @Autowired
+    private DayScheduleService dayScheduleService;
+
+    @Autowired
+    private DoctorDayScheduleRepository doctorDayScheduleRepository;
+
+    // note: returns the slots added, the template overlay leaves out the template slots they overlap
+    List<OpenTime> addSlots(Map<Long, DaySlots> loaded, Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        if (!dayScheduleService.getDayScheduleDoctorIds().contains(doctorId)) {
+            return List.of();
+        }
+
+        List<OpenTime> added = new ArrayList<>();
+        for (DoctorDaySchedule schedule :
+                doctorDayScheduleRepository.findByDoctorIdInRange(doctorId, fromDate, toDate)) {
+            DaySlots daySlots = loaded.computeIfAbsent(schedule.getScheduleDay().toEpochDay(), day -> new DaySlots());
+            daySlots.templated = true;
+            for (OpenTime openTime : DayScheduleService.openSlots(schedule)) {
+                daySlots.put(openTime);
+                added.add(openTime);
+            }
+        }
+        return added;
+    }
+}
@@ -0,0 +1,315 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.OccupiedIntervals;
+import com.blubank.doctorappointment.helper.TimedOperation;
+import com.blubank.doctorappointment.helper.TransactionUtil;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.DoctorDaySchedule;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.AppointmentRepository;
+import com.blubank.doctorappointment.repository.DoctorDayScheduleRepository;
+import com.blubank.doctorappointment.repository.DoctorRepository;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.BOOKING_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_SCHEDULE_DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.GENERATION_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_AVAILABILITY_RANGE_DAYS;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_INTERVAL_MINUTES;
+
+// note: schedules kept as one DoctorDaySchedule row per doctor-day instead of one OpenTime row per slot.
+// open slots only exist as bits and are turned into OpenTimeViews when read; booking flips the bits under the
+// row version and materializes the single TAKEN OpenTime the appointment points to.
+// the open bits count as occupied for the other writers of the doctor's slots, which hold the same doctor lock,
+// and the availability index shows them like template slots (no id), so they reach availability, the earliest
+// search and the feed. past days are deleted by the archive job, their taken slots are archived as open times.
+@Service
+public class DayScheduleService {
+    private static final int MAX_BOOKING_ATTEMPTS = 5;
+
+    @Autowired
+    private DoctorDayScheduleRepository doctorDayScheduleRepository;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${app.archive.chunk-size:500}")
+    private int chunkSize;
+
+    private Cache dayScheduleDoctorsCache;
+
+    @PostConstruct
+    public void init() {
+        dayScheduleDoctorsCache = cacheManager.getCache(DAY_SCHEDULE_DOCTORS_CACHE);
+    }
+
+    @Cacheable(cacheNames = DAY_SCHEDULE_DOCTORS_CACHE, key = "'all'")
+    public List<Long> getDayScheduleDoctorIds() {
+        return doctorDayScheduleRepository.findDoctorIds();
+    }
+
+    @TimedOperation(GENERATION_OPERATION)
+    public int publish(Long doctorId, SchedulePublishRequest request) {
+        openTimeService.validateSchedulePublishRequest(request);
+
+        int slotMinutes = request.getSlotMinutes() == null ? OPENTIME_INTERVAL_MINUTES : request.getSlotMinutes();
+        int startMinute = request.getDailyStartTime().toSecondOfDay() / 60;
+        int slotCount = (request.getDailyEndTime().toSecondOfDay() / 60 - startMinute) / slotMinutes;
+
+        Integer created = new TransactionTemplate(transactionManager).execute(status -> {
+            if (doctorRepository.findByIdForUpdate(doctorId).isEmpty()) {
+                throw new IllegalArgumentException("No doctor found for doctor id " + doctorId);
+            }
+
+            LocalDate fromDate = request.getFromDate();
+            LocalDate toDate = request.getToDate();
+            Map<LocalDate, DoctorDaySchedule> existing = doctorDayScheduleRepository
+                    .findByDoctorIdInRange(doctorId, fromDate, toDate).stream()
+                    .collect(Collectors.toMap(DoctorDaySchedule::getScheduleDay, Function.identity()));
+            OccupiedIntervals occupiedIntervals = OccupiedIntervals.of(openTimeRepository.findOverlapping(
+                            doctorId, fromDate.atStartOfDay(), toDate.plusDays(1).atStartOfDay()),
+                    OpenTime::getStartTime, OpenTime::getEndTime);
+
+            int opened = 0;
+            List<DoctorDaySchedule> schedules = new ArrayList<>();
+            for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+                if (request.getExcludedDaysOfWeek().contains(date.getDayOfWeek())
+                        || request.getExcludedDates().contains(date)) {
+                    continue;
+                }
+
+                DoctorDaySchedule schedule = existing.get(date);
+                if (schedule == null) {
+                    schedule = new DoctorDaySchedule();
+                    schedule.setDoctorId(doctorId);
+                    schedule.setScheduleDay(date);
+                    schedule.setStartMinute(startMinute);
+                    schedule.setSlotMinutes(slotMinutes);
+                    schedule.setSlotCount(slotCount);
+                    schedule.setTakenSlots(new byte[0]);
+                    schedule.setOpenSlots(new byte[0]);
+                } else if (schedule.getStartMinute() != startMinute || schedule.getSlotMinutes() != slotMinutes
+                        || schedule.getSlotCount() != slotCount) {
+                    throw new IllegalArgumentException("Day " + date + " is already published with other daily hours.");
+                }
+
+                BitSet open = BitSet.valueOf(schedule.getOpenSlots());
+                BitSet taken = BitSet.valueOf(schedule.getTakenSlots());
+                for (int slot = 0; slot < slotCount; slot++) {
+                    long start = OccupiedIntervals.toEpochSecond(slotStart(schedule, slot));
+                    if (open.get(slot) || taken.get(slot)
+                            || occupiedIntervals.overlaps(start, start + slotMinutes * 60L)) {
+                        continue;
+                    }
+                    open.set(slot);
+                    opened++;
+                }
+                schedule.setOpenSlots(open.toByteArray());
+                schedules.add(schedule);
+            }
+            doctorDayScheduleRepository.saveAll(schedules);
+            TransactionUtil.afterCommit(() -> onDaysChanged(doctorId, fromDate, toDate));
+            return opened;
+        });
+        return created == null ? 0 : created;
+    }
+
+    public List<OpenTimeView> getOpenTimes(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        if (toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("Invalid date range: End date is sooner than start date.");
+        }
+
+        if (ChronoUnit.DAYS.between(fromDate, toDate) >= MAX_AVAILABILITY_RANGE_DAYS) {
+            throw new IllegalArgumentException(
+                    "Invalid date range: the range must be at most " + MAX_AVAILABILITY_RANGE_DAYS + " days.");
+        }
+
+        DoctorView doctorView = doctorService.getDoctor(doctorId);
+        if (doctorView == null) {
+            return List.of();
+        }
+
+        List<OpenTimeView> openTimes = new ArrayList<>();
+        List<DoctorDaySchedule> schedules = doctorDayScheduleRepository.findByDoctorIdInRange(doctorId, fromDate, toDate);
+        for (DoctorDaySchedule schedule : schedules) {
+            BitSet open = BitSet.valueOf(schedule.getOpenSlots());
+            for (int slot = open.nextSetBit(0); slot >= 0; slot = open.nextSetBit(slot + 1)) {
+                LocalDateTime start = slotStart(schedule, slot);
+                openTimes.add(new OpenTimeView(null, start, start.plusMinutes(schedule.getSlotMinutes()),
+                        OpenTimeStatus.OPEN, doctorView, schedule.getVersion()));
+            }
+        }
+        return openTimes;
+    }
+
+    // note: bookings of other slots of the same day bump the same row version, such a conflict is retried
+    // on fresh bits a few times before it is reported.
+    @TimedOperation(BOOKING_OPERATION)
+    public Appointment book(Patient patient, Long doctorId, LocalDateTime startTime) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> bookSlot(patient, doctorId, startTime));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_BOOKING_ATTEMPTS) {
+                    throw new ConcurrencyException("Concurrency issue during booking.");
+                }
+            }
+        }
+    }
+
+    private Appointment bookSlot(Patient patient, Long doctorId, LocalDateTime startTime) {
+        DoctorDaySchedule schedule = doctorDayScheduleRepository
+                .findByDoctorIdAndScheduleDay(doctorId, startTime.toLocalDate()).orElse(null);
+        int slot = schedule == null ? -1 : slotOf(schedule, startTime);
+        if (slot < 0) {
+            throw new OpenTimeNotFoundException("Open time not for doctor id " + doctorId + " at " + startTime);
+        }
+
+        BitSet open = BitSet.valueOf(schedule.getOpenSlots());
+        BitSet taken = BitSet.valueOf(schedule.getTakenSlots());
+        if (taken.get(slot)) {
+            throw new AppointmentExistsException("Cannot pick taken open time with existing appointments.");
+        }
+        if (!open.get(slot)) {
+            throw new OpenTimeNotFoundException("Open time not for doctor id " + doctorId + " at " + startTime);
+        }
+
+        open.clear(slot);
+        taken.set(slot);
+        schedule.setOpenSlots(open.toByteArray());
+        schedule.setTakenSlots(taken.toByteArray());
+        doctorDayScheduleRepository.saveAndFlush(schedule);
+
+        OpenTime openTime = new OpenTime();
+        openTime.setStartTime(startTime);
+        openTime.setEndTime(startTime.plusMinutes(schedule.getSlotMinutes()));
+        openTime.setStatus(OpenTimeStatus.TAKEN);
+        openTime.setDoctor(doctorRepository.getReferenceById(doctorId));
+        openTimeRepository.save(openTime);
+
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setOpenTime(openTime);
+        appointmentRepository.save(appointment);
+        TransactionUtil.afterCommit(() ->
+                onDaysChanged(doctorId, startTime.toLocalDate(), startTime.toLocalDate()));
+        return appointment;
+    }
+
+    // note: archival of the days before the given one, one chunk per transaction like the open times
+    public int deleteDaysBefore(LocalDate day) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int deleted = 0;
+        while (true) {
+            Integer chunk = transactionTemplate.execute(status -> {
+                List<DoctorDaySchedule> schedules =
+                        doctorDayScheduleRepository.findBefore(day, PageRequest.of(0, chunkSize));
+                if (schedules.isEmpty()) {
+                    return 0;
+                }
+                doctorDayScheduleRepository.deleteByIds(
+                        schedules.stream().map(DoctorDaySchedule::getId).collect(Collectors.toList()));
+                TransactionUtil.afterCommit(() -> schedules.forEach(schedule -> onDaysChanged(
+                        schedule.getDoctorId(), schedule.getScheduleDay(), schedule.getScheduleDay())));
+                return schedules.size();
+            });
+            if (chunk == null || chunk == 0) {
+                return deleted;
+            }
+            deleted += chunk;
+        }
+    }
+
+    // note: the open slots of the day as open times without id, the way the index and the overlap checks take them
+    static List<OpenTime> openSlots(DoctorDaySchedule schedule) {
+        List<OpenTime> openTimes = new ArrayList<>();
+        BitSet open = BitSet.valueOf(schedule.getOpenSlots());
+        for (int slot = open.nextSetBit(0); slot >= 0; slot = open.nextSetBit(slot + 1)) {
+            LocalDateTime start = slotStart(schedule, slot);
+            OpenTime openTime = new OpenTime();
+            openTime.setStartTime(start);
+            openTime.setEndTime(start.plusMinutes(schedule.getSlotMinutes()));
+            openTime.setStatus(OpenTimeStatus.OPEN);
+            openTimes.add(openTime);
+        }
+        return openTimes;
+    }
+
+    private void onDaysChanged(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        dayScheduleDoctorsCache.evict("all");
+        slotAvailabilityIndex.evictDays(doctorId, fromDate, toDate);
+        availabilityEventBus.resync(doctorId, fromDate.atStartOfDay(), toDate.plusDays(1).atStartOfDay());
+        doctorDayVersions.daysChanged(doctorId, fromDate, toDate);
+    }
+
+    private static LocalDateTime slotStart(DoctorDaySchedule schedule, int slot) {
+        return schedule.getScheduleDay().atStartOfDay()
+                .plusMinutes(schedule.getStartMinute() + (long) slot * schedule.getSlotMinutes());
+    }
+
+    private static int slotOf(DoctorDaySchedule schedule, LocalDateTime startTime) {
+        int offset = startTime.toLocalTime().toSecondOfDay() - schedule.getStartMinute() * 60;
+        int slotSeconds = schedule.getSlotMinutes() * 60;
+        if (offset < 0 || offset % slotSeconds != 0 || offset / slotSeconds >= schedule.getSlotCount()) {
+            return -1;
+        }
+        return offset / slotSeconds;
+    }
+}
@@ -0,0 +1,131 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.model.OpenTime;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_DAY_VERSION_MAP;
+
+// note: change versions of each doctor-day and of each doctor as a whole, the etags of conditional reads.
+// they live in a shared hazelcast map so every node hands out the same etag for the same state. a bump sets
+// max(previous + 1, current millis), so versions keep increasing after an idle entry expired or a restart.
+// writers bump once the change is readable, readers take the version before reading, so a response is never
+// tagged with a version newer than its content.
+@Component
+public class DoctorDayVersions {
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private IMap<String, Long> versions;
+
+    @PostConstruct
+    public void init() {
+        versions = hazelcastInstance.getMap(DOCTOR_DAY_VERSION_MAP);
+    }
+
+    public long dayVersion(Long doctorId, LocalDate date) {
+        return sum(new HashSet<>(Set.of(SharedDayAvailability.dayKey(doctorId, date.toEpochDay()),
+                templatesKey(doctorId))));
+    }
+
+    // note: every change bumps one of the days or the doctor's templates, so the sum identifies the state of the
+    // range. template changes touch days without bound, they get one key per doctor instead of one per day.
+    public long rangeVersion(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        OpenTimeService.checkAvailabilityRange(fromDate, toDate);
+        Set<String> keys = new HashSet<>();
+        keys.add(templatesKey(doctorId));
+        for (long day = fromDate.toEpochDay(); day <= toDate.toEpochDay(); day++) {
+            keys.add(SharedDayAvailability.dayKey(doctorId, day));
+        }
+        return sum(keys);
+    }
+
+    public long doctorVersion(Long doctorId) {
+        return version(String.valueOf(doctorId));
+    }
+
+    public void templatesChanged(Long doctorId) {
+        versions.executeOnKey(templatesKey(doctorId), new Bump());
+    }
+
+    public void slotsChanged(Collection<OpenTime> openTimes) {
+        Map<Long, Set<LocalDate>> days = new HashMap<>();
+        for (OpenTime openTime : openTimes) {
+            days.computeIfAbsent(openTime.getDoctor().getId(), id -> new HashSet<>())
+                    .add(openTime.getStartTime().toLocalDate());
+        }
+        days.forEach(this::daysChanged);
+    }
+
+    public void dayChanged(Long doctorId, LocalDate date) {
+        daysChanged(doctorId, Set.of(date));
+    }
+
+    public void daysChanged(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        Set<LocalDate> dates = new HashSet<>();
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            dates.add(date);
+        }
+        daysChanged(doctorId, dates);
+    }
+
+    public void daysChanged(Long doctorId, Collection<LocalDate> dates) {
+        Set<String> keys = new HashSet<>();
+        keys.add(String.valueOf(doctorId));
+        dates.forEach(date -> keys.add(SharedDayAvailability.dayKey(doctorId, date.toEpochDay())));
+        versions.executeOnKeys(keys, new Bump());
+    }
+
+    private long sum(Set<String> keys) {
+        Map<String, Long> current = versions.getAll(keys);
+        if (current.size() < keys.size()) {
+            current = new HashMap<>(current);
+            keys.removeAll(current.keySet());
+            current.putAll(versions.executeOnKeys(keys, new Initialize()));
+        }
+        return current.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static String templatesKey(Long doctorId) {
+        return doctorId + ":templates";
+    }
+
+    private long version(String key) {
+        Long version = versions.get(key);
+        return version != null ? version : versions.executeOnKey(key, new Initialize());
+    }
+
+    static final class Initialize implements EntryProcessor<String, Long, Long> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long process(Map.Entry<String, Long> entry) {
+            if (entry.getValue() == null) {
+                entry.setValue(System.currentTimeMillis());
+            }
+            return entry.getValue();
+        }
+    }
+
+    static final class Bump implements EntryProcessor<String, Long, Long> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long process(Map.Entry<String, Long> entry) {
+            Long previous = entry.getValue();
+            entry.setValue(Math.max(previous == null ? 0 : previous + 1, System.currentTimeMillis()));
+            return entry.getValue();
+        }
+    }
+}
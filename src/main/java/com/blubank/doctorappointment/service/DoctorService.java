@@ -1,26 +1,76 @@
 package com.blubank.doctorappointment.service;
 
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.helper.Cursor;
+import com.blubank.doctorappointment.helper.EntityStreams;
 import com.blubank.doctorappointment.model.Doctor;
 import com.blubank.doctorappointment.repository.DoctorRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_LIST_CACHE;
+
+// note: the caches hold views, a cached entity would carry its lazy open times bag to every node
 @Service
 public class DoctorService {
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @CacheEvict(cacheNames = DOCTOR_LIST_CACHE, allEntries = true)
     public Doctor addDoctor(Doctor doctor) {
         return doctorRepository.save(doctor);
     }
 
-    public Doctor getDoctor(Long doctorId) {
-        return doctorRepository.findById(doctorId).orElse(null);
+    @Cacheable(cacheNames = DOCTORS_CACHE, unless = "#result == null")
+    public DoctorView getDoctor(Long doctorId) {
+        return doctorRepository.findById(doctorId).map(DoctorView::of).orElse(null);
+    }
+
+    @Cacheable(cacheNames = DOCTOR_LIST_CACHE, key = "'all'")
+    public List<DoctorView> getAllDoctors() {
+        return doctorRepository.findAll().stream()
+                .map(DoctorView::of)
+                .collect(Collectors.toList());
+    }
+
+    public CursorPage<Doctor> getDoctorsPage(ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), null);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Doctor> rows;
+        if (query.getStatus() != null) {
+            rows = doctorRepository.findPageWithOpenTimesAfter(after.getId(), query.getStatus(), query.fromOrMin(),
+                    query.toOrMax(), limit);
+        } else if (query.getFrom() != null || query.getTo() != null) {
+            rows = doctorRepository.findPageWithOpenTimesAfter(after.getId(), query.fromOrMin(), query.toOrMax(),
+                    limit);
+        } else {
+            rows = doctorRepository.findPageAfter(after.getId(), limit);
+        }
+        return CursorPage.of(rows, pageSize, doctor -> Cursor.encode(null, doctor.getId()));
     }
 
-    public List<Doctor> getAllDoctors() {
-        return doctorRepository.findAll();
+    @Transactional
+    public void streamDoctors(Consumer<Doctor> consumer) {
+        try (Stream<Doctor> doctors = doctorRepository.streamAll()) {
+            EntityStreams.forEachDetached(doctors, entityManager, consumer);
+        }
     }
 }
@@ -0,0 +1,81 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_FAILURES_METRIC;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_OPERATIONS_METRIC;
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_SLOTS_METRIC;
+
+@Component
+public class OpenTimeMetrics {
+    public static final String SUCCESS = "success";
+    public static final String CONFLICT = "conflict";
+    public static final String OPTIMISTIC_LOCK = "optimistic_lock";
+    public static final String NOT_FOUND = "not_found";
+    public static final String INVALID = "invalid";
+    public static final String ERROR = "error";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    private MultiGauge openSlots;
+
+    // note: keyed by operation and outcome, so the hot path does a map lookup instead of a registry lookup
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> failures = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        openSlots = MultiGauge.builder(OPEN_SLOTS_METRIC)
+                .description("Upcoming open slots per doctor")
+                .register(meterRegistry);
+    }
+
+    public void recordOperation(String operation, String outcome, long elapsedNanos) {
+        String key = operation + ':' + outcome;
+        timers.computeIfAbsent(key, ignored -> Timer.builder(OPENTIME_OPERATIONS_METRIC)
+                        .tags(tags(operation, outcome))
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        if (CONFLICT.equals(outcome) || OPTIMISTIC_LOCK.equals(outcome) || NOT_FOUND.equals(outcome)) {
+            failures.computeIfAbsent(key, ignored ->
+                    meterRegistry.counter(OPENTIME_FAILURES_METRIC, tags(operation, outcome))).increment();
+        }
+    }
+
+    private static Tags tags(String operation, String outcome) {
+        return Tags.of("operation", operation, "outcome", outcome);
+    }
+
+    // note: one grouped count per refresh instead of a query per doctor on every scrape
+    @Scheduled(fixedDelayString = "${app.metrics.open-slots.refresh-ms:60000}", initialDelay = 10000)
+    public void refreshOpenSlots() {
+        openSlots.register(openTimeRepository.countSlotsPerDoctor(OpenTimeStatus.OPEN, LocalDateTime.now()).stream()
+                .map(row -> MultiGauge.Row.of(Tags.of("doctor", String.valueOf(row.getDoctorId())),
+                        row.getOpenSlots()))
+                .collect(Collectors.toList()), true);
+    }
+}
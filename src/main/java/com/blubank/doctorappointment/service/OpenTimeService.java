@@ -1,26 +1,62 @@
 package com.blubank.doctorappointment.service;
 
+import com.blubank.doctorappointment.dto.AvailabilityEvent;
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeRangeDeleteResult;
+import com.blubank.doctorappointment.dto.OpenTimeSlot;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishProgress;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
 import com.blubank.doctorappointment.exception.AppointmentExistsException;
 import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.exception.DoctorNotFoundException;
 import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
-import com.blubank.doctorappointment.exception.PatientNotFoundException;
-import com.blubank.doctorappointment.helper.Util;
+import com.blubank.doctorappointment.helper.Cursor;
+import com.blubank.doctorappointment.helper.OccupiedIntervals;
+import com.blubank.doctorappointment.helper.TimedOperation;
+import com.blubank.doctorappointment.helper.TransactionUtil;
 import com.blubank.doctorappointment.model.*;
 import com.blubank.doctorappointment.repository.AppointmentRepository;
+import com.blubank.doctorappointment.repository.DoctorDayScheduleRepository;
 import com.blubank.doctorappointment.repository.DoctorRepository;
 import com.blubank.doctorappointment.repository.OpenTimeRepository;
-import com.blubank.doctorappointment.repository.PatientRepository;
+import com.blubank.doctorappointment.repository.ScheduleTemplateRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.persistence.OptimisticLockException;
 import javax.transaction.Transactional;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.blubank.doctorappointment.helper.AppConstants.BOOKING_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.DELETION_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.GENERATION_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_AVAILABILITY_RANGE_DAYS;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_DELETE_RANGE_DAYS;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_EARLIEST_SLOTS;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_IN_LIST_SIZE;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_SCHEDULE_PUBLISH_DAYS;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_SLOT_MINUTES;
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_SLOT_MINUTES;
 import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_INTERVAL_MINUTES;
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULE_PUBLISH_DAYS_PER_TRANSACTION;
 
 @Service
 public class OpenTimeService {
@@ -31,46 +67,188 @@ public class OpenTimeService {
     private DoctorRepository doctorRepository;
 
     @Autowired
-    private PatientRepository patientRepository;
+    private PatientService patientService;
 
     @Autowired
     private AppointmentRepository appointmentRepository;
 
-    public List<OpenTime> getOpenTimesForDoctorOnDay(Long doctorId, LocalDate date) {
-        Doctor doctor = doctorRepository.findById(doctorId).orElse(null);
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
 
-        if (doctor != null) {
-            LocalDateTime startDate = date.atStartOfDay();
-            LocalDateTime endDate = date.plusDays(1).atStartOfDay();
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-            // note: returns all open-times status containing
-            // {OpenTimeStatus.Open, OpenTimeStatus.Taken, OpenTimeStatus.Deleted}
-            return openTimeRepository
-                    .findByDoctorAndStartTimeBetweenAndStatus(doctor, startDate, endDate, OpenTimeStatus.OPEN);
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
 
-            // note: returns just open-times status containing {OpenTimeStatus.Open}
-            //return openTimeRepository.findByDoctorAndStartTimeBetween(doctor, startDate, endDate);
-        }
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private ScheduleTemplateRepository scheduleTemplateRepository;
+
+    @Autowired
+    private DoctorDayScheduleRepository doctorDayScheduleRepository;
+
+    @Lazy
+    @Autowired
+    private DayScheduleService dayScheduleService;
 
-        return List.of();
+    @Autowired(required = false)
+    private BookingJournal bookingJournal;
+
+    @Autowired(required = false)
+    private ClusteredBookingService clusteredBookingService;
+
+    public List<OpenTimeView> getOpenTimesForDoctorOnDay(Long doctorId, LocalDate date) {
+        // note: answered from the in-memory availability index, db is only hit the first time a day is read
+        return slotAvailabilityIndex.getOpenTimes(doctorId, date);
     }
 
-    public List<OpenTime> getOpenTimes(Long doctorId) {
-        Doctor doctor = doctorRepository.findById(doctorId).orElse(null);
+    public List<OpenTimeView> getOpenTimesForDoctorBetween(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        checkAvailabilityRange(fromDate, toDate);
+        return slotAvailabilityIndex.getOpenTimes(doctorId, fromDate, toDate);
+    }
 
-        if (doctor == null) {
+    // note: one indexed query picks the doctors with openings in the window, plus the (cached) doctors having
+    // schedule templates or day schedules. the merge itself runs on the index
+    public List<OpenTimeView> getEarliestOpenTimes(List<Long> doctorIds, LocalDate fromDate, LocalDate toDate,
+                                                   int limit) {
+        checkAvailabilityRange(fromDate, toDate);
+
+        if (limit < 1 || limit > MAX_EARLIEST_SLOTS) {
+            throw new IllegalArgumentException("Invalid limit: the limit must be between 1 and " + MAX_EARLIEST_SLOTS + ".");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime notBefore = fromDate.atStartOfDay().isAfter(now) ? fromDate.atStartOfDay() : now;
+        if (notBefore.toLocalDate().isAfter(toDate)) {
             return List.of();
         }
 
-        return openTimeRepository.findAllByDoctor_Id(doctorId);
+        LocalDateTime to = toDate.plusDays(1).atStartOfDay();
+        Set<Long> candidates;
+        if (doctorIds == null || doctorIds.isEmpty()) {
+            candidates = new LinkedHashSet<>(openTimeRepository.findDoctorIdsWithStatusInRange(
+                    OpenTimeStatus.OPEN, notBefore, to));
+            candidates.addAll(scheduleTemplateService.getTemplateDoctorIds());
+            candidates.addAll(dayScheduleService.getDayScheduleDoctorIds());
+        } else {
+            candidates = new LinkedHashSet<>(openTimeRepository.findDoctorIdsWithStatusInRange(
+                    doctorIds, OpenTimeStatus.OPEN, notBefore, to));
+            Set<Long> requested = new HashSet<>(doctorIds);
+            Stream.concat(scheduleTemplateService.getTemplateDoctorIds().stream(),
+                            dayScheduleService.getDayScheduleDoctorIds().stream())
+                    .filter(requested::contains)
+                    .forEach(candidates::add);
+        }
+        return slotAvailabilityIndex.getEarliestOpenTimes(candidates, notBefore, toDate, limit);
+    }
+
+    static void checkAvailabilityRange(LocalDate fromDate, LocalDate toDate) {
+        if (toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("Invalid date range: End date is sooner than start date.");
+        }
+
+        if (ChronoUnit.DAYS.between(fromDate, toDate) >= MAX_AVAILABILITY_RANGE_DAYS) {
+            throw new IllegalArgumentException(
+                    "Invalid date range: the range must be at most " + MAX_AVAILABILITY_RANGE_DAYS + " days.");
+        }
+    }
+
+    static void validateDeleteRange(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (endDateTime.isEqual(startDateTime)) {
+            throw new IllegalArgumentException("Invalid time period: Start and end date are the same.");
+        }
+
+        if (endDateTime.isBefore(startDateTime)) {
+            throw new IllegalArgumentException("Invalid time period: End date is sooner than start date.");
+        }
+
+        if (startDateTime.plusDays(MAX_DELETE_RANGE_DAYS).isBefore(endDateTime)) {
+            throw new IllegalArgumentException(
+                    "Invalid time period: the period must be at most " + MAX_DELETE_RANGE_DAYS + " days.");
+        }
+    }
+
+    // note: the availability index keeps slots at minute resolution
+    static void validateWholeMinutes(LocalTime... times) {
+        for (LocalTime time : times) {
+            if (time.getSecond() != 0 || time.getNano() != 0) {
+                throw new IllegalArgumentException("Invalid time: " + time + " is not a whole minute.");
+            }
+        }
+    }
+
+    public List<OpenTimeView> getOpenTimes(Long doctorId) {
+        return openTimeRepository.findViewsByDoctorId(doctorId);
+    }
+
+    public CursorPage<OpenTimeView> getOpenTimesPage(Long doctorId, ListQuery query) {
+        int pageSize = query.pageSize();
+        Cursor after = Cursor.decode(query.getCursor(), query.fromOrMin());
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<OpenTimeView> rows = query.getStatus() == null ?
+                openTimeRepository.findPage(doctorId, query.fromOrMin(), query.toOrMax(),
+                        after.getTime(), after.getId(), limit) :
+                openTimeRepository.findPageByStatus(doctorId, query.getStatus(), query.fromOrMin(), query.toOrMax(),
+                        after.getTime(), after.getId(), limit);
+        return CursorPage.of(rows, pageSize, openTime -> Cursor.encode(openTime.getStartTime(), openTime.getId()));
     }
 
+    @Transactional
+    public void streamOpenTimes(Long doctorId, ListQuery query, Consumer<OpenTimeView> consumer) {
+        try (Stream<OpenTimeView> openTimes = query.getStatus() == null ?
+                openTimeRepository.streamByDoctorId(doctorId, query.fromOrMin(), query.toOrMax()) :
+                openTimeRepository.streamByDoctorIdAndStatus(
+                        doctorId, query.getStatus(), query.fromOrMin(), query.toOrMax())) {
+            openTimes.forEach(consumer);
+        }
+    }
+
+    @TimedOperation(GENERATION_OPERATION)
+    @Transactional
     public List<OpenTime> addOpenTimesForDoctor(Long doctorId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
-        Doctor doctor = doctorRepository.findById(doctorId).orElse(null);
+        return addOpenTimesForDoctor(doctorId, startDateTime, endDateTime, OPENTIME_INTERVAL_MINUTES);
+    }
+
+    @TimedOperation(GENERATION_OPERATION)
+    @Transactional
+    public List<OpenTime> addOpenTimesForDoctor(Long doctorId, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                                                int slotMinutes) {
+        validateOpenTimePeriod(startDateTime, endDateTime, slotMinutes);
+        Doctor doctor = doctorRepository.findByIdForUpdate(doctorId).orElse(null);
         if (doctor == null) {
             return null;
         }
 
+        return addOpenTimes(doctor, startDateTime, endDateTime, slotMinutes);
+    }
+
+    // note: the period is not validated here, used by the bulk import which validates rows before its chunk
+    // transaction and joins it
+    @Transactional
+    public List<OpenTime> addOpenTimesForDoctor(Doctor doctor, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                                                int slotMinutes) {
+        doctorRepository.findByIdForUpdate(doctor.getId())
+                .orElseThrow(() -> new DoctorNotFoundException("No doctor found for doctor id " + doctor.getId()));
+        return addOpenTimes(doctor, startDateTime, endDateTime, slotMinutes);
+    }
+
+    // note: the caller holds the doctor lock, so the overlap check stays valid until commit
+    private List<OpenTime> addOpenTimes(Doctor doctor, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                                        int slotMinutes) {
+        OccupiedIntervals occupiedIntervals = occupiedIntervals(doctor.getId(), startDateTime, endDateTime);
+        List<OpenTime> openTimes = generateOpenTimes(startDateTime, endDateTime, slotMinutes, doctor, occupiedIntervals);
+        openTimeRepository.saveAll(openTimes);
+        onSlotsOpened(openTimes);
+        return openTimes;
+    }
+
+    public void validateOpenTimePeriod(LocalDateTime startDateTime, LocalDateTime endDateTime, int slotMinutes) {
         if (!endDateTime.toLocalDate().equals(startDateTime.toLocalDate())) {
             throw new IllegalArgumentException("Invalid time period: The date of start and end are not the same.");
         }
@@ -79,132 +257,334 @@ public class OpenTimeService {
             throw new IllegalArgumentException("Invalid time period: End date is sooner than start date.");
         }
 
-        if (!nextIntervalStartDateTime(startDateTime).isBefore(endDateTime.plusNanos(1))) {
+        validateWholeMinutes(startDateTime.toLocalTime(), endDateTime.toLocalTime());
+        validateSlotMinutes(slotMinutes);
+
+        if (startDateTime.plusMinutes(slotMinutes).isAfter(endDateTime)) {
             throw new IllegalArgumentException(
-                    "Invalid time interval: the interval must be at least " + OPENTIME_INTERVAL_MINUTES +" minutes.");
+                    "Invalid time interval: the interval must be at least " + slotMinutes + " minutes.");
         }
-
-        List<OpenTime> openTimes = generateOpenTimes(startDateTime, endDateTime, doctor);
-        openTimeRepository.saveAll(openTimes);
-        return openTimes;
     }
 
-    @Transactional
-    public OpenTime deleteOpenTimeForDoctor(Long doctorId, Long openTimeId) {
-        List<OpenTime> doctorOpenTimes = openTimeRepository.findAllByDoctor_Id(doctorId);
-        if (doctorOpenTimes.isEmpty()) {
-            throw new OpenTimeNotFoundException("Open time not found for doctor id " + doctorId);
+    public void validateSchedulePublishRequest(SchedulePublishRequest request) {
+        if (request.getFromDate() == null || request.getToDate() == null
+                || request.getDailyStartTime() == null || request.getDailyEndTime() == null) {
+            throw new IllegalArgumentException("From date, to date, daily start time and daily end time are required.");
         }
 
-        if (doctorOpenTimes.stream().noneMatch(ot->ot.getId().equals(openTimeId))){
-            throw new OpenTimeNotFoundException("Open time not related to doctor id " + doctorId);
+        if (request.getToDate().isBefore(request.getFromDate())) {
+            throw new IllegalArgumentException("Invalid date range: End date is sooner than start date.");
         }
 
-        OpenTime openTime = openTimeRepository.findById(openTimeId).orElse(null);
-        if (openTime == null) {
-            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        if (ChronoUnit.DAYS.between(request.getFromDate(), request.getToDate()) >= MAX_SCHEDULE_PUBLISH_DAYS) {
+            throw new IllegalArgumentException(
+                    "Invalid date range: the range must be at most " + MAX_SCHEDULE_PUBLISH_DAYS + " days.");
+        }
+
+        validateWholeMinutes(request.getDailyStartTime(), request.getDailyEndTime());
+        validateSlotMinutes(slotMinutes(request));
+
+        if (request.getDailyStartTime().plusMinutes(slotMinutes(request)).isAfter(request.getDailyEndTime())
+                || !request.getDailyEndTime().isAfter(request.getDailyStartTime())) {
+            throw new IllegalArgumentException(
+                    "Invalid daily hours: the interval must be at least " + slotMinutes(request) + " minutes.");
+        }
+    }
+
+    // note: slots are written in chunks of SCHEDULE_PUBLISH_DAYS_PER_TRANSACTION days, each chunk in its own
+    // transaction, so hibernate sends them as jdbc batches (sequence ids) and progress is reported per committed day.
+    @TimedOperation(GENERATION_OPERATION)
+    public int publishSchedule(Long doctorId, SchedulePublishRequest request,
+                               Consumer<SchedulePublishProgress> progressListener) {
+        validateSchedulePublishRequest(request);
+
+        int totalDays = (int) ChronoUnit.DAYS.between(request.getFromDate(), request.getToDate()) + 1;
+        int processedDays = 0;
+        int totalCreated = 0;
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (LocalDate chunkStart = request.getFromDate(); !chunkStart.isAfter(request.getToDate());
+             chunkStart = chunkStart.plusDays(SCHEDULE_PUBLISH_DAYS_PER_TRANSACTION)) {
+            LocalDate chunkEnd = chunkStart.plusDays(SCHEDULE_PUBLISH_DAYS_PER_TRANSACTION - 1);
+            if (chunkEnd.isAfter(request.getToDate())) {
+                chunkEnd = request.getToDate();
+            }
+            LocalDate from = chunkStart;
+            LocalDate to = chunkEnd;
+            Map<LocalDate, Integer> createdPerDay = transactionTemplate.execute(status ->
+                    publishScheduleChunk(doctorId, request, from, to));
+
+            for (LocalDate date = chunkStart; !date.isAfter(chunkEnd); date = date.plusDays(1)) {
+                int created = createdPerDay.getOrDefault(date, 0);
+                totalCreated += created;
+                processedDays++;
+                progressListener.accept(
+                        new SchedulePublishProgress(date, created, totalCreated, processedDays, totalDays));
+            }
         }
 
-        if (openTime.getStatus().equals(OpenTimeStatus.TAKEN)) {
+        return totalCreated;
+    }
+
+    // note: ownership and status come from one indexed projection query, the delete itself is
+    // conditional on the slot still being OPEN.
+    @TimedOperation(DELETION_OPERATION)
+    @Transactional
+    public OpenTime deleteOpenTimeForDoctor(Long doctorId, Long openTimeId) {
+        OpenTimeSlot slot = openTimeRepository.findSlotByIdAndDoctorId(openTimeId, doctorId).orElse(null);
+        if (slot == null) {
+            throw new OpenTimeNotFoundException("Open time " + openTimeId + " not related to doctor id " + doctorId);
+        }
+
+        if (slot.getStatus().equals(OpenTimeStatus.TAKEN) || (clusteredBookingService != null
+                && !clusteredBookingService.claimForDeletion(doctorId, openTimeId))) {
             throw new AppointmentExistsException("Cannot delete open time with existing appointments.");
         }
 
-        if (openTime.getStatus().equals(OpenTimeStatus.OPEN)) {
-            try {
-                // note: Perform optimistic locking check by saving the entity
-                openTimeRepository.delete(openTime);
-            } catch (OptimisticLockException e) {
+        OpenTime openTime = toOpenTime(slot);
+        if (slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+            if (openTimeRepository.deleteByIdAndStatus(openTimeId, OpenTimeStatus.OPEN) == 0) {
                 throw new ConcurrencyException("Concurrency issue during open time deletion.");
             }
+            onSlotClosed(openTime, AvailabilityEvent.Type.DELETED);
+            journal(journal -> journal.slotDeleted(openTime));
         }
         return openTime;
     }
 
+    @TimedOperation(DELETION_OPERATION)
+    @Transactional
+    public OpenTimeRangeDeleteResult deleteOpenTimesForDoctorBetween(Long doctorId, LocalDateTime startDateTime,
+                                                                     LocalDateTime endDateTime) {
+        validateDeleteRange(startDateTime, endDateTime);
+
+        // note: the taken slots are read after the delete, a slot booked in between is then reported as skipped
+        // instead of being neither deleted nor reported
+        int deleted;
+        if (clusteredBookingService != null) {
+            deleted = deleteClaimed(
+                    clusteredBookingService.claimRangeForDeletion(doctorId, startDateTime, endDateTime));
+        } else {
+            deleted = openTimeRepository.deleteByDoctorIdAndStatusInRange(
+                    doctorId, OpenTimeStatus.OPEN, startDateTime, endDateTime);
+        }
+        List<OpenTimeView> skippedOpenTimes = openTimeRepository.findViewsByDoctorIdAndStatusInRange(
+                doctorId, OpenTimeStatus.TAKEN, startDateTime, endDateTime);
+        TransactionUtil.afterCommit(() -> {
+            slotAvailabilityIndex.evictDays(doctorId, startDateTime.toLocalDate(), endDateTime.toLocalDate());
+            availabilityEventBus.resync(doctorId, startDateTime, endDateTime);
+            doctorDayVersions.daysChanged(doctorId, startDateTime.toLocalDate(), endDateTime.toLocalDate());
+        });
+        journal(journal -> journal.slotsDeleted(doctorId, startDateTime, endDateTime));
+        return new OpenTimeRangeDeleteResult(deleted, skippedOpenTimes);
+    }
+
+    // note: chunked, oracle limits in-lists to 1000 items
+    private int deleteClaimed(List<Long> openTimeIds) {
+        int deleted = 0;
+        for (int i = 0; i < openTimeIds.size(); i += MAX_IN_LIST_SIZE) {
+            deleted += openTimeRepository.deleteByIdsAndStatus(
+                    openTimeIds.subList(i, Math.min(i + MAX_IN_LIST_SIZE, openTimeIds.size())), OpenTimeStatus.OPEN);
+        }
+        return deleted;
+    }
+
+    // note: the slot is claimed with a single conditional update (OPEN -> TAKEN), so concurrent callers
+    // never load the entity nor fail late on the optimistic lock; losers just see 0 updated rows.
+    @TimedOperation(BOOKING_OPERATION)
     @Transactional
     public Appointment setAppointmentForPatient(Patient patient, Long openTimeId) {
-        try {
-            OpenTime openTime = openTimeRepository.findById(openTimeId).orElse(null);
-            if (openTime == null) {
-                throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
-            }
+        int claimed = openTimeRepository.updateStatusIfCurrent(openTimeId, OpenTimeStatus.OPEN, OpenTimeStatus.TAKEN);
 
-            if (openTime.getStatus().equals(OpenTimeStatus.TAKEN)) {
-                throw new AppointmentExistsException("Cannot pick taken open time with existing appointments.");
-            }
+        OpenTimeSlot slot = openTimeRepository.findSlotById(openTimeId).orElse(null);
+        if (slot == null) {
+            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        }
 
+        if (claimed == 0) {
             // note: in the current scenario, the OpenTimeStatus.DELETED never happens.
             // but maybe useful for the incoming scenarios.
-            if (openTime.getStatus().equals(OpenTimeStatus.DELETED)) {
+            if (slot.getStatus().equals(OpenTimeStatus.DELETED)) {
                 throw new AppointmentExistsException("Cannot pick deleted open time.");
             }
-
-            if (openTime.getStatus().equals(OpenTimeStatus.OPEN)) {
-                openTime.setStatus(OpenTimeStatus.TAKEN);
-                openTimeRepository.save(openTime);
-
-                Appointment appointment = new Appointment();
-                appointment.setPatient(patient);
-                appointment.setOpenTime(openTime);
-                return appointmentRepository.save(appointment);
-            }
-        } catch (OptimisticLockException e) {
-            throw new OptimisticLockException("Concurrency issue during open time picking.");
+            throw new AppointmentExistsException("Cannot pick taken open time with existing appointments.");
         }
 
-        return null;
+        OpenTime openTime = toOpenTime(slot);
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setOpenTime(openTime);
+        appointmentRepository.save(appointment);
+        onSlotClosed(openTime, AvailabilityEvent.Type.TAKEN);
+        journal(journal -> journal.slotBooked(slot.getDoctorId(), openTimeId, slot.getStartTime()));
+        return appointment;
     }
 
+    @TimedOperation(BOOKING_OPERATION)
     @Transactional
     public Appointment setAppointmentForPatient(String patientName, String phoneNumber, Long openTimeId) {
-        if (Util.isNullOrEmpty(patientName) || Util.isNullOrEmpty(phoneNumber)) {
-            throw new IllegalArgumentException("Both patient name and phone number are required.");
-        }
+        return setAppointmentForPatient(patientService.getPatientReference(patientName, phoneNumber), openTimeId);
+    }
+
+    // note: a schedule template slot has no row until it is booked, the row is created here as TAKEN
+    @TimedOperation(BOOKING_OPERATION)
+    @Transactional
+    public Appointment setTemplateAppointmentForPatient(Patient patient, Long doctorId, LocalDateTime startTime) {
+        OpenTime openTime = materializeTemplateSlot(doctorId, startTime, OpenTimeStatus.TAKEN);
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setOpenTime(openTime);
+        appointmentRepository.save(appointment);
+        onSlotClosed(openTime, AvailabilityEvent.Type.TAKEN);
+        return appointment;
+    }
 
-        Patient patient = patientRepository.findByNameAndPhoneNumber(patientName, phoneNumber);
+    // note: overrides a schedule template slot with a DELETED row, which hides it from availability
+    @TimedOperation(DELETION_OPERATION)
+    @Transactional
+    public OpenTime closeTemplateSlotForDoctor(Long doctorId, LocalDateTime startTime) {
+        OpenTime openTime = materializeTemplateSlot(doctorId, startTime, OpenTimeStatus.DELETED);
+        onSlotClosed(openTime, AvailabilityEvent.Type.DELETED);
+        return openTime;
+    }
 
-        if (patient != null) {
-            return setAppointmentForPatient(patient, openTimeId);
-        } else {
-            throw new PatientNotFoundException("Patient not found.");
+    // note: the doctor row is locked, so concurrent materializations of the doctor's slots run one at a time and
+    // the overlap check stays valid until commit. any row overlapping the slot (booked, closed or an explicitly
+    // added open time) means the template slot is no longer available, as does a start time already past.
+    private OpenTime materializeTemplateSlot(Long doctorId, LocalDateTime startTime, OpenTimeStatus status) {
+        Doctor doctor = doctorRepository.findByIdForUpdate(doctorId).orElse(null);
+        ScheduleTemplateView template = doctor == null ? null : scheduleTemplateRepository.findByDoctorId(doctorId)
+                .stream()
+                .map(ScheduleTemplateView::of)
+                .filter(candidate -> candidate.hasSlotAt(startTime))
+                .findFirst()
+                .orElse(null);
+        if (template == null) {
+            throw new OpenTimeNotFoundException("Open time not for doctor id " + doctorId + " at " + startTime);
+        }
+
+        LocalDateTime endTime = startTime.plusMinutes(template.getSlotMinutes());
+        if (occupiedIntervals(doctorId, startTime, endTime).overlaps(
+                OccupiedIntervals.toEpochSecond(startTime), OccupiedIntervals.toEpochSecond(endTime))) {
+            throw new AppointmentExistsException("Cannot pick taken or overridden template slot.");
         }
+
+        OpenTime openTime = new OpenTime();
+        openTime.setStartTime(startTime);
+        openTime.setEndTime(endTime);
+        openTime.setStatus(status);
+        openTime.setDoctor(doctor);
+        return openTimeRepository.save(openTime);
     }
 
-    private List<OpenTime> generateOpenTimes(LocalDateTime startDateTime, LocalDateTime endDateTime, Doctor doctor) {
+    // note: the doctor lock is also the only lookup of the doctor, the endpoint checks it through the cache
+    private Map<LocalDate, Integer> publishScheduleChunk(Long doctorId, SchedulePublishRequest request,
+                                                         LocalDate fromDate, LocalDate toDate) {
+        Doctor doctor = doctorRepository.findByIdForUpdate(doctorId)
+                .orElseThrow(() -> new IllegalArgumentException("No doctor found for doctor id " + doctorId));
+        OccupiedIntervals occupiedIntervals =
+                occupiedIntervals(doctorId, fromDate.atStartOfDay(), toDate.plusDays(1).atStartOfDay());
+
+        Map<LocalDate, Integer> createdPerDay = new HashMap<>();
         List<OpenTime> openTimes = new ArrayList<>();
-        LocalDateTime currentDateTime = startDateTime;
-        List<OpenTime> existingOpenTimes =
-                openTimeRepository.findByDoctorAndStartTimeBetween(doctor, startDateTime, endDateTime);
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            if (request.getExcludedDaysOfWeek().contains(date.getDayOfWeek())
+                    || request.getExcludedDates().contains(date)) {
+                continue;
+            }
 
-        while (nextIntervalStartDateTime(currentDateTime).isBefore(endDateTime.plusNanos(1))) {
-            OpenTime openTime = new OpenTime();
-            openTime.setStartTime(currentDateTime);
-            openTime.setEndTime(nextIntervalStartDateTime(currentDateTime));
-            openTime.setDoctor(doctor);
-            openTime.setStatus(OpenTimeStatus.OPEN);
+            List<OpenTime> dayOpenTimes = generateOpenTimes(date.atTime(request.getDailyStartTime()),
+                    date.atTime(request.getDailyEndTime()), slotMinutes(request), doctor, occupiedIntervals);
+            createdPerDay.put(date, dayOpenTimes.size());
+            openTimes.addAll(dayOpenTimes);
+        }
+
+        openTimeRepository.saveAll(openTimes);
+        onSlotsOpened(openTimes);
+        return createdPerDay;
+    }
 
+    // note: package-private for SlotGenerationBenchmark
+    static List<OpenTime> generateOpenTimes(LocalDateTime startDateTime, LocalDateTime endDateTime, int slotMinutes,
+                                            Doctor doctor, OccupiedIntervals occupiedIntervals) {
+        List<OpenTime> openTimes = new ArrayList<>();
+        long slotSeconds = slotMinutes * 60L;
+        long end = OccupiedIntervals.toEpochSecond(endDateTime);
+
+        for (long current = OccupiedIntervals.toEpochSecond(startDateTime);
+             current + slotSeconds <= end; current += slotSeconds) {
             // note: avoid to add current date time to db, if there is a share between current date time and one of existing-db date-times
-            if (!hasOverlap(openTime, existingOpenTimes)) {
-                openTimes.add(openTime);
+            if (occupiedIntervals.overlaps(current, current + slotSeconds)) {
+                continue;
             }
 
-            currentDateTime = nextIntervalStartDateTime(currentDateTime);
+            OpenTime openTime = new OpenTime();
+            openTime.setStartTime(OccupiedIntervals.fromEpochSecond(current));
+            openTime.setEndTime(OccupiedIntervals.fromEpochSecond(current + slotSeconds));
+            openTime.setDoctor(doctor);
+            openTime.setStatus(OpenTimeStatus.OPEN);
+            openTimes.add(openTime);
         }
 
         return openTimes;
     }
 
-    private boolean hasOverlap(OpenTime newOpenTime, List<OpenTime> existingOpenTimes) {
-        for (OpenTime existingOpenTime : existingOpenTimes) {
-            if (existingOpenTime.getStartTime().isBefore(newOpenTime.getEndTime().minusNanos(1)) &&
-                    existingOpenTime.getEndTime().isAfter(newOpenTime.getStartTime().plusNanos(1))) {
-                return true;
-            }
+    // note: the open slots of the doctor's day schedules are occupied too, taken ones already are open time rows
+    private OccupiedIntervals occupiedIntervals(Long doctorId, LocalDateTime from, LocalDateTime to) {
+        List<OpenTime> occupied = new ArrayList<>(openTimeRepository.findOverlapping(doctorId, from, to));
+        doctorDayScheduleRepository.findByDoctorIdInRange(doctorId, from.toLocalDate(), to.toLocalDate())
+                .forEach(schedule -> occupied.addAll(DayScheduleService.openSlots(schedule)));
+        return OccupiedIntervals.of(occupied, OpenTime::getStartTime, OpenTime::getEndTime);
+    }
+
+    private void validateSlotMinutes(int slotMinutes) {
+        if (slotMinutes < MIN_SLOT_MINUTES || slotMinutes > MAX_SLOT_MINUTES) {
+            throw new IllegalArgumentException("Invalid slot length: the slot must be between "
+                    + MIN_SLOT_MINUTES + " and " + MAX_SLOT_MINUTES + " minutes.");
         }
+    }
 
-        return false;
+    private int slotMinutes(SchedulePublishRequest request) {
+        return request.getSlotMinutes() == null ? OPENTIME_INTERVAL_MINUTES : request.getSlotMinutes();
     }
 
-    private LocalDateTime nextIntervalStartDateTime(LocalDateTime currentDateTime) {
-        return currentDateTime.plusMinutes(OPENTIME_INTERVAL_MINUTES);
+    private OpenTime toOpenTime(OpenTimeSlot slot) {
+        Doctor doctor = new Doctor();
+        doctor.setId(slot.getDoctorId());
+        doctor.setName(slot.getDoctorName());
+
+        OpenTime openTime = new OpenTime();
+        openTime.setId(slot.getId());
+        openTime.setStartTime(slot.getStartTime());
+        openTime.setEndTime(slot.getEndTime());
+        openTime.setStatus(slot.getStatus());
+        openTime.setVersion(slot.getVersion());
+        openTime.setDoctor(doctor);
+        return openTime;
+    }
+
+    private void onSlotsOpened(List<OpenTime> openTimes) {
+        TransactionUtil.afterCommit(() -> {
+            slotAvailabilityIndex.slotsOpened(openTimes);
+            availabilityEventBus.slotsOpened(openTimes);
+            doctorDayVersions.slotsChanged(openTimes);
+        });
+        journal(journal -> journal.slotsPublished(openTimes));
+    }
+
+    private void onSlotClosed(OpenTime openTime, AvailabilityEvent.Type type) {
+        Long doctorId = openTime.getDoctor().getId();
+        TransactionUtil.afterCommit(() -> {
+            slotAvailabilityIndex.slotClosed(doctorId, openTime.getId(), openTime.getStartTime());
+            availabilityEventBus.slotClosed(type, openTime);
+            doctorDayVersions.dayChanged(doctorId, openTime.getStartTime().toLocalDate());
+        });
+    }
+
+    // note: the journal writes its records when the transaction commits
+    private void journal(Consumer<BookingJournal> entry) {
+        if (bookingJournal != null) {
+            entry.accept(bookingJournal);
+        }
     }
-}
\ No newline at end of file
+}
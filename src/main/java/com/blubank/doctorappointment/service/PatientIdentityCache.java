@@ -0,0 +1,41 @@
+package com.blubank.doctorappointment.service;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// note: node-local, size-bounded (LRU) map of patient (name, phone number) -> id.
+// patients are never deleted nor renamed, so an entry stays valid until it is evicted.
+@Component
+public class PatientIdentityCache {
+    @Value("${app.patient-identity-cache.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<Key, Long> ids = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public synchronized Long get(String name, String phoneNumber) {
+        return ids.get(new Key(name, phoneNumber));
+    }
+
+    public synchronized void put(String name, String phoneNumber, Long id) {
+        ids.put(new Key(name, phoneNumber), id);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    @Data
+    private static final class Key {
+        private final String name;
+        private final String phoneNumber;
+    }
+}
@@ -1,16 +1,79 @@
 package com.blubank.doctorappointment.service;
 
+import com.blubank.doctorappointment.exception.PatientExistsException;
+import com.blubank.doctorappointment.exception.PatientNotFoundException;
+import com.blubank.doctorappointment.helper.Util;
 import com.blubank.doctorappointment.model.Patient;
 import com.blubank.doctorappointment.repository.PatientRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Locale;
+
+import static com.blubank.doctorappointment.helper.AppConstants.PATIENT_IDENTITY_CONSTRAINT;
+
 @Service
 public class PatientService {
     @Autowired
     private PatientRepository patientRepository;
 
+    @Autowired
+    private PatientIdentityCache patientIdentityCache;
+
     public Patient addPatient(Patient patient) {
-        return patientRepository.save(patient);
+        Patient addedPatient;
+        try {
+            addedPatient = patientRepository.save(patient);
+        } catch (DataIntegrityViolationException e) {
+            if (!violatesIdentity(e)) {
+                throw e;
+            }
+            throw new PatientExistsException("Patient with the same name and phone number already exists.");
+        }
+        patientIdentityCache.put(addedPatient.getName(), addedPatient.getPhoneNumber(), addedPatient.getId());
+        return addedPatient;
+    }
+
+    public Patient getPatient(Long patientId) {
+        return patientRepository.findById(patientId)
+                .orElseThrow(() -> new PatientNotFoundException("Patient not found."));
+    }
+
+    // note: resolves the patient through the identity cache and returns an unloaded instance that only
+    // carries the identity, enough to reference it from an appointment without reading the patient row.
+    public Patient getPatientReference(String patientName, String phoneNumber) {
+        if (Util.isNullOrEmpty(patientName) || Util.isNullOrEmpty(phoneNumber)) {
+            throw new IllegalArgumentException("Both patient name and phone number are required.");
+        }
+
+        Long patientId = patientIdentityCache.get(patientName, phoneNumber);
+        if (patientId == null) {
+            patientId = patientRepository.findIdByNameAndPhoneNumber(patientName, phoneNumber);
+            if (patientId == null) {
+                throw new PatientNotFoundException("Patient not found.");
+            }
+            patientIdentityCache.put(patientName, phoneNumber, patientId);
+        }
+
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        patient.setName(patientName);
+        patient.setPhoneNumber(phoneNumber);
+        return patient;
+    }
+
+    // note: only the (phone number, name) key means the patient exists, databases report the name differently
+    // (h2 upper cases it and appends the index), so it is matched loosely
+    private static boolean violatesIdentity(DataIntegrityViolationException e) {
+        Throwable cause = e.getCause();
+        String constraintName = cause instanceof ConstraintViolationException ?
+                ((ConstraintViolationException) cause).getConstraintName() : null;
+        if (constraintName == null) {
+            constraintName = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        }
+        return constraintName != null && constraintName.toLowerCase(Locale.ROOT).contains(PATIENT_IDENTITY_CONSTRAINT);
     }
 }
@@ -0,0 +1,50 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
+import com.blubank.doctorappointment.helper.OccupiedIntervals;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.service.SlotAvailabilityIndex.DaySlots;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// note: days a schedule template applies to also hold the template's slots that no row overlaps (ids 0, shown as
+// null). which slots a row hides depends on all rows of the day, so such days are reloaded on writes instead of
+// patched.
+@Component
+public class ScheduleTemplateOverlay {
+    // note: lazy, the template service evicts the days of the index when templates change
+    @Lazy
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    List<ScheduleTemplateView> getTemplates(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        return scheduleTemplateService.getTemplates(doctorId).stream()
+                .filter(template -> template.isValidBetween(fromDate, toDate))
+                .collect(Collectors.toList());
+    }
+
+    void addSlots(Map<Long, DaySlots> loaded, List<ScheduleTemplateView> templates, List<OpenTime> openTimes,
+                  LocalDate fromDate, LocalDate toDate) {
+        OccupiedIntervals occupiedIntervals =
+                OccupiedIntervals.of(openTimes, OpenTime::getStartTime, OpenTime::getEndTime);
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            for (ScheduleTemplateView template : templates) {
+                if (!template.appliesTo(date)) {
+                    continue;
+                }
+
+                DaySlots daySlots = loaded.computeIfAbsent(date.toEpochDay(), day -> new DaySlots());
+                daySlots.templated = true;
+                OpenTimeService.generateOpenTimes(date.atTime(template.getStartTime()),
+                        date.atTime(template.getEndTime()), template.getSlotMinutes(), null, occupiedIntervals)
+                        .forEach(daySlots::put);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.ScheduleTemplateRequest;
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
+import com.blubank.doctorappointment.exception.ScheduleTemplateNotFoundException;
+import com.blubank.doctorappointment.helper.TransactionUtil;
+import com.blubank.doctorappointment.model.ScheduleTemplate;
+import com.blubank.doctorappointment.repository.DoctorRepository;
+import com.blubank.doctorappointment.repository.ScheduleTemplateRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_DATE_TIME;
+import static com.blubank.doctorappointment.helper.AppConstants.MAX_SLOT_MINUTES;
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_DATE_TIME;
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_SLOT_MINUTES;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_INTERVAL_MINUTES;
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULE_TEMPLATES_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULE_TEMPLATE_DOCTORS_CACHE;
+
+// note: the templates of a doctor are read through a shared cache by the availability index whenever it loads
+// days. a change is applied after commit: the caches are evicted first, then every loaded day of the doctor on
+// every node, so the days are recomputed from the new templates.
+@Service
+public class ScheduleTemplateService {
+    @Autowired
+    private ScheduleTemplateRepository scheduleTemplateRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Cache templatesCache;
+
+    private Cache templateDoctorsCache;
+
+    @PostConstruct
+    public void init() {
+        templatesCache = cacheManager.getCache(SCHEDULE_TEMPLATES_CACHE);
+        templateDoctorsCache = cacheManager.getCache(SCHEDULE_TEMPLATE_DOCTORS_CACHE);
+    }
+
+    @Cacheable(cacheNames = SCHEDULE_TEMPLATES_CACHE)
+    public List<ScheduleTemplateView> getTemplates(Long doctorId) {
+        return scheduleTemplateRepository.findByDoctorId(doctorId).stream()
+                .map(ScheduleTemplateView::of)
+                .collect(Collectors.toList());
+    }
+
+    @Cacheable(cacheNames = SCHEDULE_TEMPLATE_DOCTORS_CACHE, key = "'all'")
+    public List<Long> getTemplateDoctorIds() {
+        return scheduleTemplateRepository.findDoctorIds();
+    }
+
+    // note: the doctor row is locked like for the other writers of the doctor's slots, so two templates added at
+    // once cannot both pass the overlap check
+    @Transactional
+    public ScheduleTemplateView addTemplate(Long doctorId, ScheduleTemplateRequest request) {
+        validateTemplateRequest(request);
+        if (doctorRepository.findByIdForUpdate(doctorId).isEmpty()) {
+            throw new IllegalArgumentException("No doctor found for doctor id " + doctorId);
+        }
+
+        ScheduleTemplate template = new ScheduleTemplate();
+        template.setDoctorId(doctorId);
+        template.setDayOfWeek(request.getDayOfWeek());
+        template.setStartTime(request.getStartTime());
+        template.setEndTime(request.getEndTime());
+        template.setSlotMinutes(slotMinutes(request));
+        template.setValidFrom(request.getValidFrom());
+        template.setValidTo(request.getValidTo());
+        template.getExcludedDates().addAll(request.getExcludedDates());
+
+        ScheduleTemplateView added = ScheduleTemplateView.of(template);
+        for (ScheduleTemplate other : scheduleTemplateRepository.findByDoctorId(doctorId)) {
+            if (overlaps(added, ScheduleTemplateView.of(other))) {
+                throw new IllegalArgumentException("Invalid template: it overlaps template " + other.getId() + ".");
+            }
+        }
+
+        scheduleTemplateRepository.save(template);
+        onTemplatesChanged(doctorId);
+        return ScheduleTemplateView.of(template);
+    }
+
+    @Transactional
+    public ScheduleTemplateView deleteTemplate(Long doctorId, Long templateId) {
+        ScheduleTemplate template = template(doctorId, templateId);
+        scheduleTemplateRepository.delete(template);
+        onTemplatesChanged(doctorId);
+        return ScheduleTemplateView.of(template);
+    }
+
+    @Transactional
+    public ScheduleTemplateView addExcludedDate(Long doctorId, Long templateId, LocalDate date) {
+        ScheduleTemplate template = template(doctorId, templateId);
+        if (template.getExcludedDates().add(date)) {
+            onTemplatesChanged(doctorId);
+        }
+        return ScheduleTemplateView.of(template);
+    }
+
+    @Transactional
+    public ScheduleTemplateView removeExcludedDate(Long doctorId, Long templateId, LocalDate date) {
+        ScheduleTemplate template = template(doctorId, templateId);
+        if (template.getExcludedDates().remove(date)) {
+            onTemplatesChanged(doctorId);
+        }
+        return ScheduleTemplateView.of(template);
+    }
+
+    public void validateTemplateRequest(ScheduleTemplateRequest request) {
+        if (request.getDayOfWeek() == null || request.getStartTime() == null || request.getEndTime() == null
+                || request.getValidFrom() == null) {
+            throw new IllegalArgumentException("Day of week, start time, end time and valid from are required.");
+        }
+
+        if (request.getValidTo() != null && request.getValidTo().isBefore(request.getValidFrom())) {
+            throw new IllegalArgumentException("Invalid date range: End date is sooner than start date.");
+        }
+
+        OpenTimeService.validateWholeMinutes(request.getStartTime(), request.getEndTime());
+        int slotMinutes = slotMinutes(request);
+        if (slotMinutes < MIN_SLOT_MINUTES || slotMinutes > MAX_SLOT_MINUTES) {
+            throw new IllegalArgumentException("Invalid slot length: the slot must be between "
+                    + MIN_SLOT_MINUTES + " and " + MAX_SLOT_MINUTES + " minutes.");
+        }
+
+        if (!request.getEndTime().isAfter(request.getStartTime())
+                || request.getStartTime().plusMinutes(slotMinutes).isAfter(request.getEndTime())) {
+            throw new IllegalArgumentException(
+                    "Invalid daily hours: the interval must be at least " + slotMinutes + " minutes.");
+        }
+    }
+
+    private static int slotMinutes(ScheduleTemplateRequest request) {
+        return request.getSlotMinutes() == null ? OPENTIME_INTERVAL_MINUTES : request.getSlotMinutes();
+    }
+
+    private ScheduleTemplate template(Long doctorId, Long templateId) {
+        return scheduleTemplateRepository.findByIdAndDoctorId(templateId, doctorId)
+                .orElseThrow(() -> new ScheduleTemplateNotFoundException(
+                        "Schedule template " + templateId + " not related to doctor id " + doctorId));
+    }
+
+    private static boolean overlaps(ScheduleTemplateView template, ScheduleTemplateView other) {
+        LocalDate otherValidTo = other.getValidTo() == null ? LocalDate.MAX : other.getValidTo();
+        return template.getDayOfWeek() == other.getDayOfWeek()
+                && template.isValidBetween(other.getValidFrom(), otherValidTo)
+                && template.getStartTime().isBefore(other.getEndTime())
+                && other.getStartTime().isBefore(template.getEndTime());
+    }
+
+    private void onTemplatesChanged(Long doctorId) {
+        TransactionUtil.afterCommit(() -> {
+            templatesCache.evict(doctorId);
+            templateDoctorsCache.evict("all");
+            slotAvailabilityIndex.evictDoctor(doctorId);
+            availabilityEventBus.resync(doctorId, MIN_DATE_TIME, MAX_DATE_TIME);
+            doctorDayVersions.templatesChanged(doctorId);
+        });
+    }
+}
@@ -0,0 +1,151 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.service.SlotAvailabilityIndex.DaySlots;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_AVAILABILITY_CACHE;
+
+// note: the day-availability cache the nodes share the days of their SlotAvailabilityIndex through.
+// an invalidation replaces the shared entry by a tombstone of a higher version, even when the day is not cached,
+// and a loaded day is only stored if the entry still has the version read before the load. so a node that read
+// the db before a write committed elsewhere cannot put its stale day back after the writer's invalidation.
+@Component
+public class SharedDayAvailability {
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private IMap<String, DaySlots> sharedDays;
+
+    @PostConstruct
+    public void init() {
+        sharedDays = hazelcastInstance.getMap(DAY_AVAILABILITY_CACHE);
+    }
+
+    public static String dayKey(Long doctorId, long epochDay) {
+        return doctorId + ":" + epochDay;
+    }
+
+    // note: versions the templates of the doctor, a load checks it once more after storing its days
+    public static String doctorKey(Long doctorId) {
+        return String.valueOf(doctorId);
+    }
+
+    Map<String, DaySlots> getAll(Set<String> keys) {
+        return sharedDays.getAll(keys);
+    }
+
+    void invalidate(String key) {
+        sharedDays.executeOnKey(key, new Invalidate());
+    }
+
+    void invalidate(Set<String> keys) {
+        sharedDays.executeOnKeys(keys, new Invalidate());
+    }
+
+    // note: the doctor key is invalidated first, so loads that started before and store a day nobody cached yet
+    // see it
+    void invalidateDoctor(Long doctorId) {
+        sharedDays.executeOnKey(doctorKey(doctorId), new Invalidate());
+        sharedDays.executeOnEntries(new Invalidate(), Predicates.like("__key", doctorId + ":%"));
+    }
+
+    // note: stores the days over the shared entries their load started from, returns the ones stored.
+    // a template change that started meanwhile may not have seen the days stored, they are invalidated again then.
+    Map<Long, DaySlots> share(Long doctorId, Map<Long, DaySlots> days, Map<String, DaySlots> shared) {
+        Map<Long, DaySlots> stored = new HashMap<>();
+        days.forEach((day, daySlots) -> {
+            String key = dayKey(doctorId, day);
+            if (sharedDays.executeOnKey(key, new PutIfVersion(versionOf(shared.get(key)), daySlots))) {
+                stored.put(day, daySlots);
+            }
+        });
+
+        long doctorVersion = versionOf(sharedDays.executeOnKey(doctorKey(doctorId), new Read()));
+        if (doctorVersion != versionOf(shared.get(doctorKey(doctorId)))) {
+            invalidate(stored.keySet().stream()
+                    .map(day -> dayKey(doctorId, day))
+                    .collect(Collectors.toSet()));
+            return Map.of();
+        }
+        return stored;
+    }
+
+    private static long versionOf(DaySlots daySlots) {
+        return daySlots == null ? 0 : daySlots.version;
+    }
+
+    // note: replaces the shared day by a tombstone of a higher version, whether or not the day is cached
+    static final class Invalidate implements EntryProcessor<String, DaySlots, Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Boolean process(Map.Entry<String, DaySlots> entry) {
+            DaySlots tombstone = new DaySlots();
+            tombstone.version = versionOf(entry.getValue()) + 1;
+            tombstone.invalidated = true;
+            entry.setValue(tombstone);
+            return true;
+        }
+    }
+
+    // note: stores a loaded day only over the entry the load started from, absent or a tombstone
+    static final class PutIfVersion implements EntryProcessor<String, DaySlots, Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final long expectedVersion;
+        private final DaySlots daySlots;
+
+        PutIfVersion(long expectedVersion, DaySlots daySlots) {
+            this.expectedVersion = expectedVersion;
+            this.daySlots = daySlots;
+        }
+
+        @Override
+        public Boolean process(Map.Entry<String, DaySlots> entry) {
+            DaySlots current = entry.getValue();
+            if (versionOf(current) != expectedVersion || (current != null && !current.invalidated)) {
+                return false;
+            }
+            daySlots.version = expectedVersion + 1;
+            entry.setValue(daySlots);
+            return true;
+        }
+    }
+
+    // note: matches tombstones, the entries other nodes have to drop their loaded day for
+    public static final class Invalidated implements Predicate<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean apply(Map.Entry<String, Object> entry) {
+            return entry.getValue() instanceof DaySlots && ((DaySlots) entry.getValue()).invalidated;
+        }
+    }
+
+    // note: reads on the owning member, past the near cache
+    static final class Read implements EntryProcessor<String, DaySlots, DaySlots> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public DaySlots process(Map.Entry<String, DaySlots> entry) {
+            return entry.getValue();
+        }
+
+        @Override
+        public EntryProcessor<String, DaySlots, DaySlots> getBackupProcessor() {
+            return null;
+        }
+    }
+}
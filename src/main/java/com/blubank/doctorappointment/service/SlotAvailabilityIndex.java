@@ -0,0 +1,493 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.MIN_SLOT_MINUTES;
+import static com.blubank.doctorappointment.service.SharedDayAvailability.dayKey;
+import static com.blubank.doctorappointment.service.SharedDayAvailability.doctorKey;
+
+// note: in-memory index of the OPEN slots of each doctor, one bitmap per doctor-day.
+// days are loaded lazily on first read (from the shared day-availability cache, then db) and kept up to date
+// by the write paths of OpenTimeService, which also invalidate the day in the shared cache so other nodes drop it.
+// template and day schedule slots are added to a loaded day by their overlays, such days are reloaded on writes.
+// at most app.availability-index.max-doctors doctors are kept, the least recently read ones are dropped first.
+@Component
+public class SlotAvailabilityIndex {
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    @Value("${app.availability-index.max-doctors:10000}")
+    private int maxDoctors;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private SharedDayAvailability sharedDays;
+
+    @Autowired
+    private ScheduleTemplateOverlay scheduleTemplateOverlay;
+
+    @Autowired
+    private DayScheduleOverlay dayScheduleOverlay;
+
+    private final Map<Long, DoctorSlots> doctors = new ConcurrentHashMap<>();
+
+    public List<OpenTimeView> getOpenTimes(Long doctorId, LocalDate date) {
+        return getOpenTimes(doctorId, date, date);
+    }
+
+    public List<OpenTimeView> getOpenTimes(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        DoctorSlots doctorSlots = doctorSlots(doctorId);
+        if (doctorSlots == null) {
+            return List.of();
+        }
+
+        List<OpenTimeView> openTimes = new ArrayList<>();
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            daySlots(doctorSlots, date, toDate).appendTo(openTimes, doctorSlots.doctor, date);
+        }
+        return openTimes;
+    }
+
+    // note: k-way merge of the per-doctor slot lists, which are already ordered by start time.
+    // each doctor's cursor walks the index one day at a time. a day missing from the index loads the missing days
+    // up to the end of the window in one query, so a doctor costs at most one query however late its opening.
+    public List<OpenTimeView> getEarliestOpenTimes(Collection<Long> doctorIds, LocalDateTime notBefore,
+                                                   LocalDate toDate, int limit) {
+        PriorityQueue<DoctorCursor> queue = new PriorityQueue<>(EARLIEST_FIRST);
+        for (Long doctorId : doctorIds) {
+            DoctorSlots doctorSlots = doctorSlots(doctorId);
+            if (doctorSlots == null) {
+                continue;
+            }
+            DoctorCursor cursor = new DoctorCursor(doctorSlots, notBefore, toDate);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+
+        List<OpenTimeView> openTimes = new ArrayList<>(limit);
+        while (openTimes.size() < limit && !queue.isEmpty()) {
+            DoctorCursor cursor = queue.poll();
+            openTimes.add(cursor.current());
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return openTimes;
+    }
+
+    public void slotsOpened(Collection<OpenTime> openTimes) {
+        Set<String> changedDays = new HashSet<>();
+        for (OpenTime openTime : openTimes) {
+            changedDays.add(dayKey(openTime.getDoctor().getId(), openTime.getStartTime().toLocalDate().toEpochDay()));
+        }
+        sharedDays.invalidate(changedDays);
+
+        for (OpenTime openTime : openTimes) {
+            DoctorSlots doctorSlots = doctors.get(openTime.getDoctor().getId());
+            if (doctorSlots == null) {
+                continue;
+            }
+
+            synchronized (doctorSlots) {
+                long day = openTime.getStartTime().toLocalDate().toEpochDay();
+                DaySlots daySlots = doctorSlots.days.get(day);
+                if (daySlots != null && daySlots.templated) {
+                    doctorSlots.days.remove(day);
+                } else if (daySlots != null) {
+                    daySlots.put(openTime);
+                }
+            }
+        }
+    }
+
+    public void slotClosed(Long doctorId, Long openTimeId, LocalDateTime startTime) {
+        sharedDays.invalidate(dayKey(doctorId, startTime.toLocalDate().toEpochDay()));
+
+        DoctorSlots doctorSlots = doctors.get(doctorId);
+        if (doctorSlots == null) {
+            return;
+        }
+
+        synchronized (doctorSlots) {
+            long day = startTime.toLocalDate().toEpochDay();
+            DaySlots daySlots = doctorSlots.days.get(day);
+            if (daySlots != null && daySlots.templated) {
+                doctorSlots.days.remove(day);
+            } else if (daySlots != null) {
+                daySlots.remove(openTimeId, minuteOfDay(startTime));
+            }
+        }
+    }
+
+    // note: seeds the doctor's days in the range from already known open slots (the booking journal, checked
+    // against the db) instead of loading them on first read. seeded days stay local. a day with a shared entry
+    // meanwhile takes it, a tombstone means the day changed since and it is loaded again on first read.
+    public void preload(DoctorView doctor, LocalDate fromDate, LocalDate toDate, Collection<OpenTime> openTimes) {
+        Long doctorId = doctor.getId();
+        Map<Long, DaySlots> seeded = new HashMap<>();
+        for (OpenTime openTime : openTimes) {
+            seeded.computeIfAbsent(openTime.getStartTime().toLocalDate().toEpochDay(), day -> new DaySlots())
+                    .put(openTime);
+        }
+
+        DoctorSlots doctorSlots = doctors.computeIfAbsent(doctorId, id -> new DoctorSlots(doctor));
+        synchronized (doctorSlots) {
+            Set<String> keys = new HashSet<>();
+            for (long day = fromDate.toEpochDay(); day <= toDate.toEpochDay(); day++) {
+                if (doctorSlots.days.putIfAbsent(day, seeded.getOrDefault(day, new DaySlots())) == null) {
+                    keys.add(dayKey(doctorId, day));
+                }
+            }
+
+            sharedDays.getAll(keys).forEach((key, shared) -> {
+                long day = Long.parseLong(key.substring(key.indexOf(':') + 1));
+                if (shared.invalidated) {
+                    doctorSlots.days.remove(day);
+                } else {
+                    doctorSlots.days.put(day, shared);
+                }
+            });
+        }
+    }
+
+    // note: drops the days of the doctor in the range, they are reloaded on next read
+    public void evictDays(Long doctorId, LocalDate fromDate, LocalDate toDate) {
+        Set<String> keys = new HashSet<>();
+        for (long day = fromDate.toEpochDay(); day <= toDate.toEpochDay(); day++) {
+            keys.add(dayKey(doctorId, day));
+        }
+        sharedDays.invalidate(keys);
+
+        DoctorSlots doctorSlots = doctors.get(doctorId);
+        if (doctorSlots == null) {
+            return;
+        }
+
+        synchronized (doctorSlots) {
+            doctorSlots.days.keySet().removeIf(day -> day >= fromDate.toEpochDay() && day <= toDate.toEpochDay());
+        }
+    }
+
+    // note: drops every day of the doctor, on the other nodes too, e.g. once its schedule templates changed
+    public void evictDoctor(Long doctorId) {
+        sharedDays.invalidateDoctor(doctorId);
+        dropLoadedDoctor(doctorId);
+    }
+
+    // note: local only, used when another node changed the doctor's templates
+    public void dropLoadedDoctor(Long doctorId) {
+        DoctorSlots doctorSlots = doctors.get(doctorId);
+        if (doctorSlots == null) {
+            return;
+        }
+
+        synchronized (doctorSlots) {
+            doctorSlots.days.clear();
+        }
+    }
+
+    // note: local only, used when another node changed the day or the shared cache entry expired
+    public void dropLoadedDay(Long doctorId, long epochDay) {
+        DoctorSlots doctorSlots = doctors.get(doctorId);
+        if (doctorSlots == null) {
+            return;
+        }
+
+        synchronized (doctorSlots) {
+            doctorSlots.days.remove(epochDay);
+        }
+    }
+
+    private DoctorSlots doctorSlots(Long doctorId) {
+        DoctorSlots doctorSlots = doctors.get(doctorId);
+        if (doctorSlots == null) {
+            DoctorView doctor = doctorService.getDoctor(doctorId);
+            if (doctor == null) {
+                return null;
+            }
+            doctorSlots = doctors.computeIfAbsent(doctorId, id -> new DoctorSlots(doctor));
+            if (doctors.size() > maxDoctors) {
+                dropLeastRecentlyReadDoctors();
+            }
+        }
+        doctorSlots.lastRead = System.nanoTime();
+        return doctorSlots;
+    }
+
+    // note: trims to 90% of the bound, so the scan runs once per many new doctors rather than on each of them
+    private synchronized void dropLeastRecentlyReadDoctors() {
+        int excess = doctors.size() - maxDoctors * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        doctors.values().stream()
+                .sorted(Comparator.comparingLong(doctorSlots -> doctorSlots.lastRead))
+                .limit(excess)
+                .collect(Collectors.toList())
+                .forEach(doctorSlots -> doctors.remove(doctorSlots.doctor.getId(), doctorSlots));
+    }
+
+    int loadedDoctors() {
+        return doctors.size();
+    }
+
+    private DaySlots daySlots(DoctorSlots doctorSlots, LocalDate date, LocalDate toDate) {
+        DaySlots daySlots = doctorSlots.days.get(date.toEpochDay());
+        return daySlots != null ? daySlots : loadDays(doctorSlots, date, toDate);
+    }
+
+    // note: the doctor monitor is held while loading, so a write that commits
+    // meanwhile is applied on top of the loaded day instead of being lost. the first day is returned under the
+    // monitor too, a concurrent drop of the day can only affect later reads.
+    private DaySlots loadDays(DoctorSlots doctorSlots, LocalDate fromDate, LocalDate toDate) {
+        synchronized (doctorSlots) {
+            DaySlots first = doctorSlots.days.get(fromDate.toEpochDay());
+            if (first != null) {
+                return first;
+            }
+
+            Long doctorId = doctorSlots.doctor.getId();
+            Set<String> keys = new HashSet<>();
+            keys.add(doctorKey(doctorId));
+            for (long day = fromDate.toEpochDay(); day <= toDate.toEpochDay(); day++) {
+                if (!doctorSlots.days.containsKey(day)) {
+                    keys.add(dayKey(doctorId, day));
+                }
+            }
+            Map<String, DaySlots> shared = sharedDays.getAll(keys);
+
+            long firstMissing = Long.MAX_VALUE;
+            long lastMissing = Long.MIN_VALUE;
+            for (long day = fromDate.toEpochDay(); day <= toDate.toEpochDay(); day++) {
+                if (doctorSlots.days.containsKey(day)) {
+                    continue;
+                }
+                DaySlots cached = shared.get(dayKey(doctorId, day));
+                if (cached != null && !cached.invalidated) {
+                    doctorSlots.days.put(day, cached);
+                } else {
+                    firstMissing = Math.min(firstMissing, day);
+                    lastMissing = Math.max(lastMissing, day);
+                }
+            }
+            if (firstMissing > lastMissing) {
+                return doctorSlots.days.get(fromDate.toEpochDay());
+            }
+
+            LocalDate firstDate = LocalDate.ofEpochDay(firstMissing);
+            LocalDate lastDate = LocalDate.ofEpochDay(lastMissing);
+            List<ScheduleTemplateView> templates = scheduleTemplateOverlay.getTemplates(doctorId, firstDate, lastDate);
+            // note: a template slot is hidden by any row overlapping it, whatever its status, so rows of every
+            // status are read when a template applies
+            List<OpenTime> openTimes = templates.isEmpty()
+                    ? openTimeRepository.findByDoctorIdAndStatusInRange(doctorId, OpenTimeStatus.OPEN,
+                    firstDate.atStartOfDay(), lastDate.plusDays(1).atStartOfDay())
+                    : openTimeRepository.findOverlapping(doctorId, firstDate.atStartOfDay(),
+                    lastDate.plusDays(1).atStartOfDay());
+
+            Map<Long, DaySlots> loaded = new HashMap<>();
+            for (OpenTime openTime : openTimes) {
+                if (openTime.getStatus().equals(OpenTimeStatus.OPEN)) {
+                    loaded.computeIfAbsent(openTime.getStartTime().toLocalDate().toEpochDay(), day -> new DaySlots())
+                            .put(openTime);
+                }
+            }
+            List<OpenTime> scheduled = dayScheduleOverlay.addSlots(loaded, doctorId, firstDate, lastDate);
+            if (!scheduled.isEmpty()) {
+                openTimes = new ArrayList<>(openTimes);
+                openTimes.addAll(scheduled);
+            }
+            if (!templates.isEmpty()) {
+                scheduleTemplateOverlay.addSlots(loaded, templates, openTimes, firstDate, lastDate);
+            }
+            Map<Long, DaySlots> days = new HashMap<>();
+            for (long day = firstMissing; day <= lastMissing; day++) {
+                if (!doctorSlots.days.containsKey(day)) {
+                    days.put(day, loaded.getOrDefault(day, new DaySlots()));
+                }
+            }
+            doctorSlots.days.putAll(sharedDays.share(doctorId, days, shared));
+
+            // note: a day that could not be stored answers this read only and is loaded again on the next one
+            first = doctorSlots.days.get(fromDate.toEpochDay());
+            return first != null ? first : loaded.getOrDefault(fromDate.toEpochDay(), new DaySlots());
+        }
+    }
+
+    private static int minuteOfDay(LocalDateTime dateTime) {
+        if (dateTime.getSecond() != 0 || dateTime.getNano() != 0) {
+            throw new IllegalArgumentException("Invalid time: " + dateTime + " is not a whole minute.");
+        }
+        return dateTime.getHour() * 60 + dateTime.getMinute();
+    }
+
+    private static final class DoctorSlots {
+        private final DoctorView doctor;
+        private final Map<Long, DaySlots> days = new ConcurrentHashMap<>();
+        private volatile long lastRead;
+
+        private DoctorSlots(DoctorView doctor) {
+            this.doctor = doctor;
+        }
+    }
+
+    private static final Comparator<DoctorCursor> EARLIEST_FIRST = Comparator
+            .comparing((DoctorCursor cursor) -> cursor.current().getStartTime())
+            .thenComparing(cursor -> cursor.current().getId(), Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final class DoctorCursor {
+        private final DoctorSlots doctorSlots;
+        private final LocalDateTime notBefore;
+        private final LocalDate toDate;
+        private LocalDate date;
+        private List<OpenTimeView> day = List.of();
+        private int position = -1;
+
+        private DoctorCursor(DoctorSlots doctorSlots, LocalDateTime notBefore, LocalDate toDate) {
+            this.doctorSlots = doctorSlots;
+            this.notBefore = notBefore;
+            this.toDate = toDate;
+            this.date = notBefore.toLocalDate().minusDays(1);
+        }
+
+        private OpenTimeView current() {
+            return day.get(position);
+        }
+
+        private boolean advance() {
+            while (true) {
+                if (++position < day.size()) {
+                    if (!current().getStartTime().isBefore(notBefore)) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (!date.isBefore(toDate)) {
+                    return false;
+                }
+                date = date.plusDays(1);
+                day = new ArrayList<>();
+                position = -1;
+                daySlots(doctorSlots, date, toDate).appendTo(day, doctorSlots.doctor, date);
+            }
+        }
+    }
+
+    // note: bit b of open is set when the slot starting in bucket b (MIN_SLOT_MINUTES wide) is open.
+    // slot details live in parallel arrays ordered by bucket, so a bucket's position is the number of set bits
+    // below it. non-overlapping slots are at least MIN_SLOT_MINUTES long, so they never share a bucket.
+    static final class DaySlots implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int BUCKETS = (MINUTES_PER_DAY + MIN_SLOT_MINUTES - 1) / MIN_SLOT_MINUTES;
+        private static final long TEMPLATE_SLOT_ID = 0;
+
+        private final long[] open = new long[(BUCKETS + 63) / 64];
+        private long[] ids = new long[0];
+        private int[] startMinutes = new int[0];
+        private int[] endMinutes = new int[0];
+        private long[] versions = new long[0];
+        private int size;
+        // note: package-private for the overlays and the shared cache
+        boolean templated;
+        long version;
+        boolean invalidated;
+
+        synchronized void put(OpenTime openTime) {
+            int startMinute = minuteOfDay(openTime.getStartTime());
+            int bucket = startMinute / MIN_SLOT_MINUTES;
+            int rank = rank(bucket);
+
+            if (!isOpen(bucket)) {
+                if (size == ids.length) {
+                    int capacity = Math.max(8, size * 2);
+                    ids = Arrays.copyOf(ids, capacity);
+                    startMinutes = Arrays.copyOf(startMinutes, capacity);
+                    endMinutes = Arrays.copyOf(endMinutes, capacity);
+                    versions = Arrays.copyOf(versions, capacity);
+                }
+                System.arraycopy(ids, rank, ids, rank + 1, size - rank);
+                System.arraycopy(startMinutes, rank, startMinutes, rank + 1, size - rank);
+                System.arraycopy(endMinutes, rank, endMinutes, rank + 1, size - rank);
+                System.arraycopy(versions, rank, versions, rank + 1, size - rank);
+                open[bucket >>> 6] |= 1L << bucket;
+                size++;
+            }
+
+            ids[rank] = openTime.getId() == null ? TEMPLATE_SLOT_ID : openTime.getId();
+            startMinutes[rank] = startMinute;
+            endMinutes[rank] = startMinute + (int) Duration.between(openTime.getStartTime(), openTime.getEndTime()).toMinutes();
+            versions[rank] = openTime.getVersion() == null ? 0 : openTime.getVersion();
+        }
+
+        synchronized void remove(long id, int startMinute) {
+            int bucket = startMinute / MIN_SLOT_MINUTES;
+            if (!isOpen(bucket)) {
+                return;
+            }
+
+            int rank = rank(bucket);
+            if (ids[rank] != id) {
+                return;
+            }
+            System.arraycopy(ids, rank + 1, ids, rank, size - rank - 1);
+            System.arraycopy(startMinutes, rank + 1, startMinutes, rank, size - rank - 1);
+            System.arraycopy(endMinutes, rank + 1, endMinutes, rank, size - rank - 1);
+            System.arraycopy(versions, rank + 1, versions, rank, size - rank - 1);
+            open[bucket >>> 6] &= ~(1L << bucket);
+            size--;
+        }
+
+        synchronized void appendTo(List<OpenTimeView> target, DoctorView doctor, LocalDate date) {
+            LocalDateTime dayStart = date.atStartOfDay();
+            for (int i = 0; i < size; i++) {
+                boolean templateSlot = ids[i] == TEMPLATE_SLOT_ID;
+                target.add(new OpenTimeView(templateSlot ? null : ids[i], dayStart.plusMinutes(startMinutes[i]),
+                        dayStart.plusMinutes(endMinutes[i]), OpenTimeStatus.OPEN, doctor,
+                        templateSlot ? null : versions[i]));
+            }
+        }
+
+        private boolean isOpen(int bucket) {
+            return (open[bucket >>> 6] & (1L << bucket)) != 0;
+        }
+
+        private int rank(int bucket) {
+            int word = bucket >>> 6;
+            int rank = 0;
+            for (int i = 0; i < word; i++) {
+                rank += Long.bitCount(open[i]);
+            }
+            return rank + Long.bitCount(open[word] & ((1L << bucket) - 1));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.SlotBooking;
+import com.blubank.doctorappointment.dto.SlotKey;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.AppointmentRepository;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import com.hazelcast.map.MapStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// note: write-behind store of the clustered slot map. slots are loaded lazily from open_time, bookings are
+// written in batches as the same conditional OPEN -> TAKEN update plus appointment insert the direct mode uses.
+// deleted slots stay in the map as DELETED tombstones and are skipped, so a flush never books them again.
+// the db beans are lazy because the hazelcast config that holds this store is created before the jpa beans.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.booking.mode", havingValue = "clustered")
+public class SlotBookingStore implements MapStore<SlotKey, SlotBooking> {
+    @Lazy
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Lazy
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Lazy
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Lazy
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Override
+    public SlotBooking load(SlotKey key) {
+        return openTimeRepository.findSlotByIdAndDoctorId(key.getOpenTimeId(), key.getDoctorId())
+                .map(SlotBooking::of)
+                .orElse(null);
+    }
+
+    @Override
+    public Map<SlotKey, SlotBooking> loadAll(Collection<SlotKey> keys) {
+        Map<SlotKey, SlotBooking> slots = new HashMap<>();
+        for (SlotKey key : keys) {
+            SlotBooking slot = load(key);
+            if (slot != null) {
+                slots.put(key, slot);
+            }
+        }
+        return slots;
+    }
+
+    // note: nothing is loaded eagerly, a slot enters the map on its first booking or deletion
+    @Override
+    public Iterable<SlotKey> loadAllKeys() {
+        return null;
+    }
+
+    @Override
+    public void store(SlotKey key, SlotBooking slot) {
+        storeAll(Map.of(key, slot));
+    }
+
+    // note: the appointments only become readable from the db here, so the doctor versions are bumped again
+    @Override
+    public void storeAll(Map<SlotKey, SlotBooking> slots) {
+        List<SlotBooking> written = new ArrayList<>();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<Appointment> appointments = new ArrayList<>();
+            slots.forEach((key, slot) -> {
+                if (slot.getStatus() != OpenTimeStatus.TAKEN || slot.getPatientId() == null) {
+                    return;
+                }
+
+                if (openTimeRepository.updateStatusIfCurrent(
+                        key.getOpenTimeId(), OpenTimeStatus.OPEN, OpenTimeStatus.TAKEN) == 0) {
+                    log.error("Booking of open time {} for patient {} was not written, the open time is not open",
+                            key.getOpenTimeId(), slot.getPatientId());
+                    return;
+                }
+                Patient patient = new Patient();
+                patient.setId(slot.getPatientId());
+                Appointment appointment = new Appointment();
+                appointment.setPatient(patient);
+                appointment.setOpenTime(openTimeRepository.getReferenceById(key.getOpenTimeId()));
+                appointments.add(appointment);
+                written.add(slot);
+            });
+            appointmentRepository.saveAll(appointments);
+        });
+        written.forEach(slot -> doctorDayVersions.dayChanged(slot.getDoctorId(), slot.getStartTime().toLocalDate()));
+    }
+
+    // note: removing a slot from the map never deletes rows, deletions go through OpenTimeService
+    @Override
+    public void delete(SlotKey key) {
+    }
+
+    @Override
+    public void deleteAll(Collection<SlotKey> keys) {
+    }
+}
@@ -0,0 +1,162 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.OpenTimeSlot;
+import com.blubank.doctorappointment.dto.SlotHold;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.exception.SlotHoldNotFoundException;
+import com.blubank.doctorappointment.helper.Util;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// note: two-phase booking. a hold is a redis key per open time written with SET NX PX, so it is taken
+// atomically and released by expiry without touching db. only confirming a hold books the open time, other
+// patients' bookings of a held open time are refused by BookingService, which claims the same key for the
+// length of a booking so the check and the booking cannot be split by a new hold. holds need redis, so they
+// are opt-in with app.booking.holds.enabled=true.
+@Service
+@ConditionalOnProperty(name = "app.booking.holds.enabled", havingValue = "true")
+public class SlotHoldService {
+    private static final String HOLD_KEY_PREFIX = "slot-hold:";
+
+    private static final String CONFIRMING = ":confirming";
+
+    // note: value is "<holdToken>:<patientId>", the key is deleted only by the owner of the token
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('get', KEYS[1]) " +
+                    "if value and string.sub(value, 1, string.len(ARGV[1]) + 1) == ARGV[1] .. ':' then " +
+                    "return redis.call('del', KEYS[1]) end " +
+                    "return 0", Long.class);
+
+    // note: takes the hold for confirmation in one step, a second confirm of the same token finds it taken.
+    // the key keeps its expiry and still blocks other patients while the booking runs
+    private static final RedisScript<String> CONFIRM_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('get', KEYS[1]) " +
+                    "if value and string.sub(value, 1, string.len(ARGV[1]) + 1) == ARGV[1] .. ':' " +
+                    "and not string.find(value, ARGV[2], 1, true) then " +
+                    "redis.call('set', KEYS[1], value .. ARGV[2], 'px', math.max(redis.call('pttl', KEYS[1]), 1)) " +
+                    "return value end " +
+                    "return false", String.class);
+
+    // note: gives a hold back after a failed booking, unless it expired meanwhile
+    private static final RedisScript<Long> UNCONFIRM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] .. ARGV[2] then " +
+                    "redis.call('set', KEYS[1], ARGV[1], 'px', math.max(redis.call('pttl', KEYS[1]), 1)) " +
+                    "return 1 end " +
+                    "return 0", Long.class);
+
+    // note: a booking outside a hold takes the key like a hold being confirmed, so a hold cannot be placed while
+    // it runs. the booking patient's own hold lets it through without a claim (empty token)
+    private static final RedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('get', KEYS[1]) " +
+                    "if not value then " +
+                    "redis.call('set', KEYS[1], ARGV[1] .. ':' .. ARGV[2] .. ARGV[3], 'px', ARGV[4]) " +
+                    "return ARGV[1] end " +
+                    "if string.match(value, '^[^:]*:([^:]*)') == ARGV[2] then return '' end " +
+                    "return false", String.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Lazy
+    @Autowired
+    private BookingService bookingService;
+
+    @Value("${app.booking.hold-ttl-seconds:300}")
+    private long holdTtlSeconds;
+
+    public SlotHold placeHold(String patientName, String phoneNumber, Long openTimeId) {
+        Patient patient = patientService.getPatientReference(patientName, phoneNumber);
+
+        OpenTimeSlot slot = openTimeRepository.findSlotById(openTimeId).orElse(null);
+        if (slot == null) {
+            throw new OpenTimeNotFoundException("Open time not for openTimeId " + openTimeId);
+        }
+
+        if (!slot.getStatus().equals(OpenTimeStatus.OPEN)) {
+            throw new AppointmentExistsException("Cannot hold taken open time with existing appointments.");
+        }
+
+        String holdToken = UUID.randomUUID().toString();
+        Duration ttl = Duration.ofSeconds(holdTtlSeconds);
+        Boolean acquired = redisTemplate.opsForValue()
+                .setIfAbsent(holdKey(openTimeId), holdToken + ":" + patient.getId(), ttl);
+        if (!Boolean.TRUE.equals(acquired)) {
+            throw new AppointmentExistsException("Open time is held by another patient.");
+        }
+        // note: a booking that committed between the status read and the hold has released its claim by now
+        if (!openTimeRepository.findSlotById(openTimeId).map(OpenTimeSlot::getStatus)
+                .filter(OpenTimeStatus.OPEN::equals).isPresent()) {
+            releaseHold(openTimeId, holdToken);
+            throw new AppointmentExistsException("Cannot hold taken open time with existing appointments.");
+        }
+
+        return new SlotHold(openTimeId, holdToken, LocalDateTime.now().plus(ttl));
+    }
+
+    public Appointment confirmHold(Long openTimeId, String holdToken) {
+        if (Util.isNullOrEmpty(holdToken)) {
+            throw new SlotHoldNotFoundException("No active hold for openTimeId " + openTimeId + " and the given token.");
+        }
+        String value = redisTemplate.execute(CONFIRM_SCRIPT, List.of(holdKey(openTimeId)), holdToken, CONFIRMING);
+        if (value == null) {
+            throw new SlotHoldNotFoundException("No active hold for openTimeId " + openTimeId + " and the given token.");
+        }
+
+        Appointment appointment;
+        try {
+            appointment = bookingService.book(patientService.getPatient(patientId(value)), openTimeId);
+        } catch (RuntimeException e) {
+            redisTemplate.execute(UNCONFIRM_SCRIPT, List.of(holdKey(openTimeId)), value, CONFIRMING);
+            throw e;
+        }
+        releaseHold(openTimeId, holdToken);
+        return appointment;
+    }
+
+    // note: the booking path claim, a slot held by another patient is not booked past the hold. returns the
+    // token to release once the booking is done, or null when the patient's own hold covers the booking
+    public String claimForBooking(Long openTimeId, Long patientId) {
+        String claimToken = UUID.randomUUID().toString();
+        String claimed = redisTemplate.execute(CLAIM_SCRIPT, List.of(holdKey(openTimeId)), claimToken,
+                String.valueOf(patientId), CONFIRMING, String.valueOf(Duration.ofSeconds(holdTtlSeconds).toMillis()));
+        if (claimed == null) {
+            throw new AppointmentExistsException("Open time is held by another patient.");
+        }
+        return claimed.isEmpty() ? null : claimed;
+    }
+
+    public boolean releaseHold(Long openTimeId, String holdToken) {
+        Long released = redisTemplate.execute(RELEASE_SCRIPT, List.of(holdKey(openTimeId)), holdToken);
+        return released != null && released > 0;
+    }
+
+    private static Long patientId(String value) {
+        return Long.valueOf(value.split(":")[1]);
+    }
+
+    private static String holdKey(Long openTimeId) {
+        return HOLD_KEY_PREFIX + openTimeId;
+    }
+}
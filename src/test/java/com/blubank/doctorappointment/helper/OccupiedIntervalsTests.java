@@ -0,0 +1,68 @@
+package com.blubank.doctorappointment.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.blubank.doctorappointment.helper.OccupiedIntervals.toEpochSecond;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OccupiedIntervalsTests {
+    private static final LocalDateTime DAY = LocalDateTime.of(2030, 1, 7, 0, 0);
+
+    @Test
+    void touchingIntervalsDoNotOverlap() {
+        OccupiedIntervals intervals = intervals(interval(9, 0, 10, 0));
+
+        assertFalse(overlaps(intervals, 8, 0, 9, 0));
+        assertFalse(overlaps(intervals, 10, 0, 10, 30));
+        assertTrue(overlaps(intervals, 9, 59, 10, 30));
+    }
+
+    @Test
+    void touchingAndNestedIntervalsAreMerged() {
+        OccupiedIntervals intervals = intervals(
+                interval(9, 0, 10, 0), interval(10, 0, 11, 0), interval(9, 15, 9, 45), interval(13, 0, 14, 0));
+
+        assertTrue(overlaps(intervals, 9, 50, 10, 10));
+        assertTrue(overlaps(intervals, 10, 30, 12, 0));
+        assertFalse(overlaps(intervals, 11, 0, 13, 0));
+        assertTrue(overlaps(intervals, 8, 0, 15, 0));
+    }
+
+    @Test
+    void unsortedIntervalsAndDecreasingQueriesAreAnswered() {
+        OccupiedIntervals intervals = intervals(
+                interval(15, 0, 16, 0), interval(9, 0, 10, 0), interval(12, 0, 13, 0));
+
+        assertFalse(overlaps(intervals, 13, 0, 14, 0));
+        assertTrue(overlaps(intervals, 15, 30, 16, 30));
+        assertTrue(overlaps(intervals, 9, 30, 9, 45));
+        assertFalse(overlaps(intervals, 10, 0, 12, 0));
+        assertTrue(overlaps(intervals, 12, 59, 13, 30));
+    }
+
+    @Test
+    void emptyIntervalsOverlapNothing() {
+        OccupiedIntervals intervals = intervals();
+
+        assertFalse(overlaps(intervals, 0, 0, 23, 59));
+    }
+
+    private static OccupiedIntervals intervals(LocalDateTime[]... intervals) {
+        return OccupiedIntervals.of(List.of(intervals), interval -> interval[0], interval -> interval[1]);
+    }
+
+    private static LocalDateTime[] interval(int startHour, int startMinute, int endHour, int endMinute) {
+        return new LocalDateTime[]{DAY.withHour(startHour).withMinute(startMinute),
+                DAY.withHour(endHour).withMinute(endMinute)};
+    }
+
+    private static boolean overlaps(OccupiedIntervals intervals,
+                                    int startHour, int startMinute, int endHour, int endMinute) {
+        LocalDateTime[] interval = interval(startHour, startMinute, endHour, endMinute);
+        return intervals.overlaps(toEpochSecond(interval[0]), toEpochSecond(interval[1]));
+    }
+}
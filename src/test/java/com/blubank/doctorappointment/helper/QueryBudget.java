@@ -0,0 +1,28 @@
+package com.blubank.doctorappointment.helper;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+// note: fails when the call runs more sql statements than the budget, counted on the calling thread
+public final class QueryBudget {
+    private QueryBudget() {
+    }
+
+    public static <T> T assertMaxStatements(int maxStatements, Supplier<T> call) {
+        SqlStatementCounter.Snapshot before = SqlStatementCounter.snapshot();
+        T result = call.get();
+        long statements = SqlStatementCounter.since(before).getStatements();
+        if (statements > maxStatements) {
+            fail("Expected at most " + maxStatements + " sql statements but " + statements + " were executed.");
+        }
+        return result;
+    }
+
+    public static void assertMaxStatements(int maxStatements, Runnable call) {
+        assertMaxStatements(maxStatements, () -> {
+            call.run();
+            return null;
+        });
+    }
+}
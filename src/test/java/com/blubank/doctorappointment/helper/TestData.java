@@ -0,0 +1,52 @@
+package com.blubank.doctorappointment.helper;
+
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.service.DoctorService;
+import com.blubank.doctorappointment.service.PatientService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// note: the doctors and patients the tests start from. the tests share one database, so every call adds new
+// rows and patients get a phone number no other test uses.
+@Component
+public class TestData {
+    private static final AtomicLong PHONE_NUMBERS = new AtomicLong(System.nanoTime());
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private PatientService patientService;
+
+    public Doctor addDoctor() {
+        return addDoctor("doctor");
+    }
+
+    public Doctor addDoctor(String name) {
+        Doctor doctor = new Doctor();
+        doctor.setName(name);
+        return doctorService.addDoctor(doctor);
+    }
+
+    public Patient addPatient() {
+        return addPatient("patient");
+    }
+
+    public Patient addPatient(String name) {
+        return addPatient(name, phoneNumber());
+    }
+
+    public Patient addPatient(String name, String phoneNumber) {
+        Patient patient = new Patient();
+        patient.setName(name);
+        patient.setPhoneNumber(phoneNumber);
+        return patientService.addPatient(patient);
+    }
+
+    public static String phoneNumber() {
+        return "09" + PHONE_NUMBERS.incrementAndGet();
+    }
+}
@@ -0,0 +1,104 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.SCHEDULED_JOB_LOCK_MAP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ArchiveServiceTests {
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void pastOpenTimesAndAppointmentsMoveToTheArchive() {
+        Long doctorId = testData.addDoctor().getId();
+
+        LocalDate past = LocalDate.now().minusDays(3);
+        LocalDate future = LocalDate.now().plusDays(3);
+        List<OpenTime> pastOpenTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, past.atTime(9, 0), past.atTime(11, 0));
+        List<OpenTime> futureOpenTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, future.atTime(9, 0), future.atTime(10, 0));
+
+        Patient patient = testData.addPatient();
+        openTimeService.setAppointmentForPatient(patient, pastOpenTimes.get(1).getId());
+        openTimeService.setAppointmentForPatient(patient, futureOpenTimes.get(0).getId());
+        assertEquals(pastOpenTimes.size() - 1, openTimeService.getOpenTimesForDoctorOnDay(doctorId, past).size());
+
+        assertTrue(archiveService.archiveEndedBefore(LocalDate.now().atStartOfDay()) >= pastOpenTimes.size());
+
+        assertEquals(futureOpenTimes.size(), openTimeService.getOpenTimes(doctorId).size());
+        assertEquals(List.of(), openTimeService.getOpenTimesForDoctorOnDay(doctorId, past));
+        List<AppointmentView> appointments = appointmentService.getPatientAppointments(patient.getPhoneNumber());
+        assertEquals(1, appointments.size());
+        assertEquals(futureOpenTimes.get(0).getId(), appointments.get(0).getOpenTime().getId());
+
+        ListQuery query = new ListQuery();
+        CursorPage<AppointmentView> history =
+                archiveService.getPatientAppointmentHistory(patient.getPhoneNumber(), query);
+        assertEquals(1, history.getItems().size());
+        assertEquals(pastOpenTimes.get(1).getId(), history.getItems().get(0).getOpenTime().getId());
+        assertEquals(OpenTimeStatus.TAKEN, history.getItems().get(0).getOpenTime().getStatus());
+        assertEquals(history.getItems(), archiveService.getDoctorAppointmentHistory(doctorId, query).getItems());
+
+        query.setLimit(2);
+        CursorPage<OpenTimeView> firstPage = archiveService.getOpenTimeHistory(doctorId, query);
+        query.setCursor(firstPage.getNextCursor());
+        CursorPage<OpenTimeView> secondPage = archiveService.getOpenTimeHistory(doctorId, query);
+        assertEquals(List.of(pastOpenTimes.get(0).getId(), pastOpenTimes.get(1).getId()),
+                List.of(firstPage.getItems().get(0).getId(), firstPage.getItems().get(1).getId()));
+        assertEquals(pastOpenTimes.size() - 2, secondPage.getItems().size());
+    }
+
+    @Test
+    void theScheduledJobIsSkippedWhileAnotherMemberHoldsItsLock() throws Exception {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate past = LocalDate.now().minusDays(3);
+        openTimeService.addOpenTimesForDoctor(doctorId, past.atTime(9, 0), past.atTime(10, 0));
+
+        IMap<String, String> locks = hazelcastInstance.getMap(SCHEDULED_JOB_LOCK_MAP);
+        ExecutorService otherMember = Executors.newSingleThreadExecutor();
+        try {
+            otherMember.submit(() -> locks.lock("archive")).get();
+            archiveService.archivePastOpenTimes();
+            assertEquals(2, openTimeService.getOpenTimes(doctorId).size());
+        } finally {
+            locks.forceUnlock("archive");
+            otherMember.shutdown();
+        }
+
+        archiveService.archivePastOpenTimes();
+        assertTrue(openTimeService.getOpenTimes(doctorId).isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.SqlStatementCounter;
+import com.blubank.doctorappointment.helper.TestData;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest
+class AsyncReadExecutorTests {
+    @Autowired
+    private AsyncReadExecutor asyncReadExecutor;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void readsPastThePoolAndQueueAreRefusedWith503() throws Exception {
+        AsyncReadExecutor executor = new AsyncReadExecutor();
+        ReflectionTestUtils.setField(executor, "poolSize", 1);
+        ReflectionTestUtils.setField(executor, "queueCapacity", 1);
+        executor.start();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<ResponseEntity<Object>> running = executor.supply(() -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ResponseEntity.ok().build();
+            });
+            CompletableFuture<ResponseEntity<Object>> queued = executor.supply(() -> ResponseEntity.ok().build());
+
+            ResponseEntity<Object> refused = executor.supply(() -> ResponseEntity.ok().build()).getNow(null);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, refused.getStatusCode());
+
+            release.countDown();
+            assertEquals(HttpStatus.OK, running.get(10, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(HttpStatus.OK, queued.get(10, TimeUnit.SECONDS).getStatusCode());
+        } finally {
+            release.countDown();
+            executor.stop();
+        }
+    }
+
+    @Test
+    void statementsOfAnAsyncReadAreAddedToItsRequest() throws Exception {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            asyncReadExecutor.supply(() -> ResponseEntity.ok(openTimeService.getOpenTimes(doctorId)))
+                    .get(10, TimeUnit.SECONDS);
+            asyncReadExecutor.supply(() -> ResponseEntity.ok(openTimeService.getOpenTimes(doctorId)))
+                    .get(10, TimeUnit.SECONDS);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        assertEquals(2, SqlStatementCounter.offThreadUsed(request).getStatements());
+    }
+
+    @Test
+    void aFailedReadCompletesWithItsOwnException() {
+        Throwable failure = asyncReadExecutor.supply(() -> {
+            throw new OpenTimeNotFoundException("Open time not found.");
+        }).handle((response, e) -> e).join();
+
+        assertInstanceOf(OpenTimeNotFoundException.class, failure);
+    }
+}
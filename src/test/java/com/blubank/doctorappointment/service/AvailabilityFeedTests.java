@@ -0,0 +1,161 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AvailabilityFeedTests {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private AvailabilityEventBus availabilityEventBus;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void subscriberGetsASnapshotThenTheChangesOfItsRange() throws Exception {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/patients/"
+                + doctorId + "/opentimes/feed?from=" + date + "&to=" + date).openConnection();
+        connection.setReadTimeout(10_000);
+        assertEquals(200, connection.getResponseCode());
+        BlockingQueue<String> events = readEvents(connection);
+        assertEquals("snapshot", events.poll(10, TimeUnit.SECONDS));
+        assertEquals(1, availabilityEventBus.subscriberCount());
+
+        openTimeService.setAppointmentForPatient(testData.addPatient(), openTimes.get(0).getId());
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(11, 0), date.atTime(11, 30));
+        openTimeService.addOpenTimesForDoctor(doctorId, date.plusDays(1).atTime(9, 0), date.plusDays(1).atTime(9, 30));
+        openTimeService.deleteOpenTimeForDoctor(doctorId, openTimes.get(1).getId());
+        openTimeService.deleteOpenTimesForDoctorBetween(doctorId, date.atTime(11, 0), date.atTime(12, 0));
+
+        assertEquals("taken", events.poll(10, TimeUnit.SECONDS));
+        assertEquals("opened", events.poll(10, TimeUnit.SECONDS));
+        assertEquals("deleted", events.poll(10, TimeUnit.SECONDS));
+        assertEquals("snapshot", events.poll(10, TimeUnit.SECONDS));
+
+        connection.disconnect();
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(13, 0), date.atTime(13, 30));
+        for (int i = 0; i < 50 && availabilityEventBus.subscriberCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, availabilityEventBus.subscriberCount());
+    }
+
+    @Test
+    void invalidRangeIsRefused() throws IOException {
+        LocalDate date = LocalDate.now();
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port
+                + "/api/patients/1/opentimes/feed?from=" + date + "&to=" + date.minusDays(1)).openConnection();
+        assertEquals(400, connection.getResponseCode());
+    }
+
+    @Test
+    void subscribersPastTheLimitAreRefused() throws IOException {
+        int maxSubscribers = (int) ReflectionTestUtils.getField(availabilityEventBus, "maxSubscribers");
+        ReflectionTestUtils.setField(availabilityEventBus, "maxSubscribers", 0);
+        try {
+            LocalDate date = LocalDate.now();
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port
+                    + "/api/patients/1/opentimes/feed?from=" + date + "&to=" + date).openConnection();
+            assertEquals(503, connection.getResponseCode());
+            assertEquals(0, availabilityEventBus.subscriberCount());
+        } finally {
+            ReflectionTestUtils.setField(availabilityEventBus, "maxSubscribers", maxSubscribers);
+        }
+    }
+
+    @Test
+    void aSubscriberThatStoppedReadingIsDroppedAndTheOthersKeepTheirEvents() throws Exception {
+        LocalDate date = LocalDate.now().plusDays(1);
+        Long stalledDoctorId = testData.addDoctor().getId();
+        openTimeService.addOpenTimesForDoctor(stalledDoctorId, date.atStartOfDay(), date.atTime(23, 30));
+        Long doctorId = testData.addDoctor().getId();
+
+        long sendTimeoutMillis = (long) ReflectionTestUtils.getField(availabilityEventBus, "sendTimeoutMillis");
+        ReflectionTestUtils.setField(availabilityEventBus, "sendTimeoutMillis", 200L);
+        HttpURLConnection stalled = feed(stalledDoctorId, date);
+        try {
+            assertEquals(200, stalled.getResponseCode());
+            HttpURLConnection connection = feed(doctorId, date);
+            BlockingQueue<String> events = readEvents(connection);
+            assertEquals("snapshot", events.poll(10, TimeUnit.SECONDS));
+            assertEquals(2, availabilityEventBus.subscriberCount());
+
+            // note: the stalled client never reads, snapshots fill the socket buffers until a send blocks
+            for (int i = 0; i < 2000 && availabilityEventBus.subscriberCount() > 1; i++) {
+                availabilityEventBus.resync(stalledDoctorId, date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+                Thread.sleep(10);
+                availabilityEventBus.dropStalledSubscribers();
+            }
+            assertEquals(1, availabilityEventBus.subscriberCount());
+            assertEquals(1, availabilityEventBus.stalledDrains());
+
+            openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(9, 30));
+            assertEquals("opened", events.poll(10, TimeUnit.SECONDS));
+            connection.disconnect();
+        } finally {
+            ReflectionTestUtils.setField(availabilityEventBus, "sendTimeoutMillis", sendTimeoutMillis);
+            stalled.disconnect();
+        }
+        for (int i = 0; i < 100 && availabilityEventBus.stalledDrains() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, availabilityEventBus.stalledDrains());
+    }
+
+    private HttpURLConnection feed(Long doctorId, LocalDate date) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/patients/"
+                + doctorId + "/opentimes/feed?from=" + date + "&to=" + date).openConnection();
+        connection.setReadTimeout(10_000);
+        return connection;
+    }
+
+    private static BlockingQueue<String> readEvents(HttpURLConnection connection) throws IOException {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        Thread thread = new Thread(() -> {
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith("event:")) {
+                        events.add(line.substring("event:".length()).trim());
+                    }
+                }
+            } catch (IOException e) {
+                events.add("closed");
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return events;
+    }
+}
@@ -0,0 +1,69 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// note: availability of one doctor over ranges of days, from the in-memory index and straight from h2
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityLookupBenchmark {
+    private static final LocalDate FROM_DATE = LocalDate.of(2030, 1, 1);
+
+    @Param({"1", "7", "31"})
+    private int days;
+
+    private ConfigurableApplicationContext context;
+
+    private OpenTimeService openTimeService;
+
+    private OpenTimeRepository openTimeRepository;
+
+    private Long doctorId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        openTimeService = context.getBean(OpenTimeService.class);
+        openTimeRepository = context.getBean(OpenTimeRepository.class);
+
+        doctorId = context.getBean(TestData.class).addDoctor().getId();
+
+        SchedulePublishRequest request = new SchedulePublishRequest();
+        request.setFromDate(FROM_DATE);
+        request.setToDate(FROM_DATE.plusDays(30));
+        request.setDailyStartTime(LocalTime.of(8, 0));
+        request.setDailyEndTime(LocalTime.of(20, 0));
+        openTimeService.publishSchedule(doctorId, request, progress -> {
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<OpenTimeView> fromIndex() {
+        return openTimeService.getOpenTimesForDoctorBetween(doctorId, FROM_DATE, FROM_DATE.plusDays(days - 1));
+    }
+
+    @Benchmark
+    public List<OpenTimeView> fromDatabase() {
+        return openTimeRepository.findViewsByDoctorIdAndStatusInRange(doctorId, OpenTimeStatus.OPEN,
+                FROM_DATE.atStartOfDay(), FROM_DATE.plusDays(days).atStartOfDay());
+    }
+}
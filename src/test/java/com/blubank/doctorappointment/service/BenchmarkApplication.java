@@ -0,0 +1,20 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.DoctorAppointmentApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// note: the application as the jmh benchmarks run it, in-memory h2 and no admin client registration
+final class BenchmarkApplication {
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(DoctorAppointmentApplication.class)
+                .properties("server.port=0",
+                        "spring.boot.admin.client.enabled=false",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+}
@@ -0,0 +1,104 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Patient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// note: one operation is a fresh slot booked by N threads at once, exactly one of them may win
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingContentionBenchmark {
+    @Param({"1", "8", "32"})
+    private int threads;
+
+    @Param({"direct", "sequenced"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+
+    private OpenTimeService openTimeService;
+
+    private BookingService bookingService;
+
+    private ExecutorService executor;
+
+    private Long doctorId;
+
+    private List<Patient> patients;
+
+    private LocalDateTime nextSlotStart = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private Long openTimeId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("app.booking.mode=" + mode);
+        openTimeService = context.getBean(OpenTimeService.class);
+        bookingService = context.getBean(BookingService.class);
+        executor = Executors.newFixedThreadPool(threads);
+
+        TestData testData = context.getBean(TestData.class);
+        doctorId = testData.addDoctor().getId();
+        patients = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            patients.add(testData.addPatient("patient" + i));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void openSlot() {
+        openTimeId = openTimeService.addOpenTimesForDoctor(doctorId, nextSlotStart, nextSlotStart.plusMinutes(30))
+                .get(0).getId();
+        nextSlotStart = nextSlotStart.plusMinutes(30);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public int bookSameSlot() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> attempts = new ArrayList<>(threads);
+        for (Patient patient : patients) {
+            attempts.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingService.book(patient, openTimeId);
+                    return true;
+                } catch (AppointmentExistsException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int booked = 0;
+        for (Future<Boolean> attempt : attempts) {
+            if (attempt.get()) {
+                booked++;
+            }
+        }
+        if (booked != 1) {
+            throw new IllegalStateException(booked + " bookings for one slot.");
+        }
+        return booked;
+    }
+}
@@ -0,0 +1,190 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.blubank.doctorappointment.helper.QueryBudget.assertMaxStatements;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "app.journal.enabled=true")
+class BookingJournalTests {
+    private static final int THREADS = 8;
+
+    private static final int RECORDS_PER_THREAD = 50;
+
+    @Autowired
+    private BookingJournal bookingJournal;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @DynamicPropertySource
+    static void journalProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path journalDir = Files.createTempDirectory("booking-journal");
+        registry.add("app.journal.dir", journalDir::toString);
+        // note: small segments, so concurrent writers also cross segment boundaries
+        registry.add("app.journal.segment-bytes", () -> BookingJournal.RECORD_BYTES * 64);
+    }
+
+    @Test
+    void restartedJournalReplaysTheOpenSlotsAndOnlyReadsThePreloadWindow() throws IOException {
+        int openSlotsBefore = bookingJournal.openSlotCount();
+
+        Long doctorId = testData.addDoctor().getId();
+
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(11, 0));
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(14, 0), date.atTime(15, 0));
+
+        Patient patient = testData.addPatient();
+        openTimeService.setAppointmentForPatient(patient, openTimes.get(0).getId());
+        openTimeService.deleteOpenTimeForDoctor(doctorId, openTimes.get(1).getId());
+        openTimeService.deleteOpenTimesForDoctorBetween(doctorId, date.atTime(14, 0), date.atTime(15, 0));
+
+        int openSlots = openSlotsBefore + openTimes.size() - 2;
+        assertEquals(openSlots, bookingJournal.openSlotCount());
+        bookingJournal.close();
+
+        // note: the preload window, the doctors and the ids of the doctors with templates or day schedules
+        BookingJournal replayed = assertMaxStatements(4, () -> beanFactory.createBean(BookingJournal.class));
+        assertEquals(openSlots, replayed.openSlotCount());
+
+        replayed.snapshot();
+        openTimeRepository.deleteById(openTimes.get(2).getId());
+        replayed.slotDeleted(openTimes.get(2));
+        replayed.close();
+        beanFactory.destroyBean(replayed);
+
+        BookingJournal compacted = assertMaxStatements(4, () -> beanFactory.createBean(BookingJournal.class));
+        assertEquals(openSlots - 1, compacted.openSlotCount());
+        compacted.close();
+        beanFactory.destroyBean(compacted);
+
+        assertEquals(openTimes.size() - 3, openTimeService.getOpenTimesForDoctorOnDay(doctorId, date).size());
+    }
+
+    @Test
+    void changesOfARolledBackTransactionAreUndoneInTheJournal() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+        int openSlots = bookingJournal.openSlotCount();
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(11, 0), date.atTime(12, 0));
+            openTimeService.deleteOpenTimesForDoctorBetween(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+            // note: fails the commit after the journal wrote its records
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit failed");
+                }
+            });
+        }));
+
+        assertEquals(openSlots, bookingJournal.openSlotCount());
+        assertEquals(2, openTimeService.getOpenTimesForDoctorOnDay(doctorId, date).size());
+    }
+
+    @Test
+    void aRestartedJournalTakesTheDbsSlotsForADoctorItDiffersOn() throws IOException {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+        BookingJournal journal = beanFactory.createBean(BookingJournal.class);
+        int openSlots = journal.openSlotCount();
+
+        // note: a delete whose transaction never committed, as left behind by a crash after the records were forced
+        journal.slotDeleted(openTimes.get(0));
+        assertEquals(openSlots - 1, journal.openSlotCount());
+        journal.close();
+        beanFactory.destroyBean(journal);
+
+        BookingJournal restarted = beanFactory.createBean(BookingJournal.class);
+        assertEquals(openSlots, restarted.openSlotCount());
+        restarted.close();
+        beanFactory.destroyBean(restarted);
+    }
+
+    @Test
+    void recordsOfConcurrentWritersAreAllReplayed() throws Exception {
+        Doctor doctor = testData.addDoctor();
+        // note: past the preload window, which a restart would take from the db
+        LocalDateTime start = LocalDate.now().plusDays(60).atTime(9, 0);
+        BookingJournal journal = beanFactory.createBean(BookingJournal.class);
+        int openSlots = journal.openSlotCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            long firstId = -(i + 1L) * RECORDS_PER_THREAD;
+            writers.add(executor.submit(() -> {
+                started.await();
+                for (int j = 0; j < RECORDS_PER_THREAD; j++) {
+                    OpenTime openTime = new OpenTime();
+                    openTime.setId(firstId + j);
+                    openTime.setDoctor(doctor);
+                    openTime.setStartTime(start.plusMinutes(firstId + j));
+                    openTime.setEndTime(start.plusMinutes(firstId + j + 1));
+                    journal.slotsPublished(List.of(openTime));
+                }
+                return null;
+            }));
+        }
+        started.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        assertEquals(openSlots + THREADS * RECORDS_PER_THREAD, journal.openSlotCount());
+        journal.close();
+        beanFactory.destroyBean(journal);
+
+        BookingJournal restarted = beanFactory.createBean(BookingJournal.class);
+        assertEquals(openSlots + THREADS * RECORDS_PER_THREAD, restarted.openSlotCount());
+        restarted.slotsDeleted(doctor.getId(), start.minusMinutes(THREADS * RECORDS_PER_THREAD), start);
+        restarted.close();
+        beanFactory.destroyBean(restarted);
+    }
+}
@@ -0,0 +1,128 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "app.booking.mode=sequenced")
+class BookingSequencerTests {
+    private static final int THREADS = 16;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private BookingSequencer bookingSequencer;
+
+    @Autowired
+    private TestData testData;
+
+    private Doctor doctor;
+
+    private LocalDate date;
+
+    private List<OpenTime> openTimes;
+
+    private List<Patient> patients;
+
+    @BeforeEach
+    void setUp() {
+        doctor = testData.addDoctor();
+
+        date = LocalDate.now().plusDays(1);
+        openTimes = openTimeService.addOpenTimesForDoctor(doctor.getId(), date.atTime(8, 0), date.atTime(16, 0));
+
+        patients = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            patients.add(testData.addPatient("patient" + i));
+        }
+    }
+
+    @Test
+    void concurrentBookingsOfOneSlotHaveOneWinner() throws Exception {
+        Long openTimeId = openTimes.get(0).getId();
+        List<Throwable> failures = bookConcurrently(i -> openTimeId);
+
+        assertEquals(THREADS - 1, failures.size());
+        failures.forEach(failure -> assertInstanceOf(AppointmentExistsException.class, failure));
+        assertEquals(1, appointmentService.getDoctorAppointments(doctor.getId()).size());
+    }
+
+    @Test
+    void concurrentBookingsOfDifferentSlotsAreAllCommitted() throws Exception {
+        List<Throwable> failures = bookConcurrently(i -> openTimes.get(i).getId());
+
+        assertTrue(failures.isEmpty());
+        assertEquals(THREADS, appointmentService.getDoctorAppointments(doctor.getId()).size());
+        assertEquals(openTimes.size() - THREADS,
+                openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), date).size());
+    }
+
+    @Test
+    void timedOutBookingsAreNeitherLostNorPhantom() throws Exception {
+        long timeoutMillis = (long) ReflectionTestUtils.getField(bookingSequencer, "timeoutMillis");
+        ReflectionTestUtils.setField(bookingSequencer, "timeoutMillis", 0L);
+        try {
+            List<Throwable> failures = bookConcurrently(i -> openTimes.get(i).getId());
+
+            failures.forEach(failure -> assertInstanceOf(ConcurrencyException.class, failure));
+            assertEquals(THREADS - failures.size(), appointmentService.getDoctorAppointments(doctor.getId()).size());
+        } finally {
+            ReflectionTestUtils.setField(bookingSequencer, "timeoutMillis", timeoutMillis);
+        }
+    }
+
+    private List<Throwable> bookConcurrently(IntFunction<Long> openTimeIdOf) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> attempts = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Patient patient = patients.get(i);
+            Long openTimeId = openTimeIdOf.apply(i);
+            attempts.add(executor.submit(() -> {
+                start.await();
+                return bookingService.book(patient, openTimeId);
+            }));
+        }
+        start.countDown();
+
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<?> attempt : attempts) {
+            try {
+                attempt.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        executor.shutdown();
+        return failures;
+    }
+}
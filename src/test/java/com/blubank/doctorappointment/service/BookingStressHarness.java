@@ -0,0 +1,228 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.Patient;
+import lombok.Data;
+import lombok.Value;
+import org.springframework.context.ApplicationContext;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// note: in-process load generator for the booking path. the request sequence is generated up front from the seed,
+// so a run is reproducible up to thread interleaving; the workers then race through it from a common start.
+final class BookingStressHarness {
+    enum Operation {BOOK, AVAILABILITY, EARLIEST}
+
+    enum Outcome {SUCCESS, CONFLICT, CONCURRENCY, ERROR}
+
+    // note: every field can be overridden with -Dstress.<field>, e.g. -Dstress.threads=64
+    @Data
+    static class Settings {
+        private int threads = 16;
+        private int doctors = 4;
+        private int slotsPerDoctor = 16;
+        private int patients = 32;
+        private int requests = 2000;
+        private double bookRatio = 0.5;
+        private double availabilityRatio = 0.3;
+        private long seed = 42;
+
+        static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.setThreads(Integer.getInteger("stress.threads", settings.getThreads()));
+            settings.setDoctors(Integer.getInteger("stress.doctors", settings.getDoctors()));
+            settings.setSlotsPerDoctor(Integer.getInteger("stress.slotsPerDoctor", settings.getSlotsPerDoctor()));
+            settings.setPatients(Integer.getInteger("stress.patients", settings.getPatients()));
+            settings.setRequests(Integer.getInteger("stress.requests", settings.getRequests()));
+            settings.setBookRatio(Double.parseDouble(
+                    System.getProperty("stress.bookRatio", "" + settings.getBookRatio())));
+            settings.setAvailabilityRatio(Double.parseDouble(
+                    System.getProperty("stress.availabilityRatio", "" + settings.getAvailabilityRatio())));
+            settings.setSeed(Long.getLong("stress.seed", settings.getSeed()));
+            return settings;
+        }
+    }
+
+    @Value
+    static class Report {
+        Settings settings;
+        List<Long> openTimeIds;
+        Duration elapsed;
+        Map<Operation, long[]> latencies;
+        Map<Outcome, Long> bookings;
+        List<RuntimeException> errors;
+
+        double throughput() {
+            return settings.getRequests() / (elapsed.toNanos() / 1e9);
+        }
+
+        long bookings(Outcome outcome) {
+            return bookings.getOrDefault(outcome, 0L);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(String.format(
+                    "threads=%d doctors=%d slots=%d requests=%d elapsed=%dms throughput=%.1f ops/s%n",
+                    settings.getThreads(), settings.getDoctors(), openTimeIds.size(), settings.getRequests(),
+                    elapsed.toMillis(), throughput()));
+            latencies.forEach((operation, nanos) -> report.append(String.format(
+                    "  %-12s n=%-6d p50=%.2fms p99=%.2fms max=%.2fms%n", operation, nanos.length,
+                    percentile(nanos, 0.50) / 1e6, percentile(nanos, 0.99) / 1e6,
+                    nanos.length == 0 ? 0 : nanos[nanos.length - 1] / 1e6)));
+            report.append("  bookings ").append(bookings);
+            errors.forEach(error -> report.append(String.format("%n  error %s", error)));
+            return report.toString();
+        }
+
+        private static long percentile(long[] sortedNanos, double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            return sortedNanos[Math.max(0, (int) Math.ceil(percentile * sortedNanos.length) - 1)];
+        }
+    }
+
+    private final BookingService bookingService;
+    private final OpenTimeService openTimeService;
+    private final TestData testData;
+    private final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+
+    BookingStressHarness(ApplicationContext context) {
+        bookingService = context.getBean(BookingService.class);
+        openTimeService = context.getBean(OpenTimeService.class);
+        testData = context.getBean(TestData.class);
+    }
+
+    Report run(Settings settings) throws InterruptedException {
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<Long> doctorIds = new ArrayList<>();
+        List<List<OpenTime>> openTimes = new ArrayList<>();
+        for (int i = 0; i < settings.getDoctors(); i++) {
+            Doctor doctor = testData.addDoctor("stress-doctor-" + i);
+            doctorIds.add(doctor.getId());
+            openTimes.add(openTimeService.addOpenTimesForDoctor(doctor.getId(), date.atTime(0, 0),
+                    date.atTime(0, 0).plusMinutes(30L * settings.getSlotsPerDoctor())));
+        }
+
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < settings.getPatients(); i++) {
+            patients.add(testData.addPatient("stress-patient-" + i));
+        }
+
+        int requests = settings.getRequests();
+        Operation[] operations = new Operation[requests];
+        int[] doctorIndexes = new int[requests];
+        int[] slotIndexes = new int[requests];
+        int[] patientIndexes = new int[requests];
+        Random random = new Random(settings.getSeed());
+        for (int i = 0; i < requests; i++) {
+            double draw = random.nextDouble();
+            operations[i] = draw < settings.getBookRatio() ? Operation.BOOK
+                    : draw < settings.getBookRatio() + settings.getAvailabilityRatio() ? Operation.AVAILABILITY
+                    : Operation.EARLIEST;
+            doctorIndexes[i] = random.nextInt(settings.getDoctors());
+            slotIndexes[i] = random.nextInt(settings.getSlotsPerDoctor());
+            patientIndexes[i] = random.nextInt(settings.getPatients());
+        }
+
+        long[] latencies = new long[requests];
+        Map<Outcome, LongAdder> bookings = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            bookings.put(outcome, new LongAdder());
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(settings.getThreads());
+        for (int t = 0; t < settings.getThreads(); t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long startedAt = System.nanoTime();
+                    Long doctorId = doctorIds.get(doctorIndexes[i]);
+                    switch (operations[i]) {
+                        case BOOK:
+                            Long openTimeId = openTimes.get(doctorIndexes[i]).get(slotIndexes[i]).getId();
+                            bookings.get(book(patients.get(patientIndexes[i]), openTimeId)).increment();
+                            break;
+                        case AVAILABILITY:
+                            openTimeService.getOpenTimesForDoctorOnDay(doctorId, date);
+                            break;
+                        default:
+                            openTimeService.getEarliestOpenTimes(List.of(doctorId), date, date, 5);
+                    }
+                    latencies[i] = System.nanoTime() - startedAt;
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Stress run did not finish in time.");
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+
+        Map<Operation, long[]> latenciesByOperation = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            long[] nanos = new long[requests];
+            int count = 0;
+            for (int i = 0; i < requests; i++) {
+                if (operations[i] == operation) {
+                    nanos[count++] = latencies[i];
+                }
+            }
+            nanos = Arrays.copyOf(nanos, count);
+            Arrays.sort(nanos);
+            latenciesByOperation.put(operation, nanos);
+        }
+
+        List<Long> openTimeIds = new ArrayList<>();
+        openTimes.forEach(doctorOpenTimes -> doctorOpenTimes.forEach(openTime -> openTimeIds.add(openTime.getId())));
+        Map<Outcome, Long> bookingCounts = new EnumMap<>(Outcome.class);
+        bookings.forEach((outcome, count) -> bookingCounts.put(outcome, count.sum()));
+        return new Report(settings, openTimeIds, elapsed, latenciesByOperation, bookingCounts,
+                new ArrayList<>(errors));
+    }
+
+    private Outcome book(Patient patient, Long openTimeId) {
+        try {
+            bookingService.book(patient.getName(), patient.getPhoneNumber(), openTimeId);
+            return Outcome.SUCCESS;
+        } catch (AppointmentExistsException e) {
+            return Outcome.CONFLICT;
+        } catch (ConcurrencyException e) {
+            return Outcome.CONCURRENCY;
+        } catch (RuntimeException e) {
+            errors.add(e);
+            return Outcome.ERROR;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.service.BookingStressHarness.Outcome;
+import com.blubank.doctorappointment.service.BookingStressHarness.Report;
+import com.blubank.doctorappointment.service.BookingStressHarness.Settings;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// note: sizes, request mix and booking mode come from system properties, e.g.
+// mvn test -Dtest=BookingStressTests -Dstress.threads=64 -Dstress.requests=20000 -Dapp.booking.mode=sequenced
+@Slf4j
+@SpringBootTest
+class BookingStressTests {
+    @Autowired
+    private ApplicationContext context;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Test
+    void oneOpenTimeHammeredByAllThreadsIsBookedOnce() throws InterruptedException {
+        Settings settings = Settings.fromSystemProperties();
+        settings.setDoctors(1);
+        settings.setSlotsPerDoctor(1);
+        settings.setRequests(settings.getThreads() * 8);
+        settings.setBookRatio(1);
+
+        Report report = new BookingStressHarness(context).run(settings);
+
+        log.info("Stress run finished: {}", report);
+        assertEquals(1, report.bookings(Outcome.SUCCESS));
+        assertEquals(0, report.bookings(Outcome.ERROR), () -> "failed bookings: " + report.getErrors());
+        assertAtMostOneAppointmentPerOpenTime(report);
+    }
+
+    @Test
+    void mixedLoadKeepsAtMostOneAppointmentPerOpenTime() throws InterruptedException {
+        Report report = new BookingStressHarness(context).run(Settings.fromSystemProperties());
+
+        log.info("Stress run finished: {}", report);
+        assertEquals(0, report.bookings(Outcome.ERROR), () -> "failed bookings: " + report.getErrors());
+        assertAtMostOneAppointmentPerOpenTime(report);
+    }
+
+    private void assertAtMostOneAppointmentPerOpenTime(Report report) {
+        List<Long> openTimeIds = report.getOpenTimeIds();
+        List<?> doubleBooked = entityManager.createQuery("select a.openTime.id from Appointment a " +
+                        "where a.openTime.id in :ids group by a.openTime.id having count(a) > 1")
+                .setParameter("ids", openTimeIds)
+                .getResultList();
+        assertEquals(List.of(), doubleBooked, "open times with more than one appointment");
+
+        Long appointments = entityManager.createQuery(
+                        "select count(a) from Appointment a where a.openTime.id in :ids", Long.class)
+                .setParameter("ids", openTimeIds)
+                .getSingleResult();
+        Long takenOpenTimes = entityManager.createQuery(
+                        "select count(o) from OpenTime o where o.id in :ids and o.status = :status", Long.class)
+                .setParameter("ids", openTimeIds)
+                .setParameter("status", OpenTimeStatus.TAKEN)
+                .getSingleResult();
+        assertEquals(report.bookings(Outcome.SUCCESS), appointments);
+        assertEquals(appointments, takenOpenTimes);
+    }
+}
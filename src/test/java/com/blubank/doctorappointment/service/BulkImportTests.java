@@ -0,0 +1,121 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.ImportRowError;
+import com.blubank.doctorappointment.dto.ImportSummary;
+import com.blubank.doctorappointment.helper.ImportRowReader;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Patient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "app.import.commit-size=2")
+class BulkImportTests {
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private TestData testData;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Test
+    void patientsAreDeduplicatedOnPhoneNumberAndNameAndBadRowsAreReported() {
+        String prefix = "0917" + (System.nanoTime() % 1_000_000);
+        testData.addPatient("existing", prefix + "1");
+
+        List<ImportRowError> errors = new ArrayList<>();
+        ImportSummary summary = importRows(BulkImportService.Kind.PATIENTS, ImportRowReader.Format.CSV, errors,
+                "name,phoneNumber",
+                "\"Doe, Jane\"," + prefix + "2",
+                "existing," + prefix + "1",
+                "",
+                "John," + prefix + "3",
+                "John," + prefix + "3",
+                "Johnny," + prefix + "3",
+                "missing phone,",
+                "\"unterminated," + prefix + "4",
+                "Ann," + prefix + "5");
+
+        assertEquals(8, summary.getRows());
+        assertEquals(4, summary.getImported());
+        assertEquals(2, summary.getDuplicates());
+        assertEquals(2, summary.getRejected());
+        assertEquals(Map.of(8, "Missing phoneNumber.", 9, "Unterminated quoted field."), messagesByLine(errors));
+        assertEquals("Doe, Jane", entityManager.createQuery(
+                        "select p.name from Patient p where p.phoneNumber = :phoneNumber", String.class)
+                .setParameter("phoneNumber", prefix + "2")
+                .getSingleResult());
+        assertEquals(5L, entityManager.createQuery(
+                        "select count(p) from Patient p where p.phoneNumber like :prefix", Long.class)
+                .setParameter("prefix", prefix + "_")
+                .getSingleResult());
+    }
+
+    @Test
+    void schedulesOpenSlotsAndSkipInvalidRows() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(3);
+
+        List<ImportRowError> errors = new ArrayList<>();
+        ImportSummary summary = importRows(BulkImportService.Kind.SCHEDULES, ImportRowReader.Format.NDJSON, errors,
+                "{\"doctorId\": " + doctorId + ", \"date\": \"" + date + "\", \"startTime\": \"09:00\", "
+                        + "\"endTime\": \"11:00\"}",
+                "{\"doctorId\": " + doctorId + ", \"date\": \"" + date.plusDays(1) + "\", \"startTime\": \"09:00\", "
+                        + "\"endTime\": \"10:00\", \"slotMinutes\": 15}",
+                "{\"doctorId\": " + doctorId + ", \"date\": \"" + date + "\", \"startTime\": \"12:00\", "
+                        + "\"endTime\": \"11:00\"}",
+                "{\"doctorId\": -1, \"date\": \"" + date + "\", \"startTime\": \"09:00\", \"endTime\": \"10:00\"}",
+                "not json");
+
+        assertEquals(5, summary.getRows());
+        assertEquals(2, summary.getImported());
+        assertEquals(3, summary.getRejected());
+        assertEquals(Set.of(3, 4, 5), messagesByLine(errors).keySet());
+        assertEquals(4, openTimeService.getOpenTimesForDoctorOnDay(doctorId, date).size());
+        assertEquals(4, openTimeService.getOpenTimesForDoctorOnDay(doctorId, date.plusDays(1)).size());
+    }
+
+    @Test
+    void doctorsAreImportedFromNdjson() {
+        int doctorsBefore = doctorService.getAllDoctors().size();
+        List<ImportRowError> errors = new ArrayList<>();
+        ImportSummary summary = importRows(BulkImportService.Kind.DOCTORS, ImportRowReader.Format.NDJSON, errors,
+                "{\"name\": \"first\"}", "{\"name\": \"second\"}", "{\"name\": null}", "{\"name\": \"third\"}");
+
+        assertEquals(3, summary.getImported());
+        assertEquals(1, errors.size());
+        assertEquals(doctorsBefore + 3, doctorService.getAllDoctors().size());
+    }
+
+    // note: rows that cannot be read are reported right away, the others when their chunk is written
+    private static Map<Integer, String> messagesByLine(List<ImportRowError> errors) {
+        return errors.stream().collect(Collectors.toMap(ImportRowError::getLine, ImportRowError::getMessage));
+    }
+
+    private ImportSummary importRows(BulkImportService.Kind kind, ImportRowReader.Format format,
+                                     List<ImportRowError> errors, String... lines) {
+        byte[] input = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return bulkImportService.importRows(kind, format, new ByteArrayInputStream(input), errors::add);
+    }
+}
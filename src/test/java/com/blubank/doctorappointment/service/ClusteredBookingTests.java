@@ -0,0 +1,181 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.OpenTimeRangeDeleteResult;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SlotBooking;
+import com.blubank.doctorappointment.dto.SlotKey;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.SLOT_BOOKING_MAP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// note: a second member is started next to the application's one, so slot partitions are split between two
+// members of an isolated cluster in this jvm
+@SpringBootTest(properties = {"app.booking.mode=clustered", "app.hazelcast.cluster-name=clustered-booking-tests",
+        "app.hazelcast.port=5801", "app.hazelcast.members=127.0.0.1:5801,127.0.0.1:5802"})
+class ClusteredBookingTests {
+    private static final int THREADS = 8;
+
+    @Autowired
+    private Config hazelcastConfig;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private TestData testData;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private HazelcastInstance secondMember;
+
+    private Long doctorId;
+
+    private List<OpenTime> openTimes;
+
+    @BeforeEach
+    void setUp() {
+        secondMember = Hazelcast.newHazelcastInstance(hazelcastConfig);
+        assertEquals(2, hazelcastInstance.getCluster().getMembers().size());
+
+        doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        openTimes = openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(11, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        secondMember.shutdown();
+    }
+
+    @Test
+    void concurrentBookingsOfOneSlotAcrossMembersBookItOnce() throws Exception {
+        Long openTimeId = openTimes.get(0).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Patient patient = newPatient(i);
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingService.book(patient, openTimeId);
+                    return true;
+                } catch (AppointmentExistsException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int booked = 0;
+        for (Future<Boolean> result : results) {
+            booked += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+        assertEquals(1, booked);
+
+        IMap<SlotKey, SlotBooking> slots = secondMember.getMap(SLOT_BOOKING_MAP);
+        assertEquals(OpenTimeStatus.TAKEN, slots.get(new SlotKey(openTimeId, doctorId)).getStatus());
+        awaitAppointments(openTimeId, 1);
+        assertEquals(OpenTimeStatus.TAKEN, entityManager.find(OpenTime.class, openTimeId).getStatus());
+    }
+
+    @Test
+    void slotsOfADoctorShareOnePartitionAndPendingBookingsBlockDeletion() {
+        assertEquals(partitionOf(openTimes.get(0)), partitionOf(openTimes.get(openTimes.size() - 1)));
+
+        Long openTimeId = openTimes.get(1).getId();
+        bookingService.book(newPatient(0), openTimeId);
+
+        assertThrows(AppointmentExistsException.class,
+                () -> openTimeService.deleteOpenTimeForDoctor(doctorId, openTimeId));
+
+        Long deletedId = openTimes.get(2).getId();
+        openTimeService.deleteOpenTimeForDoctor(doctorId, deletedId);
+        assertThrows(OpenTimeNotFoundException.class, () -> bookingService.book(newPatient(1), deletedId));
+    }
+
+    @Test
+    void aRangeDeleteLeavesTombstonesThatAFlushDoesNotBook() throws InterruptedException {
+        Long pendingId = openTimes.get(0).getId();
+        bookingService.book(newPatient(0), pendingId);
+
+        // note: the other slots of the range were never loaded into the map
+        LocalDateTime from = openTimes.get(0).getStartTime();
+        LocalDateTime to = openTimes.get(openTimes.size() - 1).getEndTime();
+        OpenTimeRangeDeleteResult result = openTimeService.deleteOpenTimesForDoctorBetween(doctorId, from, to);
+        assertEquals(openTimes.size() - 1, result.getDeletedOpenTimes());
+        assertEquals(List.of(pendingId), result.getSkippedTakenOpenTimes().stream()
+                .map(OpenTimeView::getId)
+                .collect(Collectors.toList()));
+
+        Long deletedId = openTimes.get(1).getId();
+        IMap<SlotKey, SlotBooking> slots = secondMember.getMap(SLOT_BOOKING_MAP);
+        assertEquals(OpenTimeStatus.DELETED, slots.get(new SlotKey(deletedId, doctorId)).getStatus());
+        assertThrows(OpenTimeNotFoundException.class, () -> bookingService.book(newPatient(1), deletedId));
+
+        slots.flush();
+        awaitAppointments(pendingId, 1);
+        assertEquals(0L, appointmentCount(deletedId));
+        assertNull(entityManager.find(OpenTime.class, deletedId));
+    }
+
+    private void awaitAppointments(Long openTimeId, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (appointmentCount(openTimeId) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, appointmentCount(openTimeId));
+    }
+
+    private long appointmentCount(Long openTimeId) {
+        return entityManager.createQuery("select count(a) from Appointment a where a.openTime.id = :id", Long.class)
+                .setParameter("id", openTimeId)
+                .getSingleResult();
+    }
+
+    private int partitionOf(OpenTime openTime) {
+        return secondMember.getPartitionService()
+                .getPartition(new SlotKey(openTime.getId(), doctorId)).getPartitionId();
+    }
+
+    private Patient newPatient(int index) {
+        return testData.addPatient("patient" + index);
+    }
+}
@@ -0,0 +1,111 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.blubank.doctorappointment.helper.QueryBudget.assertMaxStatements;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConditionalReadTests {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private DayBodyCache dayBodyCache;
+
+    @Autowired
+    private TestData testData;
+
+    private Long doctorId;
+
+    private LocalDate date;
+
+    private List<OpenTime> openTimes;
+
+    @BeforeEach
+    void setUp() {
+        doctorId = testData.addDoctor().getId();
+        date = LocalDate.now().plusDays(1);
+        openTimes = openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(11, 0));
+    }
+
+    @Test
+    void unchangedDayIsAnsweredWithoutReadingItAgain() throws Exception {
+        String dayUrl = "/api/patients/" + doctorId + "/opentimes/" + date;
+        MvcResult first = perform(get(dayUrl));
+        assertEquals(200, first.getResponse().getStatus());
+        String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(eTag.startsWith("\""));
+        int cachedDays = dayBodyCache.size();
+
+        MvcResult notModified =
+                assertMaxStatements(0, () -> perform(get(dayUrl).header(HttpHeaders.IF_NONE_MATCH, eTag)));
+        assertEquals(304, notModified.getResponse().getStatus());
+        assertEquals(0, notModified.getResponse().getContentAsByteArray().length);
+
+        MvcResult cached = assertMaxStatements(0, () -> perform(get(dayUrl)));
+        assertEquals(eTag, cached.getResponse().getHeader(HttpHeaders.ETAG));
+        assertArrayEquals(first.getResponse().getContentAsByteArray(), cached.getResponse().getContentAsByteArray());
+        assertEquals(cachedDays, dayBodyCache.size());
+
+        openTimeService.setAppointmentForPatient(testData.addPatient(), openTimes.get(0).getId());
+
+        MvcResult changed = perform(get(dayUrl).header(HttpHeaders.IF_NONE_MATCH, eTag));
+        assertEquals(200, changed.getResponse().getStatus());
+        assertNotEquals(eTag, changed.getResponse().getHeader(HttpHeaders.ETAG));
+        assertTrue(changed.getResponse().getContentAsString().length()
+                < first.getResponse().getContentAsString().length());
+    }
+
+    @Test
+    void rangeAndDoctorReadsChangeTheirETagOnWrites() throws Exception {
+        String rangeUrl = "/api/patients/" + doctorId + "/opentimes?from=" + date + "&to=" + date.plusDays(2);
+        String appointmentsUrl = "/api/doctors/" + doctorId + "/appointments";
+        String rangeETag = perform(get(rangeUrl)).getResponse().getHeader(HttpHeaders.ETAG);
+        String appointmentsETag = perform(get(appointmentsUrl)).getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(304, perform(get(rangeUrl).header(HttpHeaders.IF_NONE_MATCH, rangeETag))
+                .getResponse().getStatus());
+        assertEquals(304, perform(get(appointmentsUrl).header(HttpHeaders.IF_NONE_MATCH, "W/" + appointmentsETag))
+                .getResponse().getStatus());
+
+        openTimeService.addOpenTimesForDoctor(doctorId, date.plusDays(2).atTime(9, 0), date.plusDays(2).atTime(10, 0));
+
+        assertEquals(200, perform(get(rangeUrl).header(HttpHeaders.IF_NONE_MATCH, rangeETag))
+                .getResponse().getStatus());
+        assertEquals(200, perform(get(appointmentsUrl).header(HttpHeaders.IF_NONE_MATCH, appointmentsETag))
+                .getResponse().getStatus());
+        assertEquals(400, perform(get("/api/patients/" + doctorId + "/opentimes?from=" + date
+                + "&to=" + date.minusDays(1))).getResponse().getStatus());
+    }
+
+    private MvcResult perform(RequestBuilder request) {
+        try {
+            MvcResult result = mockMvc.perform(request).andReturn();
+            return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)).andReturn() : result;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
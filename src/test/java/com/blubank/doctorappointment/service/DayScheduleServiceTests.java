@@ -0,0 +1,169 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.ConcurrencyException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.DoctorDayScheduleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class DayScheduleServiceTests {
+    private static final int THREADS = 8;
+
+    @Autowired
+    private DayScheduleService dayScheduleService;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private DoctorDayScheduleRepository doctorDayScheduleRepository;
+
+    @Autowired
+    private TestData testData;
+
+    private Long doctorId;
+
+    private LocalDate monday;
+
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        doctorId = testData.addDoctor().getId();
+
+        monday = LocalDate.now().plusWeeks(1).with(DayOfWeek.MONDAY);
+        SchedulePublishRequest request = new SchedulePublishRequest();
+        request.setFromDate(monday);
+        request.setToDate(monday.plusDays(6));
+        request.setDailyStartTime(LocalTime.of(9, 0));
+        request.setDailyEndTime(LocalTime.of(17, 0));
+        request.setExcludedDaysOfWeek(Set.of(DayOfWeek.FRIDAY));
+        assertEquals(6 * 16, dayScheduleService.publish(doctorId, request));
+
+        patient = testData.addPatient();
+    }
+
+    @Test
+    void oneRowPerDoctorDayAndOpenTimesAreMaterializedOnRead() {
+        assertEquals(6, doctorDayScheduleRepository.findByDoctorIdInRange(doctorId, monday, monday.plusDays(6)).size());
+
+        List<OpenTimeView> openTimes = dayScheduleService.getOpenTimes(doctorId, monday, monday);
+        assertEquals(16, openTimes.size());
+        assertEquals(monday.atTime(9, 0), openTimes.get(0).getStartTime());
+        assertEquals(monday.atTime(17, 0), openTimes.get(15).getEndTime());
+    }
+
+    @Test
+    void bookingTakesTheSlotAndMaterializesItsOpenTime() {
+        LocalDateTime startTime = monday.atTime(10, 0);
+
+        Appointment appointment = dayScheduleService.book(patient, doctorId, startTime);
+
+        assertEquals(OpenTimeStatus.TAKEN, appointment.getOpenTime().getStatus());
+        assertEquals(startTime, appointment.getOpenTime().getStartTime());
+        assertThrows(AppointmentExistsException.class, () -> dayScheduleService.book(patient, doctorId, startTime));
+        assertEquals(15, dayScheduleService.getOpenTimes(doctorId, monday, monday).size());
+        assertEquals(List.of(appointment.getId()), appointmentService.getDoctorAppointments(doctorId).stream()
+                .map(AppointmentView::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void bookingChangesTheVersionOfItsDayOnly() {
+        long bookedDay = doctorDayVersions.dayVersion(doctorId, monday);
+        long otherDay = doctorDayVersions.dayVersion(doctorId, monday.plusDays(1));
+
+        dayScheduleService.book(patient, doctorId, monday.atTime(10, 0));
+
+        assertNotEquals(bookedDay, doctorDayVersions.dayVersion(doctorId, monday));
+        assertEquals(otherDay, doctorDayVersions.dayVersion(doctorId, monday.plusDays(1)));
+    }
+
+    @Test
+    void concurrentBookingsOfOneSlotHaveExactlyOneWinner() throws Exception {
+        LocalDateTime startTime = monday.atTime(9, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    dayScheduleService.book(patient, doctorId, startTime);
+                    return true;
+                } catch (AppointmentExistsException | ConcurrencyException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int booked = 0;
+        for (Future<Boolean> result : results) {
+            booked += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, booked);
+        assertEquals(15, dayScheduleService.getOpenTimes(doctorId, monday, monday).size());
+        assertEquals(1, appointmentService.getDoctorAppointments(doctorId).size());
+    }
+
+    @Test
+    void openDaySlotsAreAvailableAndBlockTheOtherWriters() {
+        List<OpenTimeView> openTimes = openTimeService.getOpenTimesForDoctorOnDay(doctorId, monday);
+        assertEquals(16, openTimes.size());
+        assertNull(openTimes.get(0).getId());
+        assertEquals(monday.atTime(9, 0), openTimeService.getEarliestOpenTimes(
+                List.of(doctorId), monday, monday, 1).get(0).getStartTime());
+
+        assertEquals(2, openTimeService.addOpenTimesForDoctor(doctorId, monday.atTime(8, 0), monday.atTime(10, 0))
+                .size());
+        assertEquals(18, openTimeService.getOpenTimesForDoctorOnDay(doctorId, monday).size());
+
+        dayScheduleService.book(patient, doctorId, monday.atTime(9, 0));
+        assertEquals(17, openTimeService.getOpenTimesForDoctorOnDay(doctorId, monday).size());
+    }
+
+    @Test
+    void pastDaySchedulesAreDeleted() {
+        dayScheduleService.deleteDaysBefore(monday.plusDays(2));
+
+        assertEquals(4, doctorDayScheduleRepository.findByDoctorIdInRange(doctorId, monday, monday.plusDays(6)).size());
+        assertTrue(openTimeService.getOpenTimesForDoctorOnDay(doctorId, monday).isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ListQueryTests {
+    private static final LocalDate DATE = LocalDate.of(2031, 3, 3);
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void openTimePagesFollowTheCursorWithAndWithoutAStatus() {
+        Long doctorId = testData.addDoctor().getId();
+        List<Long> openTimes = openTimeService.addOpenTimesForDoctor(doctorId, DATE.atTime(9, 0), DATE.atTime(12, 0))
+                .stream().map(OpenTime::getId).collect(Collectors.toList());
+        openTimeService.setAppointmentForPatient(testData.addPatient(), openTimes.get(1));
+        openTimeService.setAppointmentForPatient(testData.addPatient(), openTimes.get(4));
+
+        ListQuery query = new ListQuery();
+        query.setLimit(4);
+        assertEquals(openTimes, ids(allPages(doctorId, query)));
+
+        query.setStatus(OpenTimeStatus.TAKEN);
+        assertEquals(List.of(openTimes.get(1), openTimes.get(4)), ids(allPages(doctorId, query)));
+
+        query.setStatus(OpenTimeStatus.OPEN);
+        query.setFrom(DATE.atTime(10, 0));
+        query.setTo(DATE.atTime(11, 30));
+        assertEquals(List.of(openTimes.get(2), openTimes.get(3)), ids(allPages(doctorId, query)));
+
+        List<OpenTimeView> streamed = new ArrayList<>();
+        openTimeService.streamOpenTimes(doctorId, query, streamed::add);
+        assertEquals(List.of(openTimes.get(2), openTimes.get(3)), ids(streamed));
+    }
+
+    @Test
+    void doctorPagesAreFilteredByTheirOpenTimes() {
+        Long withOpenSlots = testData.addDoctor().getId();
+        openTimeService.addOpenTimesForDoctor(withOpenSlots, DATE.atTime(9, 0), DATE.atTime(10, 0));
+        Long fullyBooked = testData.addDoctor().getId();
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(fullyBooked, DATE.atTime(9, 0), DATE.atTime(9, 30));
+        openTimeService.setAppointmentForPatient(testData.addPatient(), openTimes.get(0).getId());
+        Long withoutSlots = testData.addDoctor().getId();
+
+        ListQuery query = new ListQuery();
+        query.setFrom(DATE.atStartOfDay());
+        query.setTo(DATE.plusDays(1).atStartOfDay());
+        List<Long> inRange = doctorIds(query);
+        assertTrue(inRange.containsAll(List.of(withOpenSlots, fullyBooked)));
+        assertFalse(inRange.contains(withoutSlots));
+
+        query.setStatus(OpenTimeStatus.OPEN);
+        List<Long> open = doctorIds(query);
+        assertTrue(open.contains(withOpenSlots));
+        assertFalse(open.contains(fullyBooked));
+
+        query.setFrom(DATE.plusDays(1).atStartOfDay());
+        query.setTo(null);
+        assertFalse(doctorIds(query).contains(withOpenSlots));
+
+        ListQuery unfiltered = new ListQuery();
+        unfiltered.setLimit(500);
+        assertTrue(doctorIds(unfiltered).contains(withoutSlots));
+    }
+
+    private List<OpenTimeView> allPages(Long doctorId, ListQuery query) {
+        List<OpenTimeView> openTimes = new ArrayList<>();
+        query.setCursor(null);
+        do {
+            CursorPage<OpenTimeView> page = openTimeService.getOpenTimesPage(doctorId, query);
+            openTimes.addAll(page.getItems());
+            query.setCursor(page.getNextCursor());
+        } while (query.getCursor() != null);
+        return openTimes;
+    }
+
+    private List<Long> doctorIds(ListQuery query) {
+        List<Long> doctorIds = new ArrayList<>();
+        query.setCursor(null);
+        do {
+            CursorPage<Doctor> page = doctorService.getDoctorsPage(query);
+            page.getItems().forEach(doctor -> doctorIds.add(doctor.getId()));
+            query.setCursor(page.getNextCursor());
+        } while (query.getCursor() != null);
+        return doctorIds;
+    }
+
+    private static List<Long> ids(List<OpenTimeView> openTimes) {
+        return openTimes.stream().map(OpenTimeView::getId).collect(Collectors.toList());
+    }
+}
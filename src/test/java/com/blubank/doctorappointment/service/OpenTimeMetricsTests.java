@@ -0,0 +1,65 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.TestData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DELETION_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.GENERATION_OPERATION;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_FAILURES_METRIC;
+import static com.blubank.doctorappointment.helper.AppConstants.OPENTIME_OPERATIONS_METRIC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class OpenTimeMetricsTests {
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void timedOperationsAreRecordedOnOneTimerPerOutcome() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+        Timer generation = timer(GENERATION_OPERATION, OpenTimeMetrics.SUCCESS);
+        long generations = generation.count();
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(11, 0), date.atTime(12, 0));
+        assertEquals(generations + 1, generation.count());
+        assertSame(generation, timer(GENERATION_OPERATION, OpenTimeMetrics.SUCCESS));
+
+        double notFound = failures(DELETION_OPERATION, OpenTimeMetrics.NOT_FOUND);
+        Timer deletion = timer(DELETION_OPERATION, OpenTimeMetrics.NOT_FOUND);
+        long deletions = deletion == null ? 0 : deletion.count();
+        assertThrows(OpenTimeNotFoundException.class, () -> openTimeService.deleteOpenTimeForDoctor(doctorId, -1L));
+        assertEquals(deletions + 1, timer(DELETION_OPERATION, OpenTimeMetrics.NOT_FOUND).count());
+        assertEquals(notFound + 1, failures(DELETION_OPERATION, OpenTimeMetrics.NOT_FOUND));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return meterRegistry.find(OPENTIME_OPERATIONS_METRIC)
+                .tags("operation", operation, "outcome", outcome)
+                .timer();
+    }
+
+    private double failures(String operation, String outcome) {
+        Counter counter = meterRegistry.find(OPENTIME_FAILURES_METRIC)
+                .tags("operation", operation, "outcome", outcome)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,233 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.AppointmentView;
+import com.blubank.doctorappointment.dto.OpenTimeRangeDeleteResult;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.SchedulePublishProgress;
+import com.blubank.doctorappointment.dto.SchedulePublishRequest;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.DoctorNotFoundException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import com.blubank.doctorappointment.repository.OpenTimeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.QueryBudget.assertMaxStatements;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class OpenTimeServiceTests {
+    private static final int THREADS = 8;
+
+    private static final int PUBLISHED_DAYS = 14;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private OpenTimeRepository openTimeRepository;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TestData testData;
+
+    private Doctor doctor;
+
+    private LocalDate date;
+
+    private List<OpenTime> openTimes;
+
+    @BeforeEach
+    void setUp() {
+        doctor = testData.addDoctor();
+
+        date = LocalDate.now().plusDays(1);
+        openTimes = openTimeService.addOpenTimesForDoctor(doctor.getId(), date.atTime(8, 0), date.atTime(12, 0));
+    }
+
+    @Test
+    void concurrentBookingsOfOneOpenTimeLoseNoUpdate() throws Exception {
+        Long openTimeId = openTimes.get(0).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> attempts = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Patient added = testData.addPatient("patient" + i);
+            attempts.add(executor.submit(() -> {
+                start.await();
+                return openTimeService.setAppointmentForPatient(added, openTimeId);
+            }));
+        }
+        start.countDown();
+
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<?> attempt : attempts) {
+            try {
+                attempt.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(THREADS - 1, failures.size());
+        failures.forEach(failure -> assertInstanceOf(AppointmentExistsException.class, failure));
+        assertEquals(1, appointmentService.getDoctorAppointments(doctor.getId()).size());
+        assertEquals(OpenTimeStatus.TAKEN, openTimeRepository.findById(openTimeId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void statusUpdateIsSeenByOpenTimesLoadedInTheSameTransaction() {
+        Long openTimeId = openTimes.get(1).getId();
+        long version = openTimes.get(1).getVersion();
+
+        OpenTime reloaded = new TransactionTemplate(transactionManager).execute(status -> {
+            OpenTime loaded = openTimeRepository.findById(openTimeId).orElseThrow();
+            assertEquals(OpenTimeStatus.OPEN, loaded.getStatus());
+            assertEquals(1, openTimeRepository.updateStatusIfCurrent(
+                    openTimeId, OpenTimeStatus.OPEN, OpenTimeStatus.TAKEN));
+            return openTimeRepository.findById(openTimeId).orElseThrow();
+        });
+
+        assertEquals(OpenTimeStatus.TAKEN, reloaded.getStatus());
+        assertEquals(version + 1, reloaded.getVersion());
+    }
+
+    @Test
+    void rangeDeleteRemovesTheOpenTimesAndReportsTheTakenOnes() {
+        Patient patient = testData.addPatient();
+        Long takenId = openTimes.get(2).getId();
+        openTimeService.setAppointmentForPatient(patient, takenId);
+
+        OpenTimeRangeDeleteResult result = openTimeService.deleteOpenTimesForDoctorBetween(
+                doctor.getId(), date.atTime(8, 0), date.atTime(10, 0));
+
+        assertEquals(3, result.getDeletedOpenTimes());
+        assertEquals(List.of(takenId), result.getSkippedTakenOpenTimes().stream()
+                .map(OpenTimeView::getId).collect(Collectors.toList()));
+        assertEquals(openTimes.size() - 4, openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), date).size());
+    }
+
+    @Test
+    void rangeDeleteRefusesEmptyReversedAndOversizedRanges() {
+        IllegalArgumentException empty = assertThrows(IllegalArgumentException.class, () ->
+                openTimeService.deleteOpenTimesForDoctorBetween(doctor.getId(), date.atTime(8, 0), date.atTime(8, 0)));
+        assertEquals("Invalid time period: Start and end date are the same.", empty.getMessage());
+
+        IllegalArgumentException reversed = assertThrows(IllegalArgumentException.class, () ->
+                openTimeService.deleteOpenTimesForDoctorBetween(doctor.getId(), date.atTime(9, 0), date.atTime(8, 0)));
+        assertEquals("Invalid time period: End date is sooner than start date.", reversed.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> openTimeService.deleteOpenTimesForDoctorBetween(
+                doctor.getId(), date.atTime(8, 0), date.plusYears(2).atTime(8, 0)));
+        assertEquals(openTimes.size(), openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), date).size());
+    }
+
+    @Test
+    void appointmentsAreReadAsViewsOfThePatientAndTheOpenTime() {
+        Patient patient = testData.addPatient();
+        Long openTimeId = openTimes.get(3).getId();
+        openTimeService.setAppointmentForPatient(patient, openTimeId);
+
+        List<AppointmentView> appointments = appointmentService.getPatientAppointments(patient.getPhoneNumber());
+        assertEquals(1, appointments.size());
+        AppointmentView appointment = appointments.get(0);
+        assertEquals(patient.getName(), appointment.getPatient().getName());
+        assertEquals(openTimeId, appointment.getOpenTime().getId());
+        assertEquals(OpenTimeStatus.TAKEN, appointment.getOpenTime().getStatus());
+        assertEquals(doctor.getName(), appointment.getOpenTime().getDoctor().getName());
+    }
+
+    // note: the open time no longer cascades to its appointment, a taken one is refused instead of deleted with it
+    @Test
+    void deletingATakenOpenTimeIsRefusedAndKeepsItsAppointment() {
+        Patient patient = testData.addPatient();
+        Long takenId = openTimes.get(4).getId();
+        openTimeService.setAppointmentForPatient(patient, takenId);
+
+        assertThrows(AppointmentExistsException.class,
+                () -> openTimeService.deleteOpenTimeForDoctor(doctor.getId(), takenId));
+
+        assertEquals(OpenTimeStatus.TAKEN, openTimeRepository.findById(takenId).orElseThrow().getStatus());
+        assertEquals(List.of(takenId), appointmentService.getDoctorAppointments(doctor.getId()).stream()
+                .map(appointment -> appointment.getOpenTime().getId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void openTimesAreNotAddedForADeletedDoctor() {
+        Doctor deleted = new Doctor();
+        deleted.setId(Long.MAX_VALUE);
+        deleted.setName("deleted");
+
+        assertThrows(DoctorNotFoundException.class, () -> openTimeService.addOpenTimesForDoctor(
+                deleted, date.atTime(13, 0), date.atTime(14, 0), 30));
+        assertEquals(List.of(), openTimeService.getOpenTimes(deleted.getId()));
+    }
+
+    @Test
+    void publishedScheduleSkipsExcludedDaysAndExistingSlotsInBatchedInserts() {
+        SchedulePublishRequest request = new SchedulePublishRequest();
+        request.setFromDate(date);
+        request.setToDate(date.plusDays(PUBLISHED_DAYS - 1));
+        request.setDailyStartTime(LocalTime.of(10, 0));
+        request.setDailyEndTime(LocalTime.of(14, 0));
+        request.setExcludedDaysOfWeek(Set.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY));
+        LocalDate excludedDate = date.plusDays(1);
+        request.setExcludedDates(Set.of(excludedDate));
+
+        // note: the two chunk transactions create about 70 slots, one insert per slot would take that many
+        // statements on its own
+        List<SchedulePublishProgress> progress = new ArrayList<>();
+        int created = assertMaxStatements(10,
+                () -> openTimeService.publishSchedule(doctor.getId(), request, progress::add));
+
+        int expectedTotal = 0;
+        for (int day = 0; day < PUBLISHED_DAYS; day++) {
+            LocalDate published = date.plusDays(day);
+            boolean excluded = published.equals(excludedDate) || published.getDayOfWeek() == DayOfWeek.SATURDAY
+                    || published.getDayOfWeek() == DayOfWeek.SUNDAY;
+            // note: 10:00 to 12:00 of the first day is already taken by the open times of setUp
+            int expected = excluded ? 0 : day == 0 ? 4 : 8;
+            expectedTotal += expected;
+
+            SchedulePublishProgress dayProgress = progress.get(day);
+            assertEquals(published, dayProgress.getDate());
+            assertEquals(expected, dayProgress.getCreatedOpenTimes());
+            assertEquals(expectedTotal, dayProgress.getTotalCreatedOpenTimes());
+            assertEquals(day + 1, dayProgress.getProcessedDays());
+            assertEquals(PUBLISHED_DAYS, dayProgress.getTotalDays());
+            assertEquals(expected + (day == 0 ? openTimes.size() : 0),
+                    openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), published).size());
+        }
+        assertEquals(PUBLISHED_DAYS, progress.size());
+        assertEquals(expectedTotal, created);
+    }
+}
@@ -0,0 +1,96 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.config.SchemaUpgrade;
+import com.blubank.doctorappointment.exception.PatientExistsException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.Patient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.PATIENT_IDENTITY_CONSTRAINT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class PatientIdentityTests {
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private SchemaUpgrade schemaUpgrade;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void onlyTheIdentityConstraintMeansThePatientExists() {
+        Patient patient = patient("patient", "0915" + System.nanoTime());
+        patientService.addPatient(patient);
+
+        assertThrows(PatientExistsException.class,
+                () -> patientService.addPatient(patient(patient.getName(), patient.getPhoneNumber())));
+        assertThrows(DataIntegrityViolationException.class,
+                () -> patientService.addPatient(patient("p".repeat(300), patient.getPhoneNumber())));
+    }
+
+    @Test
+    void duplicatePatientsAreMergedIntoTheOldestAndTheConstraintIsRestored() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+
+        String phoneNumber = "0916" + System.nanoTime();
+        jdbcTemplate.execute("alter table patient drop constraint " + PATIENT_IDENTITY_CONSTRAINT);
+        try {
+            jdbcTemplate.update("insert into patient (name, phone_number) values ('patient', ?)", phoneNumber);
+            jdbcTemplate.update("insert into patient (name, phone_number) values ('patient', ?)", phoneNumber);
+        } finally {
+            schemaUpgrade.upgrade();
+        }
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select id from patient where phone_number = ? order by id", Long.class, phoneNumber);
+        assertEquals(1, ids.size());
+
+        jdbcTemplate.execute("alter table patient drop constraint " + PATIENT_IDENTITY_CONSTRAINT);
+        try {
+            jdbcTemplate.update("insert into patient (name, phone_number) values ('patient', ?)", phoneNumber);
+            Long duplicateId = jdbcTemplate.queryForObject(
+                    "select max(id) from patient where phone_number = ?", Long.class, phoneNumber);
+            openTimeService.setAppointmentForPatient(patientService.getPatient(ids.get(0)), openTimes.get(0).getId());
+            openTimeService.setAppointmentForPatient(patientService.getPatient(duplicateId), openTimes.get(1).getId());
+        } finally {
+            schemaUpgrade.upgrade();
+        }
+
+        assertEquals(ids, jdbcTemplate.queryForList(
+                "select id from patient where phone_number = ? order by id", Long.class, phoneNumber));
+        assertEquals(List.of(ids.get(0), ids.get(0)), appointmentService.getPatientAppointments(phoneNumber).stream()
+                .map(appointment -> appointment.getPatient().getId()).collect(Collectors.toList()));
+        assertThrows(PatientExistsException.class, () -> patientService.addPatient(patient("patient", phoneNumber)));
+    }
+
+    private static Patient patient(String name, String phoneNumber) {
+        Patient patient = new Patient();
+        patient.setName(name);
+        patient.setPhoneNumber(phoneNumber);
+        return patient;
+    }
+}
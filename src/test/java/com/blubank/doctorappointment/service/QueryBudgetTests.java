@@ -0,0 +1,164 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.CursorPage;
+import com.blubank.doctorappointment.dto.ListQuery;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.exception.PatientExistsException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.model.Patient;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTORS_CACHE;
+import static com.blubank.doctorappointment.helper.AppConstants.DOCTOR_LIST_CACHE;
+import static com.blubank.doctorappointment.helper.QueryBudget.assertMaxStatements;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class QueryBudgetTests {
+    private static final int APPOINTMENTS = 40;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private DoctorService doctorService;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private TestData testData;
+
+    private Doctor doctor;
+
+    private List<OpenTime> openTimes;
+
+    private String phoneNumber;
+
+    @BeforeEach
+    void setUp() {
+        doctor = testData.addDoctor();
+
+        LocalDate date = LocalDate.now().plusDays(1);
+        openTimes = openTimeService.addOpenTimesForDoctor(doctor.getId(), date.atTime(0, 0), date.atTime(23, 30));
+
+        Patient patient = testData.addPatient();
+        phoneNumber = patient.getPhoneNumber();
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            openTimeService.setAppointmentForPatient(patient, openTimes.get(i).getId());
+        }
+    }
+
+    @Test
+    void appointmentListsCostOneStatement() {
+        assertEquals(APPOINTMENTS, assertMaxStatements(1,
+                () -> appointmentService.getDoctorAppointments(doctor.getId())).size());
+        assertEquals(APPOINTMENTS, assertMaxStatements(1,
+                () -> appointmentService.getPatientAppointments(phoneNumber)).size());
+    }
+
+    @Test
+    void openTimeListAndPageCostOneStatement() {
+        assertEquals(openTimes.size(), assertMaxStatements(1,
+                () -> openTimeService.getOpenTimes(doctor.getId())).size());
+
+        ListQuery query = new ListQuery();
+        query.setLimit(10);
+        CursorPage<OpenTimeView> page = assertMaxStatements(1,
+                () -> openTimeService.getOpenTimesPage(doctor.getId(), query));
+        assertEquals(10, page.getItems().size());
+    }
+
+    @Test
+    void availabilityIsServedFromTheIndexOnceLoaded() {
+        LocalDate date = openTimes.get(0).getStartTime().toLocalDate();
+        openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), date);
+
+        assertEquals(openTimes.size() - APPOINTMENTS, assertMaxStatements(0,
+                () -> openTimeService.getOpenTimesForDoctorOnDay(doctor.getId(), date)).size());
+    }
+
+    @Test
+    void earliestSearchMergesDoctorsInOneStatementOnceLoaded() {
+        Long otherId = testData.addDoctor("other").getId();
+        LocalDate date = openTimes.get(0).getStartTime().toLocalDate();
+        openTimeService.addOpenTimesForDoctor(otherId, date.atTime(20, 15), date.atTime(21, 15));
+
+        List<Long> doctorIds = List.of(doctor.getId(), otherId);
+        openTimeService.getEarliestOpenTimes(doctorIds, date, date.plusDays(1), 4);
+
+        List<OpenTimeView> earliest = assertMaxStatements(1,
+                () -> openTimeService.getEarliestOpenTimes(doctorIds, date, date.plusDays(1), 4));
+        assertEquals(List.of(date.atTime(20, 0), date.atTime(20, 15), date.atTime(20, 30), date.atTime(20, 45)),
+                earliest.stream().map(OpenTimeView::getStartTime).collect(Collectors.toList()));
+        assertEquals(List.of(doctor.getId(), otherId, doctor.getId(), otherId),
+                earliest.stream().map(openTime -> openTime.getDoctor().getId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void bookingAndDeletingDoNotLoadEntities() {
+        Patient otherPatient = testData.addPatient("other");
+
+        assertMaxStatements(3,
+                () -> openTimeService.setAppointmentForPatient(otherPatient, openTimes.get(APPOINTMENTS).getId()));
+        assertMaxStatements(2,
+                () -> openTimeService.deleteOpenTimeForDoctor(doctor.getId(), openTimes.get(APPOINTMENTS + 1).getId()));
+    }
+
+    @Test
+    void bookingByNameAndPhoneDoesNotLoadThePatient() {
+        Patient otherPatient = testData.addPatient("other");
+
+        Appointment appointment = assertMaxStatements(3, () -> openTimeService.setAppointmentForPatient(
+                otherPatient.getName(), otherPatient.getPhoneNumber(), openTimes.get(APPOINTMENTS).getId()));
+        assertEquals(otherPatient.getId(), appointment.getPatient().getId());
+
+        Patient duplicate = new Patient();
+        duplicate.setName(otherPatient.getName());
+        duplicate.setPhoneNumber(otherPatient.getPhoneNumber());
+        assertThrows(PatientExistsException.class, () -> patientService.addPatient(duplicate));
+    }
+
+    @Test
+    void doctorsAreReadFromTheCacheUntilADoctorIsAdded() {
+        doctorService.getDoctor(doctor.getId());
+        assertEquals(doctor.getName(),
+                assertMaxStatements(0, () -> doctorService.getDoctor(doctor.getId())).getName());
+
+        doctorService.getAllDoctors();
+        assertMaxStatements(0, () -> doctorService.getAllDoctors());
+
+        Long addedId = testData.addDoctor("added").getId();
+        assertTrue(doctorService.getAllDoctors().stream().anyMatch(view -> view.getId().equals(addedId)));
+    }
+
+    @Test
+    void doctorCachesKeepInvalidatedNearCaches() {
+        for (String cacheName : List.of(DOCTORS_CACHE, DOCTOR_LIST_CACHE)) {
+            NearCacheConfig nearCache = hazelcastInstance.getConfig().getMapConfig(cacheName).getNearCacheConfig();
+            assertTrue(nearCache.isInvalidateOnChange());
+            assertEquals(InMemoryFormat.BINARY, nearCache.getInMemoryFormat());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.dto.ScheduleTemplateRequest;
+import com.blubank.doctorappointment.dto.ScheduleTemplateView;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.OpenTimeNotFoundException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.OpenTimeStatus;
+import com.blubank.doctorappointment.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ScheduleTemplateTests {
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private DoctorDayVersions doctorDayVersions;
+
+    @Autowired
+    private TestData testData;
+
+    private Long doctorId;
+
+    private LocalDate date;
+
+    private ScheduleTemplateView template;
+
+    @BeforeEach
+    void setUp() {
+        doctorId = testData.addDoctor().getId();
+        date = LocalDate.now().plusDays(7);
+        template = scheduleTemplateService.addTemplate(doctorId, request(LocalTime.of(9, 0), LocalTime.of(11, 0)));
+    }
+
+    @Test
+    void slotsAreComputedFromTheTemplateAndMaterializedOnlyWhenBookedOrClosed() {
+        assertEquals(List.of(LocalTime.of(9, 0), LocalTime.of(9, 30), LocalTime.of(10, 0), LocalTime.of(10, 30)),
+                startTimes(date));
+        assertEquals(4, startTimes(date.plusDays(7)).size());
+        assertEquals(0, startTimes(date.plusDays(1)).size());
+        assertTrue(openTimeService.getOpenTimes(doctorId).isEmpty());
+
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(10, 15), date.atTime(10, 45));
+        List<OpenTimeView> openTimes = openTimeService.getOpenTimesForDoctorOnDay(doctorId, date);
+        assertEquals(List.of(LocalTime.of(9, 0), LocalTime.of(9, 30), LocalTime.of(10, 15)), startTimes(date));
+        assertNull(openTimes.get(0).getId());
+        assertNotNull(openTimes.get(2).getId());
+
+        Patient patient = testData.addPatient();
+        Appointment appointment =
+                openTimeService.setTemplateAppointmentForPatient(patient, doctorId, date.atTime(9, 0));
+        assertNotNull(appointment.getOpenTime().getId());
+        assertEquals(OpenTimeStatus.TAKEN, appointment.getOpenTime().getStatus());
+
+        assertThrows(AppointmentExistsException.class,
+                () -> openTimeService.setTemplateAppointmentForPatient(patient, doctorId, date.atTime(9, 0)));
+        assertThrows(OpenTimeNotFoundException.class,
+                () -> openTimeService.setTemplateAppointmentForPatient(patient, doctorId, date.atTime(9, 10)));
+        assertThrows(AppointmentExistsException.class,
+                () -> openTimeService.setTemplateAppointmentForPatient(patient, doctorId, date.atTime(10, 30)));
+
+        openTimeService.closeTemplateSlotForDoctor(doctorId, date.atTime(9, 30));
+        assertEquals(List.of(LocalTime.of(10, 15)), startTimes(date));
+        assertEquals(3, openTimeService.getOpenTimes(doctorId).size());
+    }
+
+    @Test
+    void excludedDatesAndTemplateChangesAreSeenByLoadedDays() {
+        LocalDate excluded = date.plusDays(7);
+        long versionBefore = doctorDayVersions.dayVersion(doctorId, excluded);
+        assertEquals(4, startTimes(excluded).size());
+
+        scheduleTemplateService.addExcludedDate(doctorId, template.getId(), excluded);
+        assertEquals(0, startTimes(excluded).size());
+        assertEquals(4, startTimes(date).size());
+        assertTrue(doctorDayVersions.dayVersion(doctorId, excluded) > versionBefore);
+
+        scheduleTemplateService.removeExcludedDate(doctorId, template.getId(), excluded);
+        assertEquals(4, startTimes(excluded).size());
+
+        scheduleTemplateService.deleteTemplate(doctorId, template.getId());
+        assertEquals(0, startTimes(date).size());
+        assertTrue(scheduleTemplateService.getTemplates(doctorId).isEmpty());
+    }
+
+    @Test
+    void earliestSearchIncludesTemplateSlots() {
+        List<OpenTimeView> earliest = openTimeService.getEarliestOpenTimes(List.of(doctorId), date, date, 2);
+        assertEquals(List.of(date.atTime(9, 0), date.atTime(9, 30)),
+                earliest.stream().map(OpenTimeView::getStartTime).collect(Collectors.toList()));
+    }
+
+    @Test
+    void invalidOrOverlappingTemplatesAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> scheduleTemplateService.addTemplate(doctorId,
+                request(LocalTime.of(10, 30), LocalTime.of(12, 0))));
+        assertThrows(IllegalArgumentException.class, () -> scheduleTemplateService.addTemplate(doctorId,
+                request(LocalTime.of(12, 0), LocalTime.of(12, 10))));
+
+        ScheduleTemplateRequest missingDay = request(LocalTime.of(12, 0), LocalTime.of(13, 0));
+        missingDay.setDayOfWeek(null);
+        assertThrows(IllegalArgumentException.class, () -> scheduleTemplateService.addTemplate(doctorId, missingDay));
+
+        ScheduleTemplateRequest afternoon = request(LocalTime.of(14, 0), LocalTime.of(15, 0));
+        afternoon.setSlotMinutes(20);
+        scheduleTemplateService.addTemplate(doctorId, afternoon);
+        assertEquals(7, startTimes(date).size());
+    }
+
+    private ScheduleTemplateRequest request(LocalTime startTime, LocalTime endTime) {
+        ScheduleTemplateRequest request = new ScheduleTemplateRequest();
+        request.setDayOfWeek(date.getDayOfWeek());
+        request.setStartTime(startTime);
+        request.setEndTime(endTime);
+        request.setValidFrom(LocalDate.now());
+        return request;
+    }
+
+    @Test
+    void pastTemplateSlotsAndUnknownDoctorsAreRefused() {
+        scheduleTemplateService.deleteTemplate(doctorId, template.getId());
+        ScheduleTemplateRequest pastRequest = request(LocalTime.of(9, 0), LocalTime.of(11, 0));
+        pastRequest.setValidFrom(date.minusDays(21));
+        scheduleTemplateService.addTemplate(doctorId, pastRequest);
+
+        Patient patient = testData.addPatient();
+        LocalDate past = date.minusDays(14);
+        assertThrows(OpenTimeNotFoundException.class,
+                () -> openTimeService.setTemplateAppointmentForPatient(patient, doctorId, past.atTime(9, 0)));
+        assertThrows(OpenTimeNotFoundException.class,
+                () -> openTimeService.closeTemplateSlotForDoctor(doctorId, past.atTime(9, 30)));
+        assertNotNull(openTimeService.setTemplateAppointmentForPatient(patient, doctorId, date.atTime(9, 0)));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> scheduleTemplateService.addTemplate(-1L, request(LocalTime.of(9, 0), LocalTime.of(11, 0))));
+    }
+
+    private List<LocalTime> startTimes(LocalDate day) {
+        return openTimeService.getOpenTimesForDoctorOnDay(doctorId, day).stream()
+                .map(OpenTimeView::getStartTime)
+                .map(LocalDateTime::toLocalTime)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,90 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.config.SchemaUpgrade;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.blubank.doctorappointment.helper.AppConstants.OPEN_TIME_SEQUENCE;
+import static com.blubank.doctorappointment.helper.AppConstants.PATIENT_IDENTITY_CONSTRAINT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SchemaUpgradeTests {
+    @Autowired
+    private SchemaUpgrade schemaUpgrade;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void theOpenTimeSequenceIsMovedPastIdsItDidNotHandOut() {
+        Long doctorId = testData.addDoctor().getId();
+        long identityId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from open_time", Long.class)
+                + 10_000;
+        // note: a row left by the identity column, far above what the sequence hands out
+        jdbcTemplate.update("insert into open_time (id, start_time, end_time, status, doctor_id, version) " +
+                "values (?, timestamp '2000-01-01 09:00:00', timestamp '2000-01-01 09:30:00', 'OPEN', ?, 0)",
+                identityId, doctorId);
+        try {
+            schemaUpgrade.upgrade();
+
+            LocalDate date = LocalDate.now().plusDays(1);
+            List<OpenTime> openTimes = new ArrayList<>();
+            openTimes.addAll(openTimeService.addOpenTimesForDoctor(doctorId, date.atStartOfDay(), date.atTime(23, 30)));
+            openTimes.addAll(openTimeService.addOpenTimesForDoctor(doctorId, date.plusDays(1).atStartOfDay(),
+                    date.plusDays(1).atTime(23, 30)));
+            assertTrue(openTimes.stream().anyMatch(openTime -> openTime.getId() > identityId));
+        } finally {
+            jdbcTemplate.update("delete from open_time where id = ?", identityId);
+        }
+    }
+
+    @Test
+    void aSequenceAheadOfTheIdsIsNotAdvancedByTheUpgrade() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(1);
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(8, 0), date.atTime(9, 0));
+        long next = sequenceNextValue();
+
+        schemaUpgrade.upgrade();
+        schemaUpgrade.upgrade();
+
+        assertEquals(next, sequenceNextValue());
+    }
+
+    @Test
+    void aMissingPatientIdentityConstraintIsAddedAndAnExistingOneIsKept() {
+        jdbcTemplate.execute("alter table patient drop constraint " + PATIENT_IDENTITY_CONSTRAINT);
+        assertEquals(0, patientIdentityConstraints());
+
+        schemaUpgrade.upgrade();
+        schemaUpgrade.upgrade();
+
+        assertEquals(1, patientIdentityConstraints());
+    }
+
+    private int patientIdentityConstraints() {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.table_constraints " +
+                "where lower(constraint_name) = ?", Integer.class, PATIENT_IDENTITY_CONSTRAINT);
+    }
+
+    private long sequenceNextValue() {
+        return jdbcTemplate.queryForObject("select base_value from information_schema.sequences " +
+                "where lower(sequence_name) = ?", Long.class, OPEN_TIME_SEQUENCE);
+    }
+}
@@ -0,0 +1,153 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.DoctorView;
+import com.blubank.doctorappointment.dto.OpenTimeView;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.OpenTime;
+import com.blubank.doctorappointment.service.SharedDayAvailability.Invalidate;
+import com.blubank.doctorappointment.service.SharedDayAvailability.PutIfVersion;
+import com.blubank.doctorappointment.service.SlotAvailabilityIndex.DaySlots;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.blubank.doctorappointment.helper.AppConstants.DAY_AVAILABILITY_CACHE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SlotAvailabilityIndexTests {
+    private static final LocalDate DATE = LocalDate.of(2030, 1, 7);
+
+    private static final DoctorView DOCTOR = new DoctorView(1L, "doctor");
+
+    @Autowired
+    private SlotAvailabilityIndex slotAvailabilityIndex;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private TestData testData;
+
+    @Test
+    void slotsAreListedByStartTimeAcrossBitmapWords() {
+        DaySlots daySlots = new DaySlots();
+        daySlots.put(openTime(3L, LocalTime.of(23, 55), 5));
+        daySlots.put(openTime(2L, LocalTime.of(5, 20), 30));
+        daySlots.put(openTime(1L, LocalTime.of(5, 15), 5));
+        daySlots.put(openTime(4L, LocalTime.MIDNIGHT, 30));
+
+        List<OpenTimeView> openTimes = slots(daySlots);
+        assertEquals(List.of(4L, 1L, 2L, 3L),
+                openTimes.stream().map(OpenTimeView::getId).collect(Collectors.toList()));
+        assertEquals(DATE.atTime(5, 50), openTimes.get(2).getEndTime());
+        assertEquals(DATE.plusDays(1).atStartOfDay(), openTimes.get(3).getEndTime());
+    }
+
+    @Test
+    void slotsAreReplacedAndRemovedByIdOnly() {
+        DaySlots daySlots = new DaySlots();
+        daySlots.put(openTime(1L, LocalTime.of(9, 0), 30));
+        daySlots.put(openTime(2L, LocalTime.of(9, 30), 30));
+        OpenTime replaced = openTime(1L, LocalTime.of(9, 0), 15);
+        replaced.setVersion(3L);
+        daySlots.put(replaced);
+
+        daySlots.remove(7L, 9 * 60 + 30);
+        daySlots.remove(2L, 10 * 60);
+        List<OpenTimeView> openTimes = slots(daySlots);
+        assertEquals(2, openTimes.size());
+        assertEquals(DATE.atTime(9, 15), openTimes.get(0).getEndTime());
+        assertEquals(3L, openTimes.get(0).getVersion());
+
+        daySlots.remove(2L, 9 * 60 + 30);
+        assertEquals(List.of(1L), slots(daySlots).stream().map(OpenTimeView::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void slotsNotStartingOnAWholeMinuteAreRefused() {
+        DaySlots daySlots = new DaySlots();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> daySlots.put(openTime(1L, LocalTime.of(9, 0, 30), 30)));
+        assertTrue(slots(daySlots).isEmpty());
+    }
+
+    @Test
+    void leastRecentlyReadDoctorsAreDroppedPastTheBound() {
+        int maxDoctors = (int) ReflectionTestUtils.getField(slotAvailabilityIndex, "maxDoctors");
+        ReflectionTestUtils.setField(slotAvailabilityIndex, "maxDoctors", 10);
+        try {
+            List<Long> doctorIds = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                doctorIds.add(testData.addDoctor("doctor" + i).getId());
+            }
+            doctorIds.forEach(doctorId -> slotAvailabilityIndex.getOpenTimes(doctorId, LocalDate.now()));
+
+            assertTrue(slotAvailabilityIndex.loadedDoctors() <= 10);
+            assertTrue(slotAvailabilityIndex.getOpenTimes(doctorIds.get(0), LocalDate.now()).isEmpty());
+        } finally {
+            ReflectionTestUtils.setField(slotAvailabilityIndex, "maxDoctors", maxDoctors);
+        }
+    }
+
+    @Test
+    void aLoadThatStartedBeforeAnInvalidationIsNotShared() {
+        Long doctorId = testData.addDoctor().getId();
+        LocalDate date = LocalDate.now().plusDays(2);
+        IMap<String, DaySlots> sharedDays = hazelcastInstance.getMap(DAY_AVAILABILITY_CACHE);
+        String key = SharedDayAvailability.dayKey(doctorId, date.toEpochDay());
+
+        // note: another node invalidates a day nobody cached yet, while this load was reading the db
+        assertEquals(null, sharedDays.get(key));
+        sharedDays.executeOnKey(key, new Invalidate());
+        assertFalse(sharedDays.executeOnKey(key, new PutIfVersion(0, new DaySlots())));
+
+        openTimeService.addOpenTimesForDoctor(doctorId, date.atTime(9, 0), date.atTime(10, 0));
+        assertEquals(2, slotAvailabilityIndex.getOpenTimes(doctorId, date).size());
+        DaySlots shared = sharedDays.get(key);
+        assertEquals(2, slots(shared).size());
+
+        // note: the same race against a cached day, a write drops it and the stale load may not put it back
+        openTimeService.deleteOpenTimesForDoctorBetween(doctorId, date.atTime(9, 0), date.atTime(9, 30));
+        assertFalse(sharedDays.executeOnKey(key, new PutIfVersion(versionOf(shared), shared)));
+        assertEquals(1, slotAvailabilityIndex.getOpenTimes(doctorId, date).size());
+        assertEquals(1, slots(sharedDays.get(key)).size());
+    }
+
+    private static long versionOf(DaySlots daySlots) {
+        return (long) ReflectionTestUtils.getField(daySlots, "version");
+    }
+
+    private static OpenTime openTime(Long id, LocalTime startTime, int minutes) {
+        LocalDateTime start = DATE.atTime(startTime);
+        OpenTime openTime = new OpenTime();
+        openTime.setId(id);
+        openTime.setStartTime(start);
+        openTime.setEndTime(start.plusMinutes(minutes));
+        openTime.setVersion(0L);
+        return openTime;
+    }
+
+    private static List<OpenTimeView> slots(DaySlots daySlots) {
+        List<OpenTimeView> openTimes = new ArrayList<>();
+        daySlots.appendTo(openTimes, DOCTOR, DATE);
+        return openTimes;
+    }
+}
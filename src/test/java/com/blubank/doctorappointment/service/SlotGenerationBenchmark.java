@@ -0,0 +1,54 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.helper.OccupiedIntervals;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// note: slot generation against calendars of growing size. existing slots are 20 minutes long every 45 minutes,
+// so the generated 30 minute slots overlap roughly every other one, which keeps both branches of the walk hot.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotGenerationBenchmark {
+    private static final LocalDateTime CALENDAR_START = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Param({"0", "100", "1000", "10000"})
+    private int existingSlots;
+
+    private List<OpenTime> existing;
+
+    private LocalDateTime windowEnd;
+
+    private Doctor doctor;
+
+    @Setup
+    public void setUp() {
+        doctor = new Doctor();
+        doctor.setId(1L);
+        doctor.setName("doctor");
+
+        existing = new ArrayList<>(existingSlots);
+        for (int i = 0; i < existingSlots; i++) {
+            OpenTime openTime = new OpenTime();
+            openTime.setStartTime(CALENDAR_START.plusMinutes(45L * i));
+            openTime.setEndTime(openTime.getStartTime().plusMinutes(20));
+            existing.add(openTime);
+        }
+        windowEnd = CALENDAR_START.plusMinutes(45L * Math.max(existingSlots, 100));
+    }
+
+    @Benchmark
+    public List<OpenTime> generateOverCalendar() {
+        OccupiedIntervals occupiedIntervals = OccupiedIntervals.of(existing, OpenTime::getStartTime, OpenTime::getEndTime);
+        return OpenTimeService.generateOpenTimes(CALENDAR_START, windowEnd, 30, doctor, occupiedIntervals);
+    }
+}
@@ -0,0 +1,201 @@
+package com.blubank.doctorappointment.service;
+
+import com.blubank.doctorappointment.dto.SlotHold;
+import com.blubank.doctorappointment.exception.AppointmentExistsException;
+import com.blubank.doctorappointment.exception.SlotHoldNotFoundException;
+import com.blubank.doctorappointment.helper.TestData;
+import com.blubank.doctorappointment.model.Appointment;
+import com.blubank.doctorappointment.model.Doctor;
+import com.blubank.doctorappointment.model.OpenTime;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"app.booking.holds.enabled=true", "app.booking.hold-ttl-seconds=1"})
+class SlotHoldServiceTests {
+    private static final int THREADS = 8;
+
+    private static int redisPort;
+    private static RedisServer redisServer;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @Autowired
+    private OpenTimeService openTimeService;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private TestData testData;
+
+    private Long openTimeId;
+
+    private String firstPhoneNumber;
+
+    private String secondPhoneNumber;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            redisPort = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(redisPort);
+        redisServer.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redisServer.stop();
+    }
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.port", () -> redisPort);
+    }
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = testData.addDoctor();
+
+        LocalDate date = LocalDate.now().plusDays(1);
+        List<OpenTime> openTimes =
+                openTimeService.addOpenTimesForDoctor(doctor.getId(), date.atTime(9, 0), date.atTime(9, 30));
+        openTimeId = openTimes.get(0).getId();
+
+        firstPhoneNumber = "0911" + openTimeId;
+        secondPhoneNumber = "0912" + openTimeId;
+        testData.addPatient("first", firstPhoneNumber);
+        testData.addPatient("second", secondPhoneNumber);
+    }
+
+    @Test
+    void onlyOnePatientHoldsAnOpenTime() {
+        SlotHold slotHold = slotHoldService.placeHold("first", firstPhoneNumber, openTimeId);
+
+        assertThrows(AppointmentExistsException.class, () -> slotHoldService.placeHold("second", secondPhoneNumber, openTimeId));
+        assertFalse(slotHoldService.releaseHold(openTimeId, "not-the-token"));
+        assertTrue(slotHoldService.releaseHold(openTimeId, slotHold.getHoldToken()));
+        assertNotNull(slotHoldService.placeHold("second", secondPhoneNumber, openTimeId));
+    }
+
+    @Test
+    void confirmedHoldBooksTheOpenTime() {
+        SlotHold slotHold = slotHoldService.placeHold("first", firstPhoneNumber, openTimeId);
+
+        Appointment appointment = slotHoldService.confirmHold(openTimeId, slotHold.getHoldToken());
+
+        assertEquals("first", appointment.getPatient().getName());
+        assertThrows(SlotHoldNotFoundException.class, () -> slotHoldService.confirmHold(openTimeId, slotHold.getHoldToken()));
+        assertThrows(AppointmentExistsException.class, () -> slotHoldService.placeHold("second", secondPhoneNumber, openTimeId));
+    }
+
+    @Test
+    void heldOpenTimeIsNotBookedByAnotherPatient() {
+        SlotHold slotHold = slotHoldService.placeHold("first", firstPhoneNumber, openTimeId);
+
+        assertThrows(AppointmentExistsException.class,
+                () -> bookingService.book("second", secondPhoneNumber, openTimeId));
+        assertEquals("first", slotHoldService.confirmHold(openTimeId, slotHold.getHoldToken()).getPatient().getName());
+    }
+
+    @Test
+    void aHoldAndAnotherPatientsBookingDoNotBothSucceed() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> holds = new ArrayList<>();
+        List<Future<Boolean>> bookings = new ArrayList<>();
+        for (int i = 0; i < THREADS / 2; i++) {
+            holds.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return slotHoldService.placeHold("first", firstPhoneNumber, openTimeId) != null;
+                } catch (AppointmentExistsException e) {
+                    return false;
+                }
+            }));
+            bookings.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return bookingService.book("second", secondPhoneNumber, openTimeId) != null;
+                } catch (AppointmentExistsException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int held = 0;
+        for (Future<Boolean> hold : holds) {
+            held += hold.get() ? 1 : 0;
+        }
+        int booked = 0;
+        for (Future<Boolean> booking : bookings) {
+            booked += booking.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, held + booked);
+    }
+
+    @Test
+    void holdIsConfirmedOnce() throws Exception {
+        SlotHold slotHold = slotHoldService.placeHold("first", firstPhoneNumber, openTimeId);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    slotHoldService.confirmHold(openTimeId, slotHold.getHoldToken());
+                    return true;
+                } catch (SlotHoldNotFoundException | AppointmentExistsException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int confirmed = 0;
+        for (Future<Boolean> result : results) {
+            confirmed += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, confirmed);
+    }
+
+    @Test
+    void expiredHoldIsReleased() throws InterruptedException {
+        SlotHold slotHold = slotHoldService.placeHold("first", firstPhoneNumber, openTimeId);
+
+        Thread.sleep(1500);
+
+        assertThrows(SlotHoldNotFoundException.class, () -> slotHoldService.confirmHold(openTimeId, slotHold.getHoldToken()));
+        assertNotNull(slotHoldService.placeHold("second", secondPhoneNumber, openTimeId));
+    }
+}